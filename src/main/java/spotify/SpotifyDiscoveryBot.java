@@ -13,7 +13,10 @@ import spotify.api.SpotifyDependenciesSettings;
 @SpringBootApplication
 public class SpotifyDiscoveryBot {
   public static void main(String[] args) {
-    new SpringApplicationBuilder(SpotifyDiscoveryBot.class).headless(GraphicsEnvironment.isHeadless()).run(args);
+    new SpringApplicationBuilder(SpotifyDiscoveryBot.class)
+      .headless(GraphicsEnvironment.isHeadless())
+      .properties("management.endpoints.web.exposure.include=health,prometheus")
+      .run(args);
   }
 
   @Component
@@ -1,6 +1,7 @@
 package spotify.bot;
 
 import java.sql.SQLException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
@@ -22,17 +23,27 @@ import spotify.bot.filter.RemappingService;
 import spotify.bot.service.CachedArtistService;
 import spotify.bot.service.DiscoveryAlbumService;
 import spotify.bot.service.DiscoveryTrackService;
+import spotify.bot.service.MarketContext;
 import spotify.bot.service.PlaylistMetaService;
 import spotify.bot.service.PlaylistSongsService;
+import spotify.bot.util.CrawlEventBus;
+import spotify.bot.util.CrawlTracer;
 import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.DiscoveryBotMetrics;
 import spotify.bot.util.DiscoveryBotUtils;
 import spotify.bot.util.data.AlbumGroupExtended;
 import spotify.bot.util.data.CachedArtistsContainer;
+import spotify.bot.util.data.CrawlEvent;
 import spotify.util.SpotifyUtils;
 import spotify.util.data.AlbumTrackPair;
 
 @Component
 public class DiscoveryBotCrawler {
+	private final static String PHASE_FOLLOWED_ARTISTS = "followed_artists";
+	private final static String PHASE_RELEASES = "releases";
+	private final static String PHASE_TRACKS = "tracks";
+	private final static String PHASE_PLAYLISTS = "playlists";
+
 	private final DiscoveryBotLogger log;
 	private final CachedArtistService cachedArtistService;
 	private final DiscoveryAlbumService discoveryAlbumService;
@@ -45,6 +56,10 @@ public class DiscoveryBotCrawler {
 	private final ForwarderService forwarderService;
 	private final FeatureControl featureControl;
 	private final AutoPurgerService autoPurgerService;
+	private final MarketContext marketContext;
+	private final CrawlEventBus crawlEventBus;
+	private final DiscoveryBotMetrics metrics;
+	private final CrawlTracer tracer;
 
 	private List<AlbumSimplified> albumsToCache;
 
@@ -60,7 +75,11 @@ public class DiscoveryBotCrawler {
 		RemappingService remappingService,
 		ForwarderService forwarderService,
 		FeatureControl featureControl,
-		AutoPurgerService autoPurgerService
+		AutoPurgerService autoPurgerService,
+		MarketContext marketContext,
+		CrawlEventBus crawlEventBus,
+		DiscoveryBotMetrics discoveryBotMetrics,
+		CrawlTracer crawlTracer
 	) {
 		this.log = discoveryBotLogger;
 		this.cachedArtistService = cachedArtistService;
@@ -74,6 +93,10 @@ public class DiscoveryBotCrawler {
 		this.forwarderService = forwarderService;
 		this.featureControl = featureControl;
 		this.autoPurgerService = autoPurgerService;
+		this.marketContext = marketContext;
+		this.crawlEventBus = crawlEventBus;
+		this.metrics = discoveryBotMetrics;
+		this.tracer = crawlTracer;
 	}
 
 	/**
@@ -124,6 +147,7 @@ public class DiscoveryBotCrawler {
 		log.debug("Initializing playlist stores...");
 		playlistStoreConfig.setupPlaylistStores();
 		playlistMetaService.initLastUpdatedFromPlaylistDescriptions();
+		autoPurgerService.startPurgeScheduler();
 		log.info("Executing initial crawl...", false);
 		if (featureControl.isInitialCrawlEnabled()) {
 			Map<AlbumGroupExtended, Integer> results = crawl();
@@ -144,11 +168,19 @@ public class DiscoveryBotCrawler {
 	 * cannot require the lock.
 	 *
 	 * @param force if true, force-clear all notifiers no matter what
+	 * @return true if the user is currently playing anything
 	 *
 	 * @throws SpotifyApiException on an external exception related to the Spotify Web API
 	 */
-	public void clearObsoleteNotifiers(boolean force) throws SpotifyApiException {
-		playlistMetaService.clearObsoleteNotifiers(force);
+	public boolean clearObsoleteNotifiers(boolean force) throws SpotifyApiException {
+		return playlistMetaService.clearObsoleteNotifiers(force);
+	}
+
+	/**
+	 * Return true if any playlist currently carries a [NEW] notifier
+	 */
+	public boolean hasPendingNotifiers() {
+		return playlistMetaService.hasPendingNotifiers();
 	}
 
 	///////////////////
@@ -173,10 +205,25 @@ public class DiscoveryBotCrawler {
 	 * speed up the future search processes
 	 */
 	private Map<AlbumGroupExtended, Integer> crawl() throws SpotifyApiException, SQLException {
+		long startTime = System.currentTimeMillis();
+		long startNanos = System.nanoTime();
+		tracer.startTrace();
+		crawlEventBus.publish(CrawlEvent.Type.CRAWL_START, Map.of());
+		Map<AlbumGroupExtended, Integer> results = null;
+		boolean successful = false;
 		try {
-			return crawlScript();
+			results = crawlScript();
+			successful = true;
+			return results;
 		} finally {
 			updateAlbumCache();
+			Map<String, Object> crawlEndData = new HashMap<>();
+			crawlEndData.put("durationMs", System.currentTimeMillis() - startTime);
+			crawlEndData.put("successful", successful);
+			crawlEndData.put("results", results != null ? results : Map.of());
+			crawlEventBus.publish(CrawlEvent.Type.CRAWL_END, crawlEndData);
+			metrics.recordCrawl(System.nanoTime() - startNanos, successful);
+			tracer.finishTrace(successful);
 		}
 	}
 
@@ -186,7 +233,8 @@ public class DiscoveryBotCrawler {
 	 * Main crawl script with fail-fast mechanisms to save bandwidth
 	 */
 	private Map<AlbumGroupExtended, Integer> crawlScript() throws SpotifyApiException, SQLException {
-		autoPurgerService.runPurger();
+		marketContext.refresh();
+		playlistSongsService.replayPendingPlaylistAdditions();
 
 		List<String> followedArtists = getFollowedArtists();
 		if (!followedArtists.isEmpty()) {
@@ -206,8 +254,10 @@ public class DiscoveryBotCrawler {
 	 */
 	private List<String> getFollowedArtists() throws SQLException, SpotifyApiException {
 		log.debug("Fetching followed artists...");
-		CachedArtistsContainer cachedArtistsContainer = cachedArtistService.getFollowedArtistsIds();
-		return cachedArtistsContainer.getAllArtists();
+		try (CrawlPhase phase = new CrawlPhase(PHASE_FOLLOWED_ARTISTS)) {
+			CachedArtistsContainer cachedArtistsContainer = cachedArtistService.getFollowedArtistsIds();
+			return cachedArtistsContainer.getAllArtists();
+		}
 	}
 
 	/**
@@ -215,16 +265,18 @@ public class DiscoveryBotCrawler {
 	 */
 	private List<AlbumSimplified> getNewAlbumsFromArtists(List<String> followedArtists) throws SpotifyApiException, SQLException {
 		log.debug("Fetching releases of followed artists...");
-		List<AlbumSimplified> allAlbums = discoveryAlbumService.getAllAlbumsOfArtists(followedArtists, false);
-		log.debug("Filtering for new releases...");
-		List<AlbumSimplified> nonCachedAlbums = filterService.getNonCachedAlbums(allAlbums);
-		List<AlbumSimplified> noFutureAlbums = filterService.filterFutureAlbums(nonCachedAlbums);
-		albumsToCache = List.copyOf(noFutureAlbums);
-		log.debug("Resolving appears-on artists...");
-		List<AlbumSimplified> insertedAppearOnArtistsAlbums = discoveryAlbumService.resolveViaAppearsOnArtistNames(noFutureAlbums);
-		log.debug("Filtering for new albums only...");
-		List<AlbumSimplified> filteredNoDuplicatesAlbums = filterService.filterDuplicatedAlbumsReleasedSimultaneously(insertedAppearOnArtistsAlbums);
-		return filterService.filterNewAlbumsOnly(filteredNoDuplicatesAlbums);
+		try (CrawlPhase phase = new CrawlPhase(PHASE_RELEASES)) {
+			List<AlbumSimplified> allAlbums = discoveryAlbumService.getAllAlbumsOfArtists(followedArtists, false);
+			log.debug("Filtering for new releases...");
+			List<AlbumSimplified> nonCachedAlbums = filterService.getNonCachedAlbums(allAlbums);
+			List<AlbumSimplified> noFutureAlbums = filterService.filterFutureAlbums(nonCachedAlbums);
+			albumsToCache = List.copyOf(noFutureAlbums);
+			log.debug("Resolving appears-on artists...");
+			List<AlbumSimplified> insertedAppearOnArtistsAlbums = discoveryAlbumService.resolveViaAppearsOnArtistNames(noFutureAlbums);
+			log.debug("Filtering for new albums only...");
+			List<AlbumSimplified> filteredNoDuplicatesAlbums = filterService.filterDuplicatedAlbumsReleasedSimultaneously(insertedAppearOnArtistsAlbums);
+			return filterService.filterNewAlbumsOnly(filteredNoDuplicatesAlbums);
+		}
 	}
 
 	/**
@@ -232,19 +284,21 @@ public class DiscoveryBotCrawler {
 	 */
 	private Map<PlaylistStore, List<AlbumTrackPair>> getNewTracksByTargetPlaylist(List<AlbumSimplified> filteredAlbums, List<String> followedArtists) throws SpotifyApiException {
 		log.debug("Getting tracks of new albums...");
-		List<AlbumTrackPair> tracksByAlbums = discoveryTrackService.getTracksOfAlbums(filteredAlbums);
-		Map<AlbumGroup, List<AlbumTrackPair>> categorizedFilteredAlbums = filterService.categorizeAlbumsByAlbumGroup(tracksByAlbums);
-		log.debug("Applying intelligent appears-on search...");
-		Map<AlbumGroup, List<AlbumTrackPair>> intelligentAppearsOnFilteredAlbums = filterService.intelligentAppearsOnSearch(categorizedFilteredAlbums, followedArtists);
-		if (!SpotifyUtils.isAllEmptyLists(intelligentAppearsOnFilteredAlbums)) {
-			log.debug("Remapping to extended playlist types...");
-			Map<PlaylistStore, List<AlbumTrackPair>> songsByMainPlaylist = remappingService.mapToTargetPlaylist(intelligentAppearsOnFilteredAlbums);
-			Map<PlaylistStore, List<AlbumTrackPair>> songsByExtendedPlaylist = remappingService.remapIntoExtendedPlaylists(songsByMainPlaylist);
-			Map<PlaylistStore, List<AlbumTrackPair>> songsByExtendedPlaylistFiltered = remappingService.removeDisabledPlaylistStores(songsByExtendedPlaylist);
-			log.debug("Removing blacklisted release types...");
-			return filterService.filterBlacklistedReleaseTypesForArtists(songsByExtendedPlaylistFiltered);
+		try (CrawlPhase phase = new CrawlPhase(PHASE_TRACKS)) {
+			List<AlbumTrackPair> tracksByAlbums = discoveryTrackService.getTracksOfAlbums(filteredAlbums);
+			Map<AlbumGroup, List<AlbumTrackPair>> categorizedFilteredAlbums = filterService.categorizeAlbumsByAlbumGroup(tracksByAlbums);
+			log.debug("Applying intelligent appears-on search...");
+			Map<AlbumGroup, List<AlbumTrackPair>> intelligentAppearsOnFilteredAlbums = filterService.intelligentAppearsOnSearch(categorizedFilteredAlbums, followedArtists);
+			if (!SpotifyUtils.isAllEmptyLists(intelligentAppearsOnFilteredAlbums)) {
+				log.debug("Remapping to extended playlist types...");
+				Map<PlaylistStore, List<AlbumTrackPair>> songsByMainPlaylist = remappingService.mapToTargetPlaylist(intelligentAppearsOnFilteredAlbums);
+				Map<PlaylistStore, List<AlbumTrackPair>> songsByExtendedPlaylist = remappingService.remapIntoExtendedPlaylists(songsByMainPlaylist);
+				Map<PlaylistStore, List<AlbumTrackPair>> songsByExtendedPlaylistFiltered = remappingService.removeDisabledPlaylistStores(songsByExtendedPlaylist);
+				log.debug("Removing blacklisted release types...");
+				return filterService.filterBlacklistedReleaseTypesForArtists(songsByExtendedPlaylistFiltered);
+			}
+			return Map.of();
 		}
-		return Map.of();
 	}
 
 	/**
@@ -252,10 +306,28 @@ public class DiscoveryBotCrawler {
 	 */
 	private Map<AlbumGroupExtended, Integer> addReleasesToPlaylistsAndCollectResults(Map<PlaylistStore, List<AlbumTrackPair>> newTracksByTargetPlaylist) throws SpotifyApiException {
 		log.debug("Adding new releases to target playlists...");
-		playlistSongsService.addAllReleasesToSetPlaylists(newTracksByTargetPlaylist);
-		playlistMetaService.showNotifiers(newTracksByTargetPlaylist);
-		forwarderService.forwardResults(newTracksByTargetPlaylist);
-		return DiscoveryBotUtils.collectSongAdditionResults(newTracksByTargetPlaylist);
+		try (CrawlPhase phase = new CrawlPhase(PHASE_PLAYLISTS)) {
+			Map<PlaylistStore, Integer> skippedTracksByTargetPlaylist = playlistSongsService.addAllReleasesToSetPlaylists(newTracksByTargetPlaylist);
+			autoPurgerService.scheduleMissingPurgeTimers();
+			playlistMetaService.showNotifiers(newTracksByTargetPlaylist);
+			forwarderService.forwardResults(newTracksByTargetPlaylist);
+			Map<AlbumGroupExtended, Integer> results = DiscoveryBotUtils.collectSongAdditionResults(newTracksByTargetPlaylist, skippedTracksByTargetPlaylist);
+			crawlEventBus.publish(CrawlEvent.Type.RELEASES_ADDED, Map.of("releases", countReleasesByAlbumGroup(newTracksByTargetPlaylist), "songs", results));
+			return results;
+		}
+	}
+
+	/**
+	 * Count the added releases (rather than songs) per album group
+	 */
+	private Map<AlbumGroupExtended, Integer> countReleasesByAlbumGroup(Map<PlaylistStore, List<AlbumTrackPair>> newTracksByTargetPlaylist) {
+		Map<AlbumGroupExtended, Integer> releaseCounts = new HashMap<>();
+		for (Map.Entry<PlaylistStore, List<AlbumTrackPair>> entry : newTracksByTargetPlaylist.entrySet()) {
+			if (!entry.getValue().isEmpty()) {
+				releaseCounts.merge(entry.getKey().getAlbumGroupExtended(), entry.getValue().size(), Integer::sum);
+			}
+		}
+		return releaseCounts;
 	}
 
 	/**
@@ -269,4 +341,29 @@ public class DiscoveryBotCrawler {
 			albumsToCache = null;
 		}
 	}
+
+	/**
+	 * A single phase of the crawl: publishes its start and end, traces it and
+	 * records its duration. The phase is always finished on close, even if it
+	 * failed, so it can't stay active beyond a failed crawl.
+	 */
+	private class CrawlPhase implements AutoCloseable {
+		private final String phase;
+		private final long phaseStart;
+		private final CrawlTracer.Scope phaseScope;
+
+		CrawlPhase(String phase) {
+			this.phase = phase;
+			crawlEventBus.phaseStarted(phase);
+			this.phaseScope = tracer.startPhase(phase);
+			this.phaseStart = System.nanoTime();
+		}
+
+		@Override
+		public void close() {
+			metrics.recordCrawlPhase(phase, System.nanoTime() - phaseStart);
+			phaseScope.close();
+			crawlEventBus.phaseFinished(phase);
+		}
+	}
 }
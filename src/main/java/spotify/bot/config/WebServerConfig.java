@@ -0,0 +1,28 @@
+package spotify.bot.config;
+
+import org.springframework.boot.web.server.Compression;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.boot.web.servlet.server.ConfigurableServletWebServerFactory;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Compresses larger responses (such as the /logblocks JSON) with gzip. Small
+ * responses are sent as they are, as compressing them isn't worth it.
+ */
+@Configuration
+public class WebServerConfig implements WebServerFactoryCustomizer<ConfigurableServletWebServerFactory> {
+	private final static DataSize COMPRESSION_MIN_RESPONSE_SIZE = DataSize.ofKilobytes(2);
+	private final static String[] COMPRESSED_MIME_TYPES = {
+		"application/json", "text/html", "text/css", "text/javascript", "application/javascript"
+	};
+
+	@Override
+	public void customize(ConfigurableServletWebServerFactory factory) {
+		Compression compression = new Compression();
+		compression.setEnabled(true);
+		compression.setMimeTypes(COMPRESSED_MIME_TYPES);
+		compression.setMinResponseSize(COMPRESSION_MIN_RESPONSE_SIZE);
+		factory.setCompression(compression);
+	}
+}
@@ -14,4 +14,26 @@ class DBConstants {
 
 	public final static String TABLE_CACHE_ARTISTS = "cache_artists";
 	public final static String COL_ARTIST_ID = "artist_id";
+
+	public final static String TABLE_CACHE_TRACK_LIVENESS = "cache_track_liveness";
+	public final static String COL_TRACK_ID = "track_id";
+	public final static String COL_LIVENESS = "liveness";
+
+	public final static String TABLE_PLAYLIST_MIRROR = "playlist_mirror";
+	public final static String COL_PLAYLIST_ID = "playlist_id";
+	public final static String COL_POSITION = "position";
+	public final static String COL_TRACK_URI = "track_uri";
+	public final static String COL_ADDED_AT = "added_at";
+
+	public final static String TABLE_PLAYLIST_MIRROR_SNAPSHOTS = "playlist_mirror_snapshots";
+	public final static String COL_SNAPSHOT_ID = "snapshot_id";
+
+	public final static String TABLE_PLAYLIST_JOURNAL = "playlist_journal";
+	public final static String COL_JOURNALED_AT = "journaled_at";
+	public final static String COL_SEQUENCE = "sequence";
+
+	public final static String TABLE_FORWARDER_OUTBOX = "forwarder_outbox";
+	public final static String COL_MESSAGE = "message";
+	public final static String COL_ATTEMPTS = "attempts";
+	public final static String COL_NEXT_ATTEMPT_AT = "next_attempt_at";
 }
@@ -28,12 +28,56 @@ public class DatabaseCreationService {
           + "                      NOT NULL\n"
           + "                      PRIMARY KEY);";
 
+  private static final String SQL_CACHE_TRACK_LIVENESS =
+      "CREATE TABLE if NOT EXISTS cache_track_liveness (\n"
+          + "    track_id STRING NOT NULL\n"
+          + "                  UNIQUE ON CONFLICT REPLACE\n"
+          + "                  PRIMARY KEY,\n"
+          + "    liveness REAL NOT NULL);";
+
+  private static final String SQL_PLAYLIST_MIRROR =
+      "CREATE TABLE if NOT EXISTS playlist_mirror (\n"
+          + "    playlist_id STRING NOT NULL,\n"
+          + "    position INTEGER NOT NULL,\n"
+          + "    track_id STRING,\n"
+          + "    track_uri STRING,\n"
+          + "    added_at INTEGER);";
+
+  private static final String SQL_PLAYLIST_MIRROR_INDEX =
+      "CREATE INDEX if NOT EXISTS playlist_mirror_playlist_id ON playlist_mirror (playlist_id);";
+
+  private static final String SQL_PLAYLIST_MIRROR_SNAPSHOTS =
+      "CREATE TABLE if NOT EXISTS playlist_mirror_snapshots (\n"
+          + "    playlist_id STRING NOT NULL\n"
+          + "                     UNIQUE ON CONFLICT REPLACE\n"
+          + "                     PRIMARY KEY,\n"
+          + "    snapshot_id STRING NOT NULL);";
+
+  private static final String SQL_PLAYLIST_JOURNAL =
+      "CREATE TABLE if NOT EXISTS playlist_journal (\n"
+          + "    playlist_id STRING NOT NULL,\n"
+          + "    track_id STRING,\n"
+          + "    track_uri STRING NOT NULL,\n"
+          + "    journaled_at INTEGER NOT NULL,\n"
+          + "    sequence INTEGER NOT NULL,\n"
+          + "    UNIQUE (playlist_id, track_uri) ON CONFLICT IGNORE);";
+
+  private static final String SQL_FORWARDER_OUTBOX =
+      "CREATE TABLE if NOT EXISTS forwarder_outbox (\n"
+          + "    release_id STRING NOT NULL\n"
+          + "                    UNIQUE ON CONFLICT IGNORE\n"
+          + "                    PRIMARY KEY,\n"
+          + "    message STRING NOT NULL,\n"
+          + "    attempts INTEGER NOT NULL,\n"
+          + "    next_attempt_at INTEGER NOT NULL);";
+
   /**
    * Create the discovery bot database with all required tables
    * (typically if this is the first time the app is launched)
    */
   public void createTables(Connection connection) throws SQLException {
-    for (String tableCreationCommand : List.of(SQL_CACHE_ARTISTS, SQL_CACHE_RELEASES, SQL_CACHE_RELEASES_NAMES)) {
+    for (String tableCreationCommand : List.of(SQL_CACHE_ARTISTS, SQL_CACHE_RELEASES, SQL_CACHE_RELEASES_NAMES, SQL_CACHE_TRACK_LIVENESS,
+        SQL_PLAYLIST_MIRROR, SQL_PLAYLIST_MIRROR_INDEX, SQL_PLAYLIST_MIRROR_SNAPSHOTS, SQL_PLAYLIST_JOURNAL, SQL_FORWARDER_OUTBOX)) {
       Statement statement = connection.createStatement();
       statement.execute(tableCreationCommand);
       statement.closeOnCompletion();
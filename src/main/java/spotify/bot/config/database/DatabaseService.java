@@ -3,25 +3,51 @@ package spotify.bot.config.database;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
 
 import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
 import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.DiscoveryBotMetrics;
+import spotify.bot.util.data.FingerprintSet;
+import spotify.bot.util.data.ForwarderMessage;
+import spotify.bot.util.data.MirroredTrack;
+import spotify.bot.util.data.PlaylistJournalEntry;
+import spotify.bot.util.data.PlaylistMirror;
 import spotify.util.SpotifyUtils;
 
 @Service
 public class DatabaseService {
 	private static final int INSERTION_CHUNK_SIZE = 1000;
+	private static final String RELEASE_NAMES_CACHE = "release_names";
 
 	private final DiscoveryDatabase database;
 	private final DiscoveryBotLogger log;
+	private final DiscoveryBotMetrics metrics;
 
-	DatabaseService(DiscoveryDatabase discoveryDatabase, DiscoveryBotLogger botLogger) {
+	/**
+	 * In-memory mirror of the "cache_releases_names" table, loaded once on first
+	 * access and then kept up to date by {@link DatabaseService#cacheAlbumNames}
+	 */
+	private final FingerprintSet releaseNamesCache;
+	private volatile boolean releaseNamesCacheLoaded;
+
+	DatabaseService(DiscoveryDatabase discoveryDatabase, DiscoveryBotLogger botLogger, DiscoveryBotMetrics discoveryBotMetrics) {
 		this.database = discoveryDatabase;
 		this.log = botLogger;
+		this.metrics = discoveryBotMetrics;
+		this.releaseNamesCache = new FingerprintSet();
+		this.releaseNamesCacheLoaded = false;
 	}
 
 	////////////////////////
@@ -32,29 +58,51 @@ public class DatabaseService {
 	 */
 	public List<String> getReleasesIdsCache() throws SQLException {
 		List<String> albumCacheIds = new ArrayList<>();
+		long readStart = System.nanoTime();
 		ResultSet rs = database.selectAll(DBConstants.TABLE_CACHE_RELEASES);
 		while (rs.next()) {
 			albumCacheIds.add(rs.getString(DBConstants.COL_RELEASE_ID));
 		}
+		metrics.recordDatabaseRead(DBConstants.TABLE_CACHE_RELEASES, System.nanoTime() - readStart);
 		return albumCacheIds;
 	}
 	
 	/**
-	 * Return the entire contents of the "cache_releases_names" table as Strings
+	 * Check if the given release name (as created by
+	 * {@link SpotifyUtils#albumIdentifierString}) is part of the
+	 * "cache_releases_names" table. The table is only read from the database once;
+	 * if that fails, this returns false and the next call tries again.
 	 */
-	public List<String> getReleaseNamesCache() throws SQLException {
-		List<String> albumCacheNames = new ArrayList<>();
-		ResultSet rs = database.selectAll(DBConstants.TABLE_CACHE_RELEASES_NAMES);
-		while (rs.next()) {
-			albumCacheNames.add(rs.getString(DBConstants.COL_RELEASE_NAME));
+	public boolean isReleaseNameCached(String releaseName) {
+		if (!releaseNamesCacheLoaded) {
+			loadReleaseNamesCache();
+		}
+		boolean cached = releaseNamesCache.contains(releaseName);
+		metrics.recordCacheLookups(RELEASE_NAMES_CACHE, cached ? 1 : 0, cached ? 0 : 1);
+		return cached;
+	}
+
+	private synchronized void loadReleaseNamesCache() {
+		if (!releaseNamesCacheLoaded) {
+			try {
+				long readStart = System.nanoTime();
+				ResultSet rs = database.selectAll(DBConstants.TABLE_CACHE_RELEASES_NAMES);
+				while (rs.next()) {
+					releaseNamesCache.add(rs.getString(DBConstants.COL_RELEASE_NAME));
+				}
+				metrics.recordDatabaseRead(DBConstants.TABLE_CACHE_RELEASES_NAMES, System.nanoTime() - readStart);
+				releaseNamesCacheLoaded = true;
+			} catch (SQLException e) {
+				log.stackTrace(e);
+			}
 		}
-		return albumCacheNames;
 	}
 
 	/**
 	 * Return the entire contents of the "cache_artists" table as Strings
 	 */
 	public List<String> getArtistCache() throws SQLException {
+		long readStart = System.nanoTime();
 		ResultSet rs = database.selectAll(DBConstants.TABLE_CACHE_ARTISTS);
 		List<String> cachedArtists = new ArrayList<>();
 		while (rs.next()) {
@@ -63,9 +111,103 @@ public class DatabaseService {
 				cachedArtists.add(string);
 			}
 		}
+		metrics.recordDatabaseRead(DBConstants.TABLE_CACHE_ARTISTS, System.nanoTime() - readStart);
 		return cachedArtists;
 	}
 
+	/**
+	 * Return the cached liveness values of the given track IDs. Track IDs that
+	 * haven't been cached yet are not part of the resulting map.
+	 */
+	public Map<String, Float> getTrackLivenessCache(Collection<String> trackIds) throws SQLException {
+		Map<String, Float> livenessByTrackId = new HashMap<>();
+		for (List<String> chunk : SpotifyUtils.partitionList(new ArrayList<>(trackIds), INSERTION_CHUNK_SIZE)) {
+			long readStart = System.nanoTime();
+			ResultSet rs = database.selectAllWhereIn(DBConstants.TABLE_CACHE_TRACK_LIVENESS, DBConstants.COL_TRACK_ID, chunk);
+			while (rs.next()) {
+				livenessByTrackId.put(rs.getString(DBConstants.COL_TRACK_ID), rs.getFloat(DBConstants.COL_LIVENESS));
+			}
+			metrics.recordDatabaseRead(DBConstants.TABLE_CACHE_TRACK_LIVENESS, System.nanoTime() - readStart);
+		}
+		return livenessByTrackId;
+	}
+
+	/**
+	 * Return the locally mirrored state of the given playlist, or null if it was
+	 * never mirrored
+	 */
+	public PlaylistMirror getPlaylistMirror(String playlistId) throws SQLException {
+		long readStart = System.nanoTime();
+		ResultSet snapshotRs = database.selectAllWhereIn(DBConstants.TABLE_PLAYLIST_MIRROR_SNAPSHOTS, DBConstants.COL_PLAYLIST_ID, List.of(playlistId));
+		boolean hasSnapshot = snapshotRs.next();
+		metrics.recordDatabaseRead(DBConstants.TABLE_PLAYLIST_MIRROR_SNAPSHOTS, System.nanoTime() - readStart);
+		if (!hasSnapshot) {
+			return null;
+		}
+		String snapshotId = snapshotRs.getString(DBConstants.COL_SNAPSHOT_ID);
+
+		List<Map.Entry<Integer, MirroredTrack>> positionedTracks = new ArrayList<>();
+		readStart = System.nanoTime();
+		ResultSet rs = database.selectAllWhereIn(DBConstants.TABLE_PLAYLIST_MIRROR, DBConstants.COL_PLAYLIST_ID, List.of(playlistId));
+		while (rs.next()) {
+			long addedAt = rs.getLong(DBConstants.COL_ADDED_AT);
+			MirroredTrack track = new MirroredTrack(
+				rs.getString(DBConstants.COL_TRACK_ID),
+				rs.getString(DBConstants.COL_TRACK_URI),
+				rs.wasNull() ? null : new Date(addedAt));
+			positionedTracks.add(Map.entry(rs.getInt(DBConstants.COL_POSITION), track));
+		}
+		metrics.recordDatabaseRead(DBConstants.TABLE_PLAYLIST_MIRROR, System.nanoTime() - readStart);
+		positionedTracks.sort(Comparator.comparing(Map.Entry::getKey));
+		List<MirroredTrack> tracks = positionedTracks.stream()
+			.map(Map.Entry::getValue)
+			.collect(Collectors.toList());
+		List<Integer> sortKeys = positionedTracks.stream()
+			.map(Map.Entry::getKey)
+			.collect(Collectors.toList());
+		return new PlaylistMirror(playlistId, snapshotId, tracks, sortKeys);
+	}
+
+	/**
+	 * Return all pending entries of the playlist journal, in the order they were
+	 * journaled
+	 */
+	public List<PlaylistJournalEntry> getPendingPlaylistAdditions() throws SQLException {
+		List<PlaylistJournalEntry> entries = new ArrayList<>();
+		long readStart = System.nanoTime();
+		ResultSet rs = database.selectAll(DBConstants.TABLE_PLAYLIST_JOURNAL);
+		while (rs.next()) {
+			entries.add(new PlaylistJournalEntry(
+				rs.getString(DBConstants.COL_PLAYLIST_ID),
+				rs.getString(DBConstants.COL_TRACK_ID),
+				rs.getString(DBConstants.COL_TRACK_URI),
+				rs.getLong(DBConstants.COL_JOURNALED_AT),
+				rs.getInt(DBConstants.COL_SEQUENCE)));
+		}
+		metrics.recordDatabaseRead(DBConstants.TABLE_PLAYLIST_JOURNAL, System.nanoTime() - readStart);
+		entries.sort(Comparator.comparingLong(PlaylistJournalEntry::getJournaledAt).thenComparingInt(PlaylistJournalEntry::getSequence));
+		return entries;
+	}
+
+	/**
+	 * Return all messages of the forwarder outbox that are still waiting to be
+	 * delivered
+	 */
+	public List<ForwarderMessage> getForwarderOutbox() throws SQLException {
+		List<ForwarderMessage> messages = new ArrayList<>();
+		long readStart = System.nanoTime();
+		ResultSet rs = database.selectAll(DBConstants.TABLE_FORWARDER_OUTBOX);
+		while (rs.next()) {
+			messages.add(new ForwarderMessage(
+				rs.getString(DBConstants.COL_RELEASE_ID),
+				rs.getString(DBConstants.COL_MESSAGE),
+				rs.getInt(DBConstants.COL_ATTEMPTS),
+				rs.getLong(DBConstants.COL_NEXT_ATTEMPT_AT)));
+		}
+		metrics.recordDatabaseRead(DBConstants.TABLE_FORWARDER_OUTBOX, System.nanoTime() - readStart);
+		return messages;
+	}
+
 	////////////////////////
 	// WRITE
 
@@ -91,7 +233,8 @@ public class DatabaseService {
 	}
 
 	/**
-	 * Cache the album names of the given list of albums
+	 * Cache the album names of the given list of albums (both in the database and
+	 * the in-memory release names cache)
 	 */
 	public void cacheAlbumNames(List<AlbumSimplified> albumsSimplified) {
 		List<String> albumIds = albumsSimplified.stream()
@@ -105,12 +248,213 @@ public class DatabaseService {
 					chunk,
 					DBConstants.TABLE_CACHE_RELEASES_NAMES,
 					DBConstants.COL_RELEASE_NAME);
+				chunk.forEach(releaseNamesCache::add);
+			} catch (SQLException e) {
+				log.stackTrace(e);
+			}
+		}
+	}
+
+	/**
+	 * Cache the liveness values of the given tracks
+	 */
+	public void cacheTrackLiveness(Map<String, Float> livenessByTrackId) {
+		List<String> trackIds = new ArrayList<>(livenessByTrackId.keySet());
+		for (List<String> chunk : SpotifyUtils.partitionList(trackIds, INSERTION_CHUNK_SIZE)) {
+			Map<String, Float> chunkPairs = new HashMap<>();
+			for (String trackId : chunk) {
+				chunkPairs.put(trackId, livenessByTrackId.get(trackId));
+			}
+			try {
+				database.insertAllPairs(
+					chunkPairs,
+					DBConstants.TABLE_CACHE_TRACK_LIVENESS,
+					DBConstants.COL_TRACK_ID,
+					DBConstants.COL_LIVENESS);
+			} catch (SQLException e) {
+				log.stackTrace(e);
+			}
+		}
+	}
+
+	/**
+	 * Replace the locally mirrored state of the playlist with the given one
+	 */
+	public synchronized void storePlaylistMirror(PlaylistMirror playlistMirror) {
+		String playlistId = playlistMirror.getPlaylistId();
+		try {
+			database.inTransaction(() -> {
+				database.removeAll(List.of(playlistId), DBConstants.TABLE_PLAYLIST_MIRROR_SNAPSHOTS, DBConstants.COL_PLAYLIST_ID);
+				database.removeAll(List.of(playlistId), DBConstants.TABLE_PLAYLIST_MIRROR, DBConstants.COL_PLAYLIST_ID);
+				List<Integer> allPositions = new ArrayList<>();
+				for (int position = 0; position < playlistMirror.size(); position++) {
+					allPositions.add(position);
+				}
+				insertPlaylistMirrorRows(playlistMirror, allPositions);
+				database.insertAllPairs(Map.of(playlistId, playlistMirror.getSnapshotId()),
+					DBConstants.TABLE_PLAYLIST_MIRROR_SNAPSHOTS, DBConstants.COL_PLAYLIST_ID, DBConstants.COL_SNAPSHOT_ID);
+			});
+		} catch (SQLException e) {
+			log.stackTrace(e);
+		}
+	}
+
+	/**
+	 * Update the locally mirrored state of the playlist from the previous to the
+	 * given one, by only writing the changed rows (as identified by their sort
+	 * keys): rows of removed tracks are deleted and rows of added tracks inserted.
+	 * If that fails, the mirror is replaced entirely.
+	 *
+	 * @param previousMirror the mirror as it is currently stored
+	 * @param playlistMirror the updated mirror
+	 */
+	public synchronized void updatePlaylistMirror(PlaylistMirror previousMirror, PlaylistMirror playlistMirror) {
+		String playlistId = playlistMirror.getPlaylistId();
+		Set<Integer> previousSortKeys = new HashSet<>(previousMirror.getSortKeys());
+		Set<Integer> currentSortKeys = new HashSet<>(playlistMirror.getSortKeys());
+		List<String> removedSortKeys = previousSortKeys.stream()
+			.filter(sortKey -> !currentSortKeys.contains(sortKey))
+			.map(String::valueOf)
+			.collect(Collectors.toList());
+		List<Integer> addedPositions = new ArrayList<>();
+		for (int position = 0; position < playlistMirror.size(); position++) {
+			if (!previousSortKeys.contains(playlistMirror.getSortKeys().get(position))) {
+				addedPositions.add(position);
+			}
+		}
+		try {
+			database.inTransaction(() -> {
+				for (List<String> chunk : SpotifyUtils.partitionList(removedSortKeys, INSERTION_CHUNK_SIZE)) {
+					database.removeAllWhereIn(DBConstants.TABLE_PLAYLIST_MIRROR, DBConstants.COL_PLAYLIST_ID, playlistId, DBConstants.COL_POSITION, chunk);
+				}
+				insertPlaylistMirrorRows(playlistMirror, addedPositions);
+				database.insertAllPairs(Map.of(playlistId, playlistMirror.getSnapshotId()),
+					DBConstants.TABLE_PLAYLIST_MIRROR_SNAPSHOTS, DBConstants.COL_PLAYLIST_ID, DBConstants.COL_SNAPSHOT_ID);
+			});
+		} catch (SQLException e) {
+			log.stackTrace(e);
+			storePlaylistMirror(playlistMirror);
+		}
+	}
+
+	/**
+	 * Insert the rows of the tracks at the given positions of the mirror, each
+	 * stored under its sort key
+	 */
+	private void insertPlaylistMirrorRows(PlaylistMirror playlistMirror, List<Integer> positions) throws SQLException {
+		List<List<?>> rows = new ArrayList<>();
+		for (int position : positions) {
+			MirroredTrack track = playlistMirror.getTracks().get(position);
+			Long addedAt = track.getAddedAt() != null ? track.getAddedAt().getTime() : null;
+			rows.add(Arrays.asList(playlistMirror.getPlaylistId(), playlistMirror.getSortKeys().get(position), track.getId(), track.getUri(), addedAt));
+		}
+		for (List<List<?>> chunk : SpotifyUtils.partitionList(rows, INSERTION_CHUNK_SIZE)) {
+			database.insertAllRows(chunk, DBConstants.TABLE_PLAYLIST_MIRROR,
+				DBConstants.COL_PLAYLIST_ID, DBConstants.COL_POSITION, DBConstants.COL_TRACK_ID, DBConstants.COL_TRACK_URI, DBConstants.COL_ADDED_AT);
+		}
+	}
+
+	/**
+	 * Remove the locally mirrored state of the playlist, so it gets fully read
+	 * again on next access
+	 */
+	public synchronized void invalidatePlaylistMirror(String playlistId) {
+		try {
+			database.removeAll(List.of(playlistId), DBConstants.TABLE_PLAYLIST_MIRROR_SNAPSHOTS, DBConstants.COL_PLAYLIST_ID);
+		} catch (SQLException e) {
+			log.stackTrace(e);
+		}
+	}
+
+	/**
+	 * Write the given intended playlist additions to the journal. Entries for a
+	 * playlist and track that are already pending are ignored.
+	 *
+	 * @return true if the entries were written
+	 */
+	public boolean journalPlaylistAdditions(List<PlaylistJournalEntry> entries) {
+		List<List<?>> rows = entries.stream()
+			.map(e -> Arrays.asList(e.getPlaylistId(), e.getTrackId(), e.getTrackUri(), e.getJournaledAt(), e.getSequence()))
+			.collect(Collectors.toList());
+		try {
+			for (List<List<?>> chunk : SpotifyUtils.partitionList(rows, INSERTION_CHUNK_SIZE)) {
+				database.insertAllRows(chunk, DBConstants.TABLE_PLAYLIST_JOURNAL,
+					DBConstants.COL_PLAYLIST_ID, DBConstants.COL_TRACK_ID, DBConstants.COL_TRACK_URI, DBConstants.COL_JOURNALED_AT, DBConstants.COL_SEQUENCE);
+			}
+			return true;
+		} catch (SQLException e) {
+			log.stackTrace(e);
+			return false;
+		}
+	}
+
+	/**
+	 * Mark the journal entries of the given playlist and track URIs as done (i.e.
+	 * remove them from the journal)
+	 */
+	public void completePlaylistAdditions(String playlistId, Collection<String> trackUris) {
+		for (List<String> chunk : SpotifyUtils.partitionList(new ArrayList<>(trackUris), INSERTION_CHUNK_SIZE)) {
+			try {
+				database.removeAllWhereIn(DBConstants.TABLE_PLAYLIST_JOURNAL, DBConstants.COL_PLAYLIST_ID, playlistId, DBConstants.COL_TRACK_URI, chunk);
 			} catch (SQLException e) {
 				log.stackTrace(e);
 			}
 		}
 	}
 
+	/**
+	 * Add the given messages to the forwarder outbox. Messages for an album that is
+	 * already waiting in the outbox are ignored.
+	 */
+	public synchronized void enqueueForwarderMessages(List<ForwarderMessage> messages) {
+		try {
+			insertForwarderMessages(messages);
+		} catch (SQLException e) {
+			log.stackTrace(e);
+		}
+	}
+
+	/**
+	 * Replace the given messages in the forwarder outbox (e.g. to store a failed
+	 * delivery attempt). Removal and re-insertion happen in a single transaction,
+	 * so a failure in between can't lose any message.
+	 */
+	public synchronized void updateForwarderMessages(List<ForwarderMessage> messages) {
+		List<String> albumIds = messages.stream()
+			.map(ForwarderMessage::getAlbumId)
+			.collect(Collectors.toList());
+		try {
+			database.inTransaction(() -> {
+				database.removeAll(albumIds, DBConstants.TABLE_FORWARDER_OUTBOX, DBConstants.COL_RELEASE_ID);
+				insertForwarderMessages(messages);
+			});
+		} catch (SQLException e) {
+			log.stackTrace(e);
+		}
+	}
+
+	private void insertForwarderMessages(List<ForwarderMessage> messages) throws SQLException {
+		List<List<?>> rows = messages.stream()
+			.map(m -> Arrays.asList(m.getAlbumId(), m.getMessage(), m.getAttempts(), m.getNextAttemptAt()))
+			.collect(Collectors.toList());
+		for (List<List<?>> chunk : SpotifyUtils.partitionList(rows, INSERTION_CHUNK_SIZE)) {
+			database.insertAllRows(chunk, DBConstants.TABLE_FORWARDER_OUTBOX,
+				DBConstants.COL_RELEASE_ID, DBConstants.COL_MESSAGE, DBConstants.COL_ATTEMPTS, DBConstants.COL_NEXT_ATTEMPT_AT);
+		}
+	}
+
+	/**
+	 * Remove the messages of the given album IDs from the forwarder outbox (after
+	 * they were delivered or given up on)
+	 */
+	public synchronized void removeForwarderMessages(Collection<String> albumIds) {
+		try {
+			database.removeAll(albumIds, DBConstants.TABLE_FORWARDER_OUTBOX, DBConstants.COL_RELEASE_ID);
+		} catch (SQLException e) {
+			log.stackTrace(e);
+		}
+	}
+
 	/**
 	 * Cache the artist IDs in a separate thread
 	 */
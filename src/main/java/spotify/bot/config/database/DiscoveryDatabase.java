@@ -8,6 +8,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import javax.annotation.PreDestroy;
@@ -16,6 +18,7 @@ import org.springframework.stereotype.Repository;
 
 import spotify.api.SpotifyDependenciesSettings;
 import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.DiscoveryBotMetrics;
 import spotify.util.SpotifyUtils;
 
 @Repository
@@ -26,21 +29,35 @@ public class DiscoveryDatabase {
 	private final static String DB_URL_PREFIX = "jdbc:sqlite:";
 
 	private final static String FULL_SELECT_QUERY_MASK = "SELECT * FROM %s";
+	private final static String SELECT_WHERE_IN_QUERY_MASK = "SELECT * FROM %s WHERE %s IN (%s)";
 	private final static String INSERT_QUERY_MASK = "INSERT INTO %s (%s) VALUES %s";
+	private final static String INSERT_PAIRS_QUERY_MASK = "INSERT INTO %s (%s, %s) VALUES %s";
+	private final static String INSERT_ROWS_QUERY_MASK = "INSERT INTO %s (%s) VALUES %s";
 	private final static String DELETE_QUERY_MASK = "DELETE FROM %s WHERE %s = \"%s\"";
+	private final static String DELETE_WHERE_IN_QUERY_MASK = "DELETE FROM %s WHERE %s = '%s' AND %s IN (%s)";
 
 	private final DiscoveryBotLogger log;
 	private final DatabaseCreationService databaseCreationService;
+	private final DiscoveryBotMetrics metrics;
 
 	private String dbUrl;
 	private Connection connection;
 
+	/**
+	 * A sequence of database operations to be run in a single transaction
+	 */
+	@FunctionalInterface
+	interface Transaction {
+		void run() throws SQLException;
+	}
+
 	/**
 	 * Initialize the Database connection to the local database
 	 */
-	DiscoveryDatabase(DiscoveryBotLogger discoveryBotLogger, DatabaseCreationService databaseCreationService, SpotifyDependenciesSettings spotifyDependenciesSettings) {
+	DiscoveryDatabase(DiscoveryBotLogger discoveryBotLogger, DatabaseCreationService databaseCreationService, SpotifyDependenciesSettings spotifyDependenciesSettings, DiscoveryBotMetrics discoveryBotMetrics) {
 		this.log = discoveryBotLogger;
 		this.databaseCreationService = databaseCreationService;
+		this.metrics = discoveryBotMetrics;
 		try {
 			File dbFilePath = SpotifyUtils.normalizeFile(getDbFilePath(spotifyDependenciesSettings.configFilesBase()));
 			this.dbUrl = DB_URL_PREFIX + dbFilePath.getAbsolutePath();
@@ -96,6 +113,24 @@ public class DiscoveryDatabase {
 		return getConnectionInstance().createStatement();
 	}
 
+	/**
+	 * Run the given operations in a single transaction. Either all of them are
+	 * committed or, if any of them fails, none.
+	 */
+	synchronized void inTransaction(Transaction transaction) throws SQLException {
+		Connection transactionConnection = getConnectionInstance();
+		transactionConnection.setAutoCommit(false);
+		try {
+			transaction.run();
+			transactionConnection.commit();
+		} catch (SQLException | RuntimeException e) {
+			transactionConnection.rollback();
+			throw e;
+		} finally {
+			transactionConnection.setAutoCommit(true);
+		}
+	}
+
 	//////////////
 
 	/**
@@ -108,16 +143,64 @@ public class DiscoveryDatabase {
 		return resultSet;
 	}
 
+	/**
+	 * Fetch all rows of a table where the given column matches any of the given strings
+	 */
+	ResultSet selectAllWhereIn(String tableName, String column, Collection<String> strings) throws SQLException {
+		Statement statement = createStatement();
+		String values = strings.stream().map(DiscoveryDatabase::quote).collect(Collectors.joining(", "));
+		ResultSet resultSet = statement.executeQuery(String.format(SELECT_WHERE_IN_QUERY_MASK, tableName, column, values));
+		statement.closeOnCompletion();
+		return resultSet;
+	}
+
 	/**
 	 * Adds all given strings to the specified table's specified column
 	 */
 	synchronized void insertAll(Collection<String> strings, String table, String column) throws SQLException {
 		if (strings != null && !strings.isEmpty()) {
+			long writeStart = System.nanoTime();
 			Statement statement = createStatement();
 
 			String values = strings.stream().map(s -> String.format("('%s')", s)).collect(Collectors.joining(", "));
 			statement.executeUpdate(String.format(INSERT_QUERY_MASK, table, column, values));
 			statement.closeOnCompletion();
+			metrics.recordDatabaseWrite(table, System.nanoTime() - writeStart);
+		}
+	}
+
+	/**
+	 * Adds all given key-value pairs to the specified table's specified key and value columns
+	 */
+	synchronized void insertAllPairs(Map<String, ?> pairs, String table, String keyColumn, String valueColumn) throws SQLException {
+		if (pairs != null && !pairs.isEmpty()) {
+			long writeStart = System.nanoTime();
+			Statement statement = createStatement();
+
+			String values = pairs.entrySet().stream().map(e -> String.format("(%s, %s)", quote(e.getKey()), quote(e.getValue()))).collect(Collectors.joining(", "));
+			statement.executeUpdate(String.format(INSERT_PAIRS_QUERY_MASK, table, keyColumn, valueColumn, values));
+			statement.closeOnCompletion();
+			metrics.recordDatabaseWrite(table, System.nanoTime() - writeStart);
+		}
+	}
+
+	/**
+	 * Adds all given rows to the specified table, each row containing one value per
+	 * given column (in the same order). Null values are stored as NULL.
+	 */
+	synchronized void insertAllRows(Collection<List<?>> rows, String table, String... columns) throws SQLException {
+		if (rows != null && !rows.isEmpty()) {
+			long writeStart = System.nanoTime();
+			Statement statement = createStatement();
+
+			String values = rows.stream()
+				.map(row -> row.stream()
+					.map(DiscoveryDatabase::quote)
+					.collect(Collectors.joining(", ", "(", ")")))
+				.collect(Collectors.joining(", "));
+			statement.executeUpdate(String.format(INSERT_ROWS_QUERY_MASK, table, String.join(", ", columns), values));
+			statement.closeOnCompletion();
+			metrics.recordDatabaseWrite(table, System.nanoTime() - writeStart);
 		}
 	}
 
@@ -126,11 +209,36 @@ public class DiscoveryDatabase {
 	 */
 	synchronized void removeAll(Collection<String> strings, String table, String column) throws SQLException {
 		if (strings != null && !strings.isEmpty()) {
+			long writeStart = System.nanoTime();
 			Statement statement = createStatement();
 			for (String string : strings) {
 				statement.executeUpdate(String.format(DELETE_QUERY_MASK, table, column, string));
 			}
 			statement.closeOnCompletion();
+			metrics.recordDatabaseWrite(table, System.nanoTime() - writeStart);
+		}
+	}
+
+	/**
+	 * Removes all rows where the key column matches the given key and the given
+	 * column matches any of the given strings
+	 */
+	synchronized void removeAllWhereIn(String table, String keyColumn, String key, String column, Collection<String> strings) throws SQLException {
+		if (strings != null && !strings.isEmpty()) {
+			long writeStart = System.nanoTime();
+			Statement statement = createStatement();
+			String values = strings.stream().map(DiscoveryDatabase::quote).collect(Collectors.joining(", "));
+			statement.executeUpdate(String.format(DELETE_WHERE_IN_QUERY_MASK, table, keyColumn, key.replace("'", "''"), column, values));
+			statement.closeOnCompletion();
+			metrics.recordDatabaseWrite(table, System.nanoTime() - writeStart);
 		}
 	}
+
+	/**
+	 * Return the given value as SQL string literal with escaped single quotes, or
+	 * NULL for null values
+	 */
+	private static String quote(Object value) {
+		return value != null ? String.format("'%s'", value.toString().replace("'", "''")) : "NULL";
+	}
 }
@@ -8,6 +8,7 @@ import java.net.URL;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -21,12 +22,12 @@ import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.enums.AlbumGroup;
 import se.michaelthelin.spotify.model_objects.specification.Playlist;
 import se.michaelthelin.spotify.model_objects.specification.User;
-import spotify.api.SpotifyCall;
 import spotify.api.SpotifyDependenciesSettings;
 import spotify.api.events.SpotifyApiException;
 import spotify.bot.service.PlaylistMetaService;
 import spotify.bot.util.DiscoveryBotLogger;
 import spotify.bot.util.DiscoveryBotUtils;
+import spotify.bot.util.SpotifyCallBudget;
 import spotify.bot.util.data.AlbumGroupExtended;
 import spotify.services.UserService;
 
@@ -34,6 +35,9 @@ import spotify.services.UserService;
 public class PlaylistStoreConfig {
 	private final static String PLAYLIST_PROPERTIES_FILENAME = "playlist.properties";
 	private final static String PLAYLIST_URI_PREFIX = "https://open.spotify.com/playlist/";
+	private final static String REQUEST_PLAYLIST = "playlist";
+	private final static String REQUEST_CREATE_PLAYLIST = "create_playlist";
+	private final static String REQUEST_CURRENT_USER = "current_user";
 
 	private Map<AlbumGroupExtended, PlaylistStore> playlistStoreMap;
 
@@ -44,13 +48,15 @@ public class PlaylistStoreConfig {
 
 	private final SpotifyApi spotifyApi;
 	private final UserService userService;
+	private final SpotifyCallBudget callBudget;
 	private final DiscoveryBotLogger log;
 
 	private final File playlistPropertiesFile;
 
-	PlaylistStoreConfig(SpotifyApi spotifyApi, UserService userService, DiscoveryBotLogger discoveryBotLogger, SpotifyDependenciesSettings spotifyDependenciesSettings) {
+	PlaylistStoreConfig(SpotifyApi spotifyApi, UserService userService, SpotifyCallBudget spotifyCallBudget, DiscoveryBotLogger discoveryBotLogger, SpotifyDependenciesSettings spotifyDependenciesSettings) {
 		this.spotifyApi = spotifyApi;
 		this.userService = userService;
+		this.callBudget = spotifyCallBudget;
 		this.log = discoveryBotLogger;
 		this.enabledAlbumGroups = new ArrayList<>();
 		this.disabledAlbumGroups = new ArrayList<>();
@@ -113,12 +119,12 @@ public class PlaylistStoreConfig {
 			if (playlistId != null && !playlistId.isBlank()) {
 				Playlist playlist;
 				try {
-					playlist = SpotifyCall.execute(spotifyApi.getPlaylist(playlistId));
+					playlist = callBudget.execute(REQUEST_PLAYLIST, SpotifyCallBudget.playlist(playlistId), spotifyApi.getPlaylist(playlistId));
 				} catch (SpotifyApiException e) {
 					throw new IOException("Playlist ID for '" + albumGroupExtended.getGroupName() + "' does not point to an existing playlist");
 				}
 				User playlistOwner = playlist.getOwner();
-				User currentUser = userService.getCurrentUser();
+				User currentUser = callBudget.account(REQUEST_CURRENT_USER, null, userService::getCurrentUser);
 				if (!Objects.equals(playlistOwner.getId(), currentUser.getId())) {
 					throw new IOException("You are not the owner of the playlist for '" + albumGroupExtended.getGroupName() + "'");
 				}
@@ -128,7 +134,7 @@ public class PlaylistStoreConfig {
 					disabledAlbumGroups.add(albumGroupExtended);
 				} else {
 					String playlistName = PlaylistMetaService.INDICATOR_OFF + " New " + albumGroupExtended.getHumanName();
-					Playlist newPlaylist = SpotifyCall.execute(spotifyApi.createPlaylist(userService.getCurrentUser().getId(), playlistName).public_(false));
+					Playlist newPlaylist = callBudget.execute(REQUEST_CREATE_PLAYLIST, null, spotifyApi.createPlaylist(callBudget.account(REQUEST_CURRENT_USER, null, userService::getCurrentUser).getId(), playlistName).public_(false));
 					properties.putIfAbsent(albumGroupExtended.getGroupName(), newPlaylist.getId());
 					changes = true;
 				}
@@ -189,6 +195,30 @@ public class PlaylistStoreConfig {
 			.orElse(null);
 	}
 
+	/**
+	 * Returns all playlist stores pointing to the given (physical) playlist ID,
+	 * sorted by the default playlist group order
+	 */
+	public List<PlaylistStore> getPlaylistStoresSharingPlaylist(String playlistId) {
+		return getPlaylistStoreMap().values().stream()
+			.filter(ps -> Objects.equals(ps.getPlaylistId(), playlistId))
+			.sorted()
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Group the given playlist stores by their (physical) playlist ID, as several
+	 * album groups may share the same playlist. Both the groups and the stores
+	 * within them are sorted by the default playlist group order. Stores without a
+	 * playlist ID are omitted.
+	 */
+	public static Map<String, List<PlaylistStore>> groupByPlaylistId(Collection<PlaylistStore> playlistStores) {
+		return playlistStores.stream()
+			.filter(ps -> ps.getPlaylistId() != null)
+			.sorted()
+			.collect(Collectors.groupingBy(PlaylistStore::getPlaylistId, LinkedHashMap::new, Collectors.toList()));
+	}
+
 	/**
 	 * Returns the stored playlist store by the given album group.
 	 */
@@ -31,6 +31,7 @@ import spotify.bot.properties.BlacklistService;
 import spotify.bot.config.properties.PlaylistStoreConfig;
 import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
 import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.DiscoveryBotMetrics;
 import spotify.bot.util.DiscoveryBotUtils;
 import spotify.bot.util.data.AlbumGroupExtended;
 import spotify.util.SpotifyUtils;
@@ -50,22 +51,30 @@ public class FilterService {
 	 */
 	private final static String VARIOUS_ARTISTS = "Various Artists";
 
+	private final static String RELEASE_IDS_CACHE = "release_ids";
+
 	private final DiscoveryBotLogger log;
 	private final DatabaseService databaseService;
 	private final PlaylistStoreConfig playlistStoreConfig;
 	private final BlacklistService blacklistService;
 	private final FeatureControl featureControl;
+	private final ParallelStageExecutor parallelStageExecutor;
+	private final DiscoveryBotMetrics metrics;
 
 	FilterService(DiscoveryBotLogger discoveryBotLogger,
 			DatabaseService databaseService,
 			PlaylistStoreConfig playlistStoreConfig,
 			BlacklistService blacklistService,
-			FeatureControl featureControl) {
+			FeatureControl featureControl,
+			ParallelStageExecutor parallelStageExecutor,
+			DiscoveryBotMetrics discoveryBotMetrics) {
 		this.log = discoveryBotLogger;
 		this.databaseService = databaseService;
 		this.playlistStoreConfig = playlistStoreConfig;
 		this.blacklistService = blacklistService;
 		this.featureControl = featureControl;
+		this.parallelStageExecutor = parallelStageExecutor;
+		this.metrics = discoveryBotMetrics;
 	}
 
 	private final static DateTimeFormatter RELEASE_DATE_PARSER = new DateTimeFormatterBuilder()
@@ -101,9 +110,11 @@ public class FilterService {
 		}
 
 		Set<String> albumCache = new HashSet<>(databaseService.getReleasesIdsCache());
-		return filteredAlbums.values().stream()
+		List<AlbumSimplified> nonCachedAlbums = filteredAlbums.values().stream()
 			.filter(a -> !albumCache.contains(a.getId()))
 			.collect(Collectors.toList());
+		metrics.recordCacheLookups(RELEASE_IDS_CACHE, filteredAlbums.size() - nonCachedAlbums.size(), nonCachedAlbums.size());
+		return nonCachedAlbums;
 	}
 
 	////////////
@@ -187,9 +198,7 @@ public class FilterService {
 	 * @return the albums without releases that had a release date after today
 	 */
 	public List<AlbumSimplified> filterFutureAlbums(List<AlbumSimplified> albums) {
-		return albums.stream()
-			.filter(this::isNotInTheFuture)
-			.collect(Collectors.toList());
+		return parallelStageExecutor.filter(albums, this::isNotInTheFuture);
 	}
 	
 	/**
@@ -239,8 +248,7 @@ public class FilterService {
 			}
 		}
 		Collection<AlbumSimplified> leftoverAlbums = uniqueMap.values();
-		log.printDroppedAlbumDifference(unfilteredAlbums, leftoverAlbums,
-			String.format("Dropped %d duplicate[s] released at the same time:", unfilteredAlbums.size() - leftoverAlbums.size()));
+		log.printDroppedAlbumDifference(unfilteredAlbums, leftoverAlbums, "Dropped %d duplicate[s] released at the same time:");
 		return new ArrayList<>(leftoverAlbums);
 	}
 	
@@ -249,12 +257,9 @@ public class FilterService {
 	 * rerelease remapping is enabled, this will only be applied to non-albums
 	 */
 	public List<AlbumSimplified> filterNewAlbumsOnly(List<AlbumSimplified> unfilteredReleases) {
-		List<AlbumSimplified> filteredReleases = unfilteredReleases.stream()
-			.filter(release -> (AlbumGroup.ALBUM.equals(release.getAlbumGroup()))
-				|| isValidDate(release))
-			.collect(Collectors.toList());
-		log.printDroppedAlbumDifference(unfilteredReleases, filteredReleases,
-			String.format("Dropped %d non-cached but too-old release[s]:", unfilteredReleases.size() - filteredReleases.size()));
+		List<AlbumSimplified> filteredReleases = parallelStageExecutor.filter(unfilteredReleases,
+			release -> (AlbumGroup.ALBUM.equals(release.getAlbumGroup())) || isValidDate(release));
+		log.printDroppedAlbumDifference(unfilteredReleases, filteredReleases, "Dropped %d non-cached but too-old release[s]:");
 		return filteredReleases;
 	}
 
@@ -288,22 +293,19 @@ public class FilterService {
 
 			// Filter out any collection, samplers, or albums whose primary artist is
 			// already a followee
-			List<AlbumTrackPair> albumsWithoutCollectionsOrSamplers = unfilteredAppearsOnAlbums.stream()
-				.filter(atp -> !isCollectionOrSampler(atp.getAlbum()))
-				.collect(Collectors.toList());
+			List<AlbumTrackPair> albumsWithoutCollectionsOrSamplers = parallelStageExecutor.filter(unfilteredAppearsOnAlbums,
+				atp -> !isCollectionOrSampler(atp.getAlbum()));
 
 			// Of those, filter out the actual songs where a featured artist is a followee
-			List<AlbumTrackPair> filteredAppearsOnAlbums = new ArrayList<>();
-			for (AlbumTrackPair atp : albumsWithoutCollectionsOrSamplers) {
+			List<AlbumTrackPair> filteredAppearsOnAlbums = parallelStageExecutor.map(albumsWithoutCollectionsOrSamplers, atp -> {
 				List<TrackSimplified> selectedSongsOfAlbum = atp.getTracks().stream()
 					.filter(song -> containsFeaturedArtist(followedArtistsSet, song.getArtists()))
 					.collect(Collectors.toList());
-				filteredAppearsOnAlbums.add(AlbumTrackPair.of(atp.getAlbum(), selectedSongsOfAlbum));
-			}
+				return AlbumTrackPair.of(atp.getAlbum(), selectedSongsOfAlbum);
+			});
 
 			// Show log message
-			int droppedAppearsOnCount = unfilteredAppearsOnAlbums.size() - filteredAppearsOnAlbums.size();
-			log.printDroppedAlbumTrackPairDifference(unfilteredAppearsOnAlbums, filteredAppearsOnAlbums, String.format("Dropped %d APPEARS_ON release[s]:", droppedAppearsOnCount));
+			log.printDroppedAlbumTrackPairDifference(unfilteredAppearsOnAlbums, filteredAppearsOnAlbums, "Dropped %d APPEARS_ON release[s]:");
 
 			// Finalize
 			Map<AlbumGroup, List<AlbumTrackPair>> intelligentAppearsOnFilteredMap = new HashMap<>(categorizedFilteredAlbums);
@@ -359,9 +361,7 @@ public class FilterService {
 		// If after the blacklist removal a potential release type is suddenly completely empty, remove it entirely
 		songsByPS.values().removeIf(List::isEmpty);
 
-		if (!allDroppedReleases.isEmpty()) {
-			log.printDroppedAlbumsCustomGroup(allDroppedReleases, "Dropped " + allDroppedReleases.size() + " blacklisted release[s]:");
-		}
+		log.printDroppedAlbumsCustomGroup(allDroppedReleases, "Dropped %d blacklisted release[s]:");
 		return songsByPS;
 	}
 }
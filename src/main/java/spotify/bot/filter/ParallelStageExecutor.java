@@ -0,0 +1,111 @@
+package spotify.bot.filter;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import spotify.bot.util.DiscoveryBotMetrics;
+
+/**
+ * Evaluates side-effect free filtering stages (e.g. date filtering, title
+ * classification, appears_on track filtering) on a dedicated ForkJoinPool, but
+ * only once the input exceeds the configured threshold. Smaller inputs (i.e.
+ * any regular crawl) are evaluated on the calling thread, as the overhead of
+ * splitting wouldn't pay off.<br/>
+ * <br/>
+ * The results always retain the encounter order of the input, so any
+ * subsequent dropped-release log output is identical to the sequential mode.
+ * The given functions must not have any side effects or call the Spotify API.
+ */
+@Component
+public class ParallelStageExecutor {
+	private final static int DEFAULT_PARALLEL_THRESHOLD = 2000;
+	private final static String METRICS_EXECUTOR_NAME = "parallel_stage";
+
+	private final int parallelThreshold;
+	private final ForkJoinPool forkJoinPool;
+
+	public ParallelStageExecutor(DiscoveryBotMetrics metrics,
+			@Value("${spotify.discovery.crawl.parallel_threshold:#{" + DEFAULT_PARALLEL_THRESHOLD + "}}") int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+		this.forkJoinPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		metrics.registerQueue(METRICS_EXECUTOR_NAME, forkJoinPool, pool -> pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+	}
+
+	@PreDestroy
+	void shutdown() {
+		forkJoinPool.shutdownNow();
+	}
+
+	/**
+	 * Return all elements that match the given predicate, in their original order
+	 */
+	public <T> List<T> filter(List<T> elements, Predicate<? super T> predicate) {
+		if (!isParallel(elements)) {
+			return elements.stream()
+				.filter(predicate)
+				.collect(Collectors.toList());
+		}
+		return invoke(() -> elements.parallelStream()
+			.filter(predicate)
+			.collect(Collectors.toList()));
+	}
+
+	/**
+	 * Return the mapped elements, in their original order
+	 */
+	public <T, R> List<R> map(List<T> elements, Function<? super T, ? extends R> mapper) {
+		if (!isParallel(elements)) {
+			return elements.stream()
+				.map(mapper)
+				.collect(Collectors.toList());
+		}
+		return invoke(() -> elements.parallelStream()
+			.map(mapper)
+			.collect(Collectors.<R>toList()));
+	}
+
+	/**
+	 * Run the given action for every element (in no particular order if run in
+	 * parallel). Only meant to warm up caches of otherwise pure functions.
+	 */
+	public <T> void forEach(List<T> elements, Consumer<? super T> action) {
+		if (!isParallel(elements)) {
+			elements.forEach(action);
+		} else {
+			invoke(() -> {
+				elements.parallelStream().forEach(action);
+				return null;
+			});
+		}
+	}
+
+	private boolean isParallel(List<?> elements) {
+		return parallelThreshold > 0 && elements.size() >= parallelThreshold;
+	}
+
+	private <R> R invoke(Callable<R> task) {
+		try {
+			return forkJoinPool.submit(task).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+}
@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
 
@@ -13,21 +15,27 @@ import spotify.bot.config.properties.PlaylistStoreConfig;
 import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
 import spotify.bot.filter.remapper.EpRemapper;
 import spotify.bot.filter.remapper.LiveRemapper;
+import spotify.bot.filter.remapper.ReleaseTitleClassifier;
 import spotify.bot.filter.remapper.Remapper;
 import spotify.bot.filter.remapper.Remapper.Action;
 import spotify.bot.filter.remapper.RemixRemapper;
 import spotify.bot.filter.remapper.RereleaseRemapper;
 import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.DiscoveryBotMetrics;
 import spotify.bot.util.data.AlbumGroupExtended;
 import spotify.util.data.AlbumTrackPair;
 
 @Service
 public class RemappingService {
+	private final static String TITLE_FLAGS_CACHE = "release_title_flags";
+
 	private final PlaylistStoreConfig playlistStoreConfig;
 	private final EpRemapper epRemapper;
 	private final RemixRemapper remixRemapper;
 	private final RereleaseRemapper rereleaseRemapper;
 	private final LiveRemapper liveRemapper;
+	private final ReleaseTitleClassifier releaseTitleClassifier;
+	private final ParallelStageExecutor parallelStageExecutor;
 	private final DiscoveryBotLogger log;
 
 	RemappingService(PlaylistStoreConfig playlistStoreConfig,
@@ -35,13 +43,19 @@ public class RemappingService {
 			RemixRemapper remixRemapper,
 			RereleaseRemapper rereleaseRemapper,
 			LiveRemapper liveRemapper,
-			DiscoveryBotLogger discoveryBotLogger) {
+			ReleaseTitleClassifier releaseTitleClassifier,
+			ParallelStageExecutor parallelStageExecutor,
+			DiscoveryBotLogger discoveryBotLogger,
+			DiscoveryBotMetrics discoveryBotMetrics) {
 		this.playlistStoreConfig = playlistStoreConfig;
 		this.epRemapper = epRemapper;
 		this.remixRemapper = remixRemapper;
 		this.rereleaseRemapper = rereleaseRemapper;
 		this.liveRemapper = liveRemapper;
+		this.releaseTitleClassifier = releaseTitleClassifier;
+		this.parallelStageExecutor = parallelStageExecutor;
 		this.log = discoveryBotLogger;
+		discoveryBotMetrics.registerCache(TITLE_FLAGS_CACHE, releaseTitleClassifier, ReleaseTitleClassifier::getCacheHits, ReleaseTitleClassifier::getCacheMisses);
 	}
 
 	/**
@@ -73,7 +87,14 @@ public class RemappingService {
 		// Copy map first to retain the input map (makes debugging easier)
 		Map<PlaylistStore, List<AlbumTrackPair>> regroupedMap = new HashMap<>(songsByPS);
 
-		rereleaseRemapper.refreshCachedReleaseNames();
+		// Classify all titles up front, so the (sequential) remappers only hit the cache
+		releaseTitleClassifier.clearCache();
+		List<AlbumTrackPair> allReleases = regroupedMap.values().stream()
+			.filter(Objects::nonNull)
+			.flatMap(List::stream)
+			.collect(Collectors.toList());
+		parallelStageExecutor.forEach(allReleases, releaseTitleClassifier::classify);
+
 		remap(rereleaseRemapper, regroupedMap);
 		remap(remixRemapper, regroupedMap);
 		remap(liveRemapper, regroupedMap);
@@ -89,6 +110,14 @@ public class RemappingService {
 		PlaylistStore ps = playlistStoreConfig.getPlaylistStore(age);
 
 		if (ps != null && ps.getPlaylistId() != null) {
+			List<AlbumTrackPair> candidates = baseTrackMap.entrySet().stream()
+				.filter(entry -> remapper.isAllowedAlbumGroup(entry.getKey().getAlbumGroupExtended()))
+				.map(Map.Entry::getValue)
+				.filter(Objects::nonNull)
+				.flatMap(List::stream)
+				.collect(Collectors.toList());
+			remapper.prepare(candidates);
+
 			List<AlbumTrackPair> remappedReleases = new ArrayList<>();
 			List<AlbumTrackPair> erasedReleases = new ArrayList<>();
 
@@ -120,8 +149,7 @@ public class RemappingService {
 				}
 			}
 
-			log.printDroppedAlbumTrackPairs(erasedReleases,
-				String.format("Dropped %d invalid release[s] during remapping:", erasedReleases.size()));
+			log.printDroppedAlbumTrackPairs(erasedReleases, "Dropped %d invalid release[s] during remapping:");
 
 			if (!remappedReleases.isEmpty()) {
 				baseTrackMap.put(ps, remappedReleases);
@@ -148,9 +176,7 @@ public class RemappingService {
 			}
 		}
 
-		if (!allDroppedReleases.isEmpty()) {
-			log.printDroppedAlbumsCustomGroup(allDroppedReleases, "Dropped " + allDroppedReleases.size() + " release[s] for disabled album groups:");
-		}
+		log.printDroppedAlbumsCustomGroup(allDroppedReleases, "Dropped %d release[s] for disabled album groups:");
 		return songsByPS;
 	}
 }
@@ -2,12 +2,20 @@ package spotify.bot.filter.remapper;
 
 import org.springframework.stereotype.Component;
 
+import spotify.bot.filter.remapper.ReleaseTitleClassifier.TitleFlag;
 import spotify.bot.util.data.AlbumGroupExtended;
 import spotify.util.SpotifyUtils;
 import spotify.util.data.AlbumTrackPair;
 
 @Component
 public class EpRemapper implements Remapper {
+
+	private final ReleaseTitleClassifier releaseTitleClassifier;
+
+	public EpRemapper(ReleaseTitleClassifier releaseTitleClassifier) {
+		this.releaseTitleClassifier = releaseTitleClassifier;
+	}
+
 	@Override
 	public AlbumGroupExtended getAlbumGroup() {
 		return AlbumGroupExtended.EP;
@@ -21,8 +29,15 @@ public class EpRemapper implements Remapper {
 		return AlbumGroupExtended.SINGLE.equals(albumGroupExtended);
 	}
 
+	/**
+	 * Releases without any EP hint are skipped right away. A hint is either the
+	 * title or the release having more than one track (as a single song is never an
+	 * EP). The actual decision is left to the full EP check.
+	 */
 	@Override
 	public Action determineRemapAction(AlbumTrackPair atp) {
-		return Action.of(SpotifyUtils.isExtendedPlay(atp));
+		boolean hint = releaseTitleClassifier.classify(atp).contains(TitleFlag.EP)
+			|| (atp.getTracks() != null && atp.getTracks().size() > 1);
+		return Action.of(hint && SpotifyUtils.isExtendedPlay(atp));
 	}
 }
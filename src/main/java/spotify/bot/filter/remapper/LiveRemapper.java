@@ -1,7 +1,15 @@
 package spotify.bot.filter.remapper;
 
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.bot.filter.remapper.ReleaseTitleClassifier.TitleFlag;
+import spotify.bot.service.TrackLivenessService;
 import spotify.bot.util.data.AlbumGroupExtended;
 import spotify.services.TrackService;
 import spotify.util.SpotifyUtils;
@@ -11,9 +19,22 @@ import spotify.util.data.AlbumTrackPair;
 public class LiveRemapper implements Remapper {
 
 	private final TrackService trackService;
+	private final TrackLivenessService trackLivenessService;
+	private final ReleaseTitleClassifier releaseTitleClassifier;
+	private final double livenessThreshold;
+	private final double livenessThresholdWithTitle;
+
+	private Map<String, Float> livenessByTrackId;
 
-	public LiveRemapper(TrackService trackService) {
+	public LiveRemapper(TrackService trackService, TrackLivenessService trackLivenessService, ReleaseTitleClassifier releaseTitleClassifier,
+			@Value("${spotify.discovery.remapping.live_liveness_threshold:0.5}") double livenessThreshold,
+			@Value("${spotify.discovery.remapping.live_liveness_threshold_with_title:0.25}") double livenessThresholdWithTitle) {
 		this.trackService = trackService;
+		this.trackLivenessService = trackLivenessService;
+		this.releaseTitleClassifier = releaseTitleClassifier;
+		this.livenessThreshold = livenessThreshold;
+		this.livenessThresholdWithTitle = livenessThresholdWithTitle;
+		this.livenessByTrackId = Map.of();
 	}
 
 	@Override
@@ -30,8 +51,55 @@ public class LiveRemapper implements Remapper {
 		return !albumGroupExtended.isExtendedType() && !AlbumGroupExtended.APPEARS_ON.equals(albumGroupExtended);
 	}
 
+	/**
+	 * Resolve the liveness of every track of every candidate release at once
+	 * (taken from the database cache where possible)
+	 */
+	@Override
+	public void prepare(List<AlbumTrackPair> candidates) {
+		List<String> trackIds = candidates.stream()
+			.flatMap(atp -> atp.getTracks().stream())
+			.map(TrackSimplified::getId)
+			.collect(Collectors.toList());
+		this.livenessByTrackId = trackLivenessService.resolveLiveness(trackIds);
+	}
+
+	/**
+	 * Applies the same rule as the library's live check, but on the liveness
+	 * resolved during {@link LiveRemapper#prepare}: a release is live if the
+	 * average liveness of its tracks reaches the threshold, or the lower threshold
+	 * if the album or any track title carries a live marker. Only releases whose
+	 * liveness couldn't be fully resolved are left to the library check, which
+	 * fetches the audio features itself.
+	 */
 	@Override
 	public Action determineRemapAction(AlbumTrackPair atp) {
-		return Action.of(SpotifyUtils.isLiveRelease(atp, trackService));
+		Double averageLiveness = averageLiveness(atp.getTracks());
+		if (averageLiveness == null) {
+			return Action.of(SpotifyUtils.isLiveRelease(atp, trackService));
+		}
+		if (averageLiveness >= livenessThreshold) {
+			return Action.REMAP;
+		}
+		return Action.of(averageLiveness >= livenessThresholdWithTitle && releaseTitleClassifier.classify(atp).contains(TitleFlag.LIVE));
+	}
+
+	/**
+	 * Return the average liveness of the given tracks, or null if it isn't known
+	 * for at least one of them
+	 */
+	private Double averageLiveness(List<TrackSimplified> tracks) {
+		if (tracks.isEmpty()) {
+			return null;
+		}
+		double livenessSum = 0.0;
+		for (TrackSimplified track : tracks) {
+			Float liveness = track.getId() != null ? livenessByTrackId.get(track.getId()) : null;
+			if (liveness == null) {
+				return null;
+			}
+			livenessSum += liveness;
+		}
+		return livenessSum / tracks.size();
 	}
 }
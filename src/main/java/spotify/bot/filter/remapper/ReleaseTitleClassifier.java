@@ -0,0 +1,422 @@
+package spotify.bot.filter.remapper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * Single-pass title classifier for the remappers. Every album and track name is
+ * scanned exactly once by a combined keyword automaton (Aho-Corasick, flattened
+ * into a DFA), which yields all title flags at the same time. The results are
+ * cached per release until {@link ReleaseTitleClassifier#clearCache} is called.<br/>
+ * <br/>
+ * Titles are normalized on the fly before being fed into the automaton:
+ * <ul>
+ * <li>ASCII letters are lowercased, the underscore is kept (it's a word character)</li>
+ * <li>Any run of digits becomes a single <code>#</code></li>
+ * <li>Any other non-word character becomes <code>(</code> or <code>)</code> for brackets, otherwise a blank</li>
+ * <li>The title is wrapped in a leading blank and a trailing <code>$</code></li>
+ * </ul>
+ * The <code>\d+\W+(jahr|year)</code> part of the rerelease rule can't be a plain
+ * keyword, as the gap may be any run of non-word characters. It is tracked by a
+ * small side matcher during the same pass instead. This keeps the
+ * {@link TitleFlag#RE_RELEASE} flag exactly in line with the former
+ * <code>(anniversary|re\W?(issue|master|record)|\d+\W+(jahr|year))</code> regex,
+ * including the rule that a title starting with such a word doesn't count.<br/>
+ * <br/>
+ * The REMIX and LIVE hints decide whether the full library check runs at all,
+ * so they must never be stricter than that check. Their keywords are therefore
+ * plain word stems matched anywhere in the title (e.g. "mix" also hits "The
+ * Remixes Vol. 2", "Club Remix EP" or "RemiXX"), accepting false hints in favor
+ * of never missing a release the library would accept.
+ */
+@Component
+public class ReleaseTitleClassifier {
+
+	public enum TitleFlag {
+		/**
+		 * The album title contains a giveaway rerelease term (e.g. "Remaster",
+		 * "Reissue", "Anniversary", "10 Years"), but doesn't start with it
+		 */
+		RE_RELEASE,
+
+		/**
+		 * The album title (or any track title) hints at a remix
+		 */
+		REMIX,
+
+		/**
+		 * The album title (or any track title) hints at a live recording
+		 */
+		LIVE,
+
+		/**
+		 * The album title hints at an EP
+		 */
+		EP
+	}
+
+	private final static List<String> RE_RELEASE_KEYWORDS = buildRereleaseKeywords();
+
+	private final static List<String> REMIX_KEYWORDS = List.of("mix", "rmx", "rework", "recycled");
+
+	private final static List<String> LIVE_KEYWORDS = List.of("live");
+
+	private final static List<String> EP_KEYWORDS = List.of(" ep$", "(ep)", " ep)", " e p $");
+
+	private final static List<String> YEAR_WORDS = List.of("jahr", "year");
+
+	// Alphabet of the normalized titles: a-z, '_', '#', ' ', '(', ')', '$'
+	private final static int ALPHABET_SIZE = 32;
+	private final static int SYMBOL_UNDERSCORE = 26;
+	private final static int SYMBOL_DIGITS = 27;
+	private final static int SYMBOL_BLANK = 28;
+	private final static int SYMBOL_OPEN = 29;
+	private final static int SYMBOL_CLOSE = 30;
+	private final static int SYMBOL_END = 31;
+
+	private final static int RE_RELEASE_BIT = 1 << TitleFlag.RE_RELEASE.ordinal();
+	private final static int TRACK_HINT_BITS = (1 << TitleFlag.REMIX.ordinal()) | (1 << TitleFlag.LIVE.ordinal());
+
+	private final static TitleAutomaton AUTOMATON = new TitleAutomaton();
+
+	private final Map<String, Set<TitleFlag>> flagsByReleaseId;
+	private final LongAdder cacheLookups;
+	private final LongAdder cacheMisses;
+
+	public ReleaseTitleClassifier() {
+		this.flagsByReleaseId = new ConcurrentHashMap<>();
+		this.cacheLookups = new LongAdder();
+		this.cacheMisses = new LongAdder();
+	}
+
+	/**
+	 * Return the title flags of the given release. The album name is scanned for all
+	 * flags; REMIX and LIVE are also set if any track name carries them. The result
+	 * is cached by the album ID.<br/>
+	 * <br/>
+	 * Except for RE_RELEASE, the flags are only hints: a release without the hint
+	 * can't be of that kind, but one with the hint still has to pass the full check.
+	 *
+	 * @param atp the AlbumTrackPair
+	 * @return an unmodifiable set of title flags (may be empty)
+	 */
+	public Set<TitleFlag> classify(AlbumTrackPair atp) {
+		AlbumSimplified album = atp.getAlbum();
+		if (album.getId() == null) {
+			return toFlagSet(scanRelease(atp));
+		}
+		cacheLookups.increment();
+		return flagsByReleaseId.computeIfAbsent(album.getId(), id -> {
+			cacheMisses.increment();
+			return toFlagSet(scanRelease(atp));
+		});
+	}
+
+	/**
+	 * Return the title flags of a single title, without any caching
+	 *
+	 * @param title the album or track title
+	 * @return an unmodifiable set of title flags (may be empty)
+	 */
+	public Set<TitleFlag> classifyTitle(String title) {
+		return toFlagSet(AUTOMATON.scan(title));
+	}
+
+	/**
+	 * Return the total number of lookups answered by the per-release cache
+	 */
+	public long getCacheHits() {
+		return cacheLookups.sum() - cacheMisses.sum();
+	}
+
+	/**
+	 * Return the total number of lookups that had to scan the release
+	 */
+	public long getCacheMisses() {
+		return cacheMisses.sum();
+	}
+
+	/**
+	 * Clear the per-release cache (to be called once per crawl)
+	 */
+	public void clearCache() {
+		flagsByReleaseId.clear();
+	}
+
+	private int scanRelease(AlbumTrackPair atp) {
+		int mask = AUTOMATON.scan(atp.getAlbum().getName());
+		List<TrackSimplified> tracks = atp.getTracks();
+		if (tracks != null && !tracks.isEmpty()) {
+			for (TrackSimplified track : tracks) {
+				if ((mask & TRACK_HINT_BITS) == TRACK_HINT_BITS) {
+					break;
+				}
+				mask |= AUTOMATON.scan(track.getName()) & TRACK_HINT_BITS;
+			}
+		}
+		return mask;
+	}
+
+	private static Set<TitleFlag> toFlagSet(int mask) {
+		if (mask == 0) {
+			return Collections.emptySet();
+		}
+		EnumSet<TitleFlag> flags = EnumSet.noneOf(TitleFlag.class);
+		for (TitleFlag flag : TitleFlag.values()) {
+			if ((mask & (1 << flag.ordinal())) != 0) {
+				flags.add(flag);
+			}
+		}
+		return Collections.unmodifiableSet(flags);
+	}
+
+	private static List<String> buildRereleaseKeywords() {
+		List<String> keywords = new ArrayList<>();
+		keywords.add("anniversary");
+		for (String word : List.of("issue", "master", "record")) {
+			for (String separator : List.of("", " ", "(", ")")) {
+				keywords.add("re" + separator + word);
+			}
+		}
+		return keywords;
+	}
+
+	/**
+	 * The keyword automaton shared by all classifications. It's immutable after
+	 * construction and therefore safe to be used from multiple threads.
+	 */
+	private static class TitleAutomaton {
+		private final int[][] transitions;
+		private final int[] flagMasks;
+		private final int[] rereleaseKeywordLengths;
+
+		TitleAutomaton() {
+			List<int[]> gotos = new ArrayList<>();
+			List<Integer> masks = new ArrayList<>();
+			List<Integer> lengths = new ArrayList<>();
+			gotos.add(newRow());
+			masks.add(0);
+			lengths.add(0);
+
+			addKeywords(RE_RELEASE_KEYWORDS, RE_RELEASE_BIT, gotos, masks, lengths);
+			addKeywords(REMIX_KEYWORDS, 1 << TitleFlag.REMIX.ordinal(), gotos, masks, lengths);
+			addKeywords(LIVE_KEYWORDS, 1 << TitleFlag.LIVE.ordinal(), gotos, masks, lengths);
+			addKeywords(EP_KEYWORDS, 1 << TitleFlag.EP.ordinal(), gotos, masks, lengths);
+
+			int stateCount = gotos.size();
+			this.transitions = gotos.toArray(new int[stateCount][]);
+			this.flagMasks = masks.stream().mapToInt(Integer::intValue).toArray();
+			this.rereleaseKeywordLengths = lengths.stream().mapToInt(Integer::intValue).toArray();
+			buildFailureTransitions();
+		}
+
+		private static int[] newRow() {
+			int[] row = new int[ALPHABET_SIZE];
+			Arrays.fill(row, -1);
+			return row;
+		}
+
+		private static void addKeywords(List<String> keywords, int bit, List<int[]> gotos, List<Integer> masks, List<Integer> lengths) {
+			for (String keyword : keywords) {
+				int state = 0;
+				for (int i = 0; i < keyword.length(); i++) {
+					int symbol = keywordSymbol(keyword.charAt(i));
+					if (gotos.get(state)[symbol] < 0) {
+						gotos.get(state)[symbol] = gotos.size();
+						gotos.add(newRow());
+						masks.add(0);
+						lengths.add(0);
+					}
+					state = gotos.get(state)[symbol];
+				}
+				if (bit == RE_RELEASE_BIT) {
+					lengths.set(state, Math.max(lengths.get(state), keyword.length()));
+				} else {
+					masks.set(state, masks.get(state) | bit);
+				}
+			}
+		}
+
+		/**
+		 * Breadth-first construction of the failure links, folded directly into the
+		 * transition table (turning the trie into a complete DFA)
+		 */
+		private void buildFailureTransitions() {
+			int[] failure = new int[transitions.length];
+			Queue<Integer> queue = new ArrayDeque<>();
+			for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+				int next = transitions[0][symbol];
+				if (next < 0) {
+					transitions[0][symbol] = 0;
+				} else {
+					failure[next] = 0;
+					queue.add(next);
+				}
+			}
+			while (!queue.isEmpty()) {
+				int state = queue.poll();
+				int fail = failure[state];
+				flagMasks[state] |= flagMasks[fail];
+				rereleaseKeywordLengths[state] = Math.max(rereleaseKeywordLengths[state], rereleaseKeywordLengths[fail]);
+				for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+					int next = transitions[state][symbol];
+					if (next < 0) {
+						transitions[state][symbol] = transitions[fail][symbol];
+					} else {
+						failure[next] = transitions[fail][symbol];
+						queue.add(next);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Scan the given title once and return the found flags as bitmask
+		 */
+		int scan(String title) {
+			if (title == null) {
+				return 0;
+			}
+			Scan scan = new Scan();
+			scan.feed(SYMBOL_BLANK);
+			boolean inDigits = false;
+			for (int i = 0; i < title.length(); i++) {
+				char c = title.charAt(i);
+				if (c >= '0' && c <= '9') {
+					if (!inDigits) {
+						scan.feed(SYMBOL_DIGITS);
+					}
+					inDigits = true;
+				} else {
+					scan.feed(isWordCharacter(c)
+						? (c == '_' ? SYMBOL_UNDERSCORE : Character.toLowerCase(c) - 'a')
+						: nonWordSymbol(c));
+					inDigits = false;
+				}
+			}
+			scan.feed(SYMBOL_END);
+
+			// Index 1 is the first character of the title, as index 0 is the leading blank
+			int mask = scan.flags;
+			if (scan.firstRereleaseStart > 1 && scan.firstRereleaseStart != Integer.MAX_VALUE) {
+				mask |= RE_RELEASE_BIT;
+			}
+			return mask;
+		}
+
+		private class Scan {
+			private int state = 0;
+			private int position = -1;
+			private int flags = 0;
+			private int firstRereleaseStart = Integer.MAX_VALUE;
+
+			// Side matcher for "digits, non-word gap, year word"
+			private int digitsStart = -1;
+			private boolean inYearGap = false;
+			private String yearWord = null;
+			private int yearWordProgress = 0;
+
+			void feed(int symbol) {
+				position++;
+				state = transitions[state][symbol];
+				flags |= flagMasks[state];
+				int rereleaseKeywordLength = rereleaseKeywordLengths[state];
+				if (rereleaseKeywordLength > 0) {
+					firstRereleaseStart = Math.min(firstRereleaseStart, position - rereleaseKeywordLength + 1);
+				}
+				feedYearMatcher(symbol);
+			}
+
+			private void feedYearMatcher(int symbol) {
+				if (symbol == SYMBOL_DIGITS) {
+					digitsStart = position;
+					inYearGap = false;
+					yearWord = null;
+				} else if (symbol == SYMBOL_BLANK || symbol == SYMBOL_OPEN || symbol == SYMBOL_CLOSE) {
+					inYearGap = digitsStart >= 0 && yearWord == null;
+					if (!inYearGap) {
+						resetYearMatcher();
+					}
+				} else if (symbol < SYMBOL_UNDERSCORE && inYearGap) {
+					inYearGap = false;
+					yearWordProgress = 1;
+					for (String word : YEAR_WORDS) {
+						if (word.charAt(0) == 'a' + symbol) {
+							yearWord = word;
+						}
+					}
+					if (yearWord == null) {
+						resetYearMatcher();
+					}
+				} else if (symbol < SYMBOL_UNDERSCORE && yearWord != null && yearWord.charAt(yearWordProgress) == 'a' + symbol) {
+					yearWordProgress++;
+					if (yearWordProgress == yearWord.length()) {
+						firstRereleaseStart = Math.min(firstRereleaseStart, digitsStart);
+						resetYearMatcher();
+					}
+				} else {
+					resetYearMatcher();
+				}
+			}
+
+			private void resetYearMatcher() {
+				digitsStart = -1;
+				inYearGap = false;
+				yearWord = null;
+			}
+		}
+
+		private static boolean isWordCharacter(char c) {
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+		}
+
+		private static int nonWordSymbol(char c) {
+			switch (c) {
+				case '(':
+				case '[':
+				case '{':
+					return SYMBOL_OPEN;
+				case ')':
+				case ']':
+				case '}':
+					return SYMBOL_CLOSE;
+				default:
+					return SYMBOL_BLANK;
+			}
+		}
+
+		private static int keywordSymbol(char c) {
+			switch (c) {
+				case '_':
+					return SYMBOL_UNDERSCORE;
+				case '#':
+					return SYMBOL_DIGITS;
+				case ' ':
+					return SYMBOL_BLANK;
+				case '(':
+					return SYMBOL_OPEN;
+				case ')':
+					return SYMBOL_CLOSE;
+				case '$':
+					return SYMBOL_END;
+				default:
+					return c - 'a';
+			}
+		}
+	}
+}
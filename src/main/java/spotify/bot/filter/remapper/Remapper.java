@@ -1,5 +1,7 @@
 package spotify.bot.filter.remapper;
 
+import java.util.List;
+
 import spotify.bot.util.data.AlbumGroupExtended;
 import spotify.util.data.AlbumTrackPair;
 
@@ -56,6 +58,17 @@ public interface Remapper {
 	 */
 	boolean isAllowedAlbumGroup(AlbumGroupExtended albumGroupExtended);
 
+	/**
+	 * Called once per remapping pass with every candidate release (i.e. all
+	 * releases of allowed album groups), before {@link Remapper#determineRemapAction}
+	 * is called for each of them. Remappers relying on expensive lookups can use
+	 * this to resolve them in bulk. Does nothing by default.
+	 *
+	 * @param candidates the candidate releases
+	 */
+	default void prepare(List<AlbumTrackPair> candidates) {
+	}
+
 	/**
 	 * Check if the given release is a remappable candidate and return the
 	 * {@link Action} to be applied. This is the main logic of the remappers and
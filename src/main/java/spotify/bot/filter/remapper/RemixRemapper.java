@@ -2,6 +2,7 @@ package spotify.bot.filter.remapper;
 
 import org.springframework.stereotype.Component;
 
+import spotify.bot.filter.remapper.ReleaseTitleClassifier.TitleFlag;
 import spotify.bot.util.data.AlbumGroupExtended;
 import spotify.util.SpotifyUtils;
 import spotify.util.data.AlbumTrackPair;
@@ -9,6 +10,12 @@ import spotify.util.data.AlbumTrackPair;
 @Component
 public class RemixRemapper implements Remapper {
 
+	private final ReleaseTitleClassifier releaseTitleClassifier;
+
+	public RemixRemapper(ReleaseTitleClassifier releaseTitleClassifier) {
+		this.releaseTitleClassifier = releaseTitleClassifier;
+	}
+
 	@Override
 	public AlbumGroupExtended getAlbumGroup() {
 		return AlbumGroupExtended.REMIX;
@@ -22,8 +29,13 @@ public class RemixRemapper implements Remapper {
 		return !albumGroupExtended.isExtendedType();
 	}
 
+	/**
+	 * Releases without any remix hint in the album or track titles are skipped
+	 * right away. The hint is broad enough to cover every title the full remix
+	 * check could accept, which then makes the actual decision.
+	 */
 	@Override
 	public Action determineRemapAction(AlbumTrackPair atp) {
-		return Action.of(SpotifyUtils.isRemix(atp));
+		return Action.of(releaseTitleClassifier.classify(atp).contains(TitleFlag.REMIX) && SpotifyUtils.isRemix(atp));
 	}
 }
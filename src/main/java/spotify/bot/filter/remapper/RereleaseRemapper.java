@@ -1,43 +1,32 @@
 package spotify.bot.filter.remapper;
 
-import java.sql.SQLException;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.springframework.stereotype.Component;
 
-import com.neovisionaries.i18n.CountryCode;
-
 import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
 import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
 import spotify.bot.config.database.DatabaseService;
 import spotify.bot.filter.FilterService;
+import spotify.bot.filter.remapper.ReleaseTitleClassifier.TitleFlag;
+import spotify.bot.service.MarketContext;
 import spotify.bot.util.data.AlbumGroupExtended;
-import spotify.services.UserService;
 import spotify.util.SpotifyUtils;
 import spotify.util.data.AlbumTrackPair;
 
 @Component
 public class RereleaseRemapper implements Remapper {
 
-	private final static Pattern ALBUM_TITLE_MATCHER = Pattern
-		.compile("(anniversary|re\\W?(issue|master|record)|\\d+\\W+(jahr|year))",
-			Pattern.CASE_INSENSITIVE);
-
 	private final FilterService filterService;
-	private final UserService userService;
+	private final MarketContext marketContext;
 	private final DatabaseService databaseService;
+	private final ReleaseTitleClassifier releaseTitleClassifier;
 
-	private Set<String> releaseNamesCache;
-
-	public RereleaseRemapper(FilterService filterService, UserService userService, DatabaseService databaseService) {
+	public RereleaseRemapper(FilterService filterService, MarketContext marketContext, DatabaseService databaseService, ReleaseTitleClassifier releaseTitleClassifier) {
 		this.filterService = filterService;
-		this.userService = userService;
+		this.marketContext = marketContext;
 		this.databaseService = databaseService;
-		this.releaseNamesCache = Set.of();
+		this.releaseTitleClassifier = releaseTitleClassifier;
 	}
 
 	@Override
@@ -95,8 +84,8 @@ public class RereleaseRemapper implements Remapper {
 		AlbumSimplified album = atp.getAlbum();
 		List<TrackSimplified> tracks = atp.getTracks();
 
-		boolean normal = !containsRereleaseWord(album.getName());
-		boolean complete = tracks.stream().allMatch(this::isTrackAvailable);
+		boolean normal = !releaseTitleClassifier.classify(atp).contains(TitleFlag.RE_RELEASE);
+		boolean complete = tracks.stream().allMatch(marketContext::isAvailable);
 		boolean recent = filterService.isValidDate(album);
 		boolean cached = hasReleaseNameBeenCachedAlready(album);
 
@@ -122,33 +111,7 @@ public class RereleaseRemapper implements Remapper {
 		}
 	}
 
-	private boolean containsRereleaseWord(String albumTitle) {
-		Matcher matcher = ALBUM_TITLE_MATCHER.matcher(albumTitle);
-		if (matcher.find()) {
-			return matcher.start() > 0;
-		}
-		return false;
-	}
-
-	private boolean isTrackAvailable(TrackSimplified ts) {
-		CountryCode userMarket = userService.getMarketOfCurrentUser();
-		CountryCode[] availableMarkets = ts.getAvailableMarkets();
-		if (availableMarkets == null) {
-			// Hotfix because for some reason this endpoint only returns null anymore
-			return true;
-		}
-		return Arrays.asList(availableMarkets).contains(userMarket);
-	}
-
 	private boolean hasReleaseNameBeenCachedAlready(AlbumSimplified album) {
-		return releaseNamesCache.contains(SpotifyUtils.albumIdentifierString(album));
-	}
-
-	public void refreshCachedReleaseNames() {
-		try {
-			this.releaseNamesCache = Set.copyOf(databaseService.getReleaseNamesCache());
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		return databaseService.isReleaseNameCached(SpotifyUtils.albumIdentifierString(album));
 	}
 }
@@ -1,48 +1,60 @@
 package spotify.bot.properties;
 
-import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Service;
 
-import se.michaelthelin.spotify.model_objects.IPlaylistItem;
-import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
 import spotify.bot.config.properties.PlaylistStoreConfig;
 import spotify.bot.service.PlaylistMetaService;
+import spotify.bot.service.PlaylistMirrorService;
 import spotify.bot.util.DiscoveryBotLogger;
 import spotify.bot.util.data.AlbumGroupExtended;
-import spotify.services.PlaylistService;
-import spotify.util.SpotifyOptimizedExecutorService;
+import spotify.bot.util.data.MirroredTrack;
+import spotify.bot.util.data.PlaylistMirror;
 import spotify.util.SpotifyUtils;
 
 @Service
 @EnableConfigurationProperties
 @ConfigurationProperties(prefix = "spotify.discovery.crawl.auto")
 public class AutoPurgerService {
-  private final PlaylistService playlistService;
+  private final static long PURGE_RETRY_DELAY = TimeUnit.MINUTES.toMillis(10);
+
+  private final PlaylistMirrorService playlistMirrorService;
   private final PlaylistStoreConfig playlistStoreConfig;
   private final PlaylistMetaService playlistMetaService;
-  private final SpotifyOptimizedExecutorService executorService;
   private final FeatureControl featureControl;
   private final DiscoveryBotLogger log;
 
+  private final ScheduledExecutorService purgeExecutor;
+  private final Map<String, ScheduledFuture<?>> purgeTimers;
+
   private Map<AlbumGroupExtended, Integer> autoPurgeConfigMap = Map.of();
 
-  AutoPurgerService(PlaylistService playlistService, PlaylistStoreConfig playlistStoreConfig, PlaylistMetaService playlistMetaService, SpotifyOptimizedExecutorService executorService, FeatureControl featureControl, DiscoveryBotLogger log) {
-    this.playlistService = playlistService;
+  AutoPurgerService(PlaylistMirrorService playlistMirrorService, PlaylistStoreConfig playlistStoreConfig, PlaylistMetaService playlistMetaService, FeatureControl featureControl, DiscoveryBotLogger log) {
+    this.playlistMirrorService = playlistMirrorService;
     this.playlistStoreConfig = playlistStoreConfig;
     this.playlistMetaService = playlistMetaService;
-    this.executorService = executorService;
     this.featureControl = featureControl;
     this.log = log;
+    this.purgeExecutor = Executors.newSingleThreadScheduledExecutor();
+    this.purgeTimers = new ConcurrentHashMap<>();
   }
 
   @SuppressWarnings("unused") // will be called by Spring on boot
@@ -69,45 +81,155 @@ public class AutoPurgerService {
     return autoPurgeConfigMap;
   }
 
-  public void runPurger() {
+  /**
+   * Start the purge timers of all configured playlists. Each playlist is checked
+   * once right away, after which it's only checked again once its oldest
+   * addition expires (as known from its local mirror). This happens in the
+   * background, so crawls never need to wait for any purge reads.
+   */
+  public void startPurgeScheduler() {
     if (isEnabled()) {
-      AtomicInteger purgedTracksCount = new AtomicInteger();
-
-      List<Callable<Void>> callables = new ArrayList<>();
-      for (Map.Entry<AlbumGroupExtended, Integer> entry : autoPurgeConfigMap.entrySet()) {
-        AlbumGroupExtended albumGroupExtended = entry.getKey();
-        PlaylistStoreConfig.PlaylistStore playlistStore = playlistStoreConfig.getPlaylistStore(albumGroupExtended);
-        String playlistId = playlistStore.getPlaylistId();
-
-        int expirationDays = entry.getValue();
-
-        callables.add(() -> {
-          List<PlaylistTrack> playlistTracks = playlistService.getPlaylistTracks(playlistId);
-          List<IPlaylistItem> expiredTracks = playlistTracks.stream()
-            .filter(pt -> isExpiredTrack(pt, expirationDays))
-            .map(PlaylistTrack::getTrack)
-            .collect(Collectors.toList());
-          if (!expiredTracks.isEmpty()) {
-            playlistService.removeItemsFromPlaylist(playlistId, expiredTracks);
-            purgedTracksCount.addAndGet(expiredTracks.size());
-            if (playlistTracks.size() == expiredTracks.size()) {
-              playlistMetaService.markPlaylistAsRead(playlistStore);
-            }
+      for (String playlistId : getExpirationDaysByPlaylistId().keySet()) {
+        schedulePurge(playlistId, 0);
+      }
+    }
+  }
+
+  /**
+   * Start the purge timers of all configured playlists that don't have one yet
+   * (e.g. because they were empty before), based on their local mirrors. To be
+   * called after adding new tracks to the playlists.
+   */
+  public void scheduleMissingPurgeTimers() {
+    if (isEnabled()) {
+      for (Map.Entry<String, Integer> entry : getExpirationDaysByPlaylistId().entrySet()) {
+        String playlistId = entry.getKey();
+        if (!purgeTimers.containsKey(playlistId)) {
+          PlaylistMirror playlistMirror = playlistMirrorService.getLocalPlaylistMirror(playlistId);
+          if (playlistMirror != null) {
+            scheduleNextExpiry(playlistMirror, entry.getValue());
+          } else {
+            schedulePurge(playlistId, 0);
           }
-          return null; // must return something for Void class
-        });
+        }
       }
-      executorService.executeAndWaitVoid(callables);
+    }
+  }
+
+  @PreDestroy
+  public void shutdownPurgeScheduler() {
+    purgeExecutor.shutdownNow();
+  }
+
+  /**
+   * Purge the given playlist and schedule its next purge. Any failure is retried
+   * after a delay, so the timer of the playlist never gets lost.
+   */
+  private void purgeExpiredTracks(String playlistId) {
+    clearPurgeTimer(playlistId);
+    Integer expirationDays = getExpirationDaysByPlaylistId().get(playlistId);
+    if (expirationDays == null) {
+      return;
+    }
+    try {
+      PlaylistMirror playlistMirror = playlistMirrorService.withPlaylistLock(playlistId, () -> removeExpiredTracks(playlistId, expirationDays));
+      scheduleNextExpiry(playlistMirror, expirationDays);
+    } catch (RuntimeException e) {
+      log.stackTrace(e);
+      schedulePurge(playlistId, PURGE_RETRY_DELAY);
+    }
+  }
 
-      int purgedTracksCountFinal = purgedTracksCount.get();
-      if (purgedTracksCountFinal > 0) {
-        log.info(String.format("AutoPurgerService: %d expired tracks have been removed from the playlists", purgedTracksCountFinal));
+  /**
+   * Remove the expired tracks of the given playlist by their positions in its
+   * mirror. Runs under the lock of the playlist's mirror, so no other write to
+   * the mirror can interleave between the read and the removal.
+   *
+   * @return the updated mirror
+   */
+  private PlaylistMirror removeExpiredTracks(String playlistId, int expirationDays) {
+    PlaylistMirror playlistMirror = playlistMirrorService.getPlaylistMirror(playlistId);
+    List<MirroredTrack> tracks = playlistMirror.getTracks();
+    Set<Integer> expiredPositions = new HashSet<>();
+    for (int position = 0; position < tracks.size(); position++) {
+      MirroredTrack track = tracks.get(position);
+      if (isPurgeable(track) && isExpiredTrack(track, expirationDays)) {
+        expiredPositions.add(position);
       }
     }
+    if (expiredPositions.isEmpty()) {
+      return playlistMirror;
+    }
+
+    PlaylistMirror purgedPlaylistMirror = playlistMirrorService.removeTracksAtPositions(playlistMirror, expiredPositions);
+    int removedTracks = playlistMirror.size() - purgedPlaylistMirror.size();
+    log.info(String.format("AutoPurgerService: %d expired tracks have been removed from playlist %s", removedTracks, playlistId));
+    if (purgedPlaylistMirror.getTracks().stream().noneMatch(this::isPurgeable)) {
+      playlistMetaService.markPlaylistAsRead(playlistStoreConfig.getPlaylistStoresSharingPlaylist(playlistId).get(0));
+    }
+    return purgedPlaylistMirror;
+  }
+
+  /**
+   * Schedule the next purge of the given playlist for the moment its oldest
+   * purgeable addition expires. No purge is scheduled for playlists without any.
+   */
+  private void scheduleNextExpiry(PlaylistMirror playlistMirror, int expirationDays) {
+    playlistMirror.getTracks().stream()
+      .filter(this::isPurgeable)
+      .map(MirroredTrack::getAddedAt)
+      .filter(Objects::nonNull)
+      .min(Comparator.naturalOrder())
+      .ifPresent(oldestAddedAt -> {
+        long expiresAt = oldestAddedAt.getTime() + TimeUnit.DAYS.toMillis(expirationDays);
+        schedulePurge(playlistMirror.getPlaylistId(), Math.max(0, expiresAt - System.currentTimeMillis()));
+      });
+  }
+
+  /**
+   * Forget the timer of the given playlist once it has fired. A timer that was
+   * scheduled for a later moment in the meantime is kept.
+   */
+  private synchronized void clearPurgeTimer(String playlistId) {
+    purgeTimers.computeIfPresent(playlistId, (id, purgeTimer) -> purgeTimer.getDelay(TimeUnit.MILLISECONDS) <= 0 ? null : purgeTimer);
+  }
+
+  private synchronized void schedulePurge(String playlistId, long delayMs) {
+    ScheduledFuture<?> purgeTimer = purgeExecutor.schedule(() -> purgeExpiredTracks(playlistId), delayMs, TimeUnit.MILLISECONDS);
+    ScheduledFuture<?> previousPurgeTimer = purgeTimers.put(playlistId, purgeTimer);
+    if (previousPurgeTimer != null) {
+      previousPurgeTimer.cancel(false);
+    }
+  }
+
+  /**
+   * Return the expiration days of every configured playlist. If several album
+   * groups sharing the same playlist are configured, the playlist is only purged
+   * once, using the longest of their expiration days (tracks can't be told apart
+   * by album group once they're in the playlist).
+   */
+  private Map<String, Integer> getExpirationDaysByPlaylistId() {
+    Map<String, Integer> expirationDaysByPlaylistId = new LinkedHashMap<>();
+    for (Map.Entry<AlbumGroupExtended, Integer> entry : autoPurgeConfigMap.entrySet()) {
+      PlaylistStoreConfig.PlaylistStore playlistStore = playlistStoreConfig.getPlaylistStore(entry.getKey());
+      if (playlistStore != null && playlistStore.getPlaylistId() != null) {
+        expirationDaysByPlaylistId.merge(playlistStore.getPlaylistId(), entry.getValue(), Math::max);
+      }
+    }
+    return expirationDaysByPlaylistId;
+  }
+
+  /**
+   * Unavailable or local items without a URI can't be removed via the API, so
+   * they never count as expired (otherwise they would trigger the next purge
+   * right away, over and over again)
+   */
+  private boolean isPurgeable(MirroredTrack mirroredTrack) {
+    return mirroredTrack.getUri() != null;
   }
 
-  private boolean isExpiredTrack(PlaylistTrack playlistTrack, int expirationDays) {
-    Date addedAt = playlistTrack.getAddedAt();
+  private boolean isExpiredTrack(MirroredTrack mirroredTrack, int expirationDays) {
+    Date addedAt = mirroredTrack.getAddedAt();
     int expirationHours = expirationDays * 24;
     return !SpotifyUtils.isWithinTimeoutWindow(addedAt, expirationHours);
   }
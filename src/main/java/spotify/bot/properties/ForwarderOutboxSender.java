@@ -0,0 +1,190 @@
+package spotify.bot.properties;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import spotify.bot.util.ForwarderHttpClient;
+import spotify.bot.util.data.ForwarderMessage;
+
+/**
+ * Delivers the due messages of the forwarder outbox. Either every message is
+ * sent as its own request, or (in digest mode) up to a maximum number of
+ * messages are joined into a single request. Failed deliveries stay in the
+ * outbox and are retried with exponential backoff, until they are given up on
+ * after a maximum number of attempts.
+ */
+public class ForwarderOutboxSender {
+  /**
+   * The persistent storage of the outbox
+   */
+  public interface Outbox {
+    /**
+     * Return all messages currently waiting in the outbox
+     */
+    List<ForwarderMessage> getMessages();
+
+    /**
+     * Replace the given messages in the outbox
+     */
+    void update(List<ForwarderMessage> messages);
+
+    /**
+     * Remove the messages of the given album IDs from the outbox
+     */
+    void remove(Collection<String> albumIds);
+  }
+
+  /**
+   * The outcome of a single {@link ForwarderOutboxSender#drain}
+   */
+  public static class Result {
+    private final int delivered;
+    private final int failed;
+    private final int givenUp;
+    private final Long nextAttemptAt;
+
+    Result(int delivered, int failed, int givenUp, Long nextAttemptAt) {
+      this.delivered = delivered;
+      this.failed = failed;
+      this.givenUp = givenUp;
+      this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public int getDelivered() {
+      return delivered;
+    }
+
+    public int getFailed() {
+      return failed;
+    }
+
+    public int getGivenUp() {
+      return givenUp;
+    }
+
+    /**
+     * Return the earliest time a message remaining in the outbox is due again, or
+     * null if the outbox is empty
+     */
+    public Long getNextAttemptAt() {
+      return nextAttemptAt;
+    }
+  }
+
+  private final Outbox outbox;
+  private final ForwarderHttpClient forwarderHttpClient;
+  private final String digestMask;
+  private final String digestSeparator;
+  private final int digestSize;
+  private final long baseBackoffMs;
+  private final long maxBackoffMs;
+  private final int maxAttempts;
+
+  /**
+   * @param outbox the outbox to drain
+   * @param forwarderHttpClient the client to deliver the messages with
+   * @param digestMask the mask for a digest (a single %s receives the joined
+   *                   messages), or null to send the joined messages as they are
+   * @param digestSeparator the separator between the messages of a digest
+   * @param digestSize the maximum number of messages per request (1 disables the
+   *                   digest mode)
+   * @param baseBackoffMs the delay before the first retry
+   * @param maxBackoffMs the maximum delay between two retries
+   * @param maxAttempts the number of attempts after which a message is dropped
+   */
+  public ForwarderOutboxSender(Outbox outbox, ForwarderHttpClient forwarderHttpClient, String digestMask, String digestSeparator, int digestSize, long baseBackoffMs, long maxBackoffMs, int maxAttempts) {
+    this.outbox = outbox;
+    this.forwarderHttpClient = forwarderHttpClient;
+    this.digestMask = digestMask;
+    this.digestSeparator = digestSeparator;
+    this.digestSize = Math.max(1, digestSize);
+    this.baseBackoffMs = baseBackoffMs;
+    this.maxBackoffMs = maxBackoffMs;
+    this.maxAttempts = maxAttempts;
+  }
+
+  /**
+   * Deliver every message of the outbox that is due at the given time
+   *
+   * @param now the current timestamp
+   * @return the outcome
+   */
+  public Result drain(long now) {
+    List<ForwarderMessage> messages = new ArrayList<>(outbox.getMessages());
+    messages.sort(Comparator.comparingLong(ForwarderMessage::getNextAttemptAt));
+    List<ForwarderMessage> dueMessages = messages.stream()
+      .filter(m -> m.getNextAttemptAt() <= now)
+      .collect(Collectors.toList());
+
+    int delivered = 0;
+    int failed = 0;
+    int givenUp = 0;
+    Long nextAttemptAt = messages.stream()
+      .filter(m -> m.getNextAttemptAt() > now)
+      .map(ForwarderMessage::getNextAttemptAt)
+      .findFirst()
+      .orElse(null);
+    for (int i = 0; i < dueMessages.size(); i += digestSize) {
+      List<ForwarderMessage> batch = dueMessages.subList(i, Math.min(dueMessages.size(), i + digestSize));
+      List<String> albumIds = batch.stream()
+        .map(ForwarderMessage::getAlbumId)
+        .collect(Collectors.toList());
+      if (send(batch)) {
+        outbox.remove(albumIds);
+        delivered += batch.size();
+      } else {
+        List<ForwarderMessage> retries = new ArrayList<>();
+        List<String> dropped = new ArrayList<>();
+        for (ForwarderMessage message : batch) {
+          if (message.getAttempts() + 1 >= maxAttempts) {
+            dropped.add(message.getAlbumId());
+          } else {
+            retries.add(message.withFailedAttempt(now + backoffMs(message.getAttempts() + 1)));
+          }
+        }
+        if (!dropped.isEmpty()) {
+          outbox.remove(dropped);
+          givenUp += dropped.size();
+        }
+        if (!retries.isEmpty()) {
+          outbox.update(retries);
+          failed += retries.size();
+          for (ForwarderMessage retry : retries) {
+            nextAttemptAt = nextAttemptAt != null ? Math.min(nextAttemptAt, retry.getNextAttemptAt()) : retry.getNextAttemptAt();
+          }
+        }
+      }
+    }
+    return new Result(delivered, failed, givenUp, nextAttemptAt);
+  }
+
+  private boolean send(List<ForwarderMessage> batch) {
+    String body;
+    if (digestSize == 1) {
+      body = batch.get(0).getMessage();
+    } else {
+      String joinedMessages = batch.stream()
+        .map(ForwarderMessage::getMessage)
+        .collect(Collectors.joining(digestSeparator));
+      body = digestMask != null ? String.format(digestMask, joinedMessages) : joinedMessages;
+    }
+    try {
+      int statusCode = forwarderHttpClient.post(body);
+      return statusCode >= 200 && statusCode < 300;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Return the delay before the given attempt (doubling with every attempt)
+   */
+  private long backoffMs(int failedAttempts) {
+    long backoffMs = baseBackoffMs << Math.min(failedAttempts - 1, 30);
+    return Math.min(maxBackoffMs, backoffMs);
+  }
+}
@@ -1,31 +1,44 @@
 package spotify.bot.properties;
 
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
 import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
 import se.michaelthelin.spotify.model_objects.specification.ExternalUrl;
+import spotify.bot.config.database.DatabaseService;
 import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
 import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.ForwarderHttpClient;
 import spotify.bot.util.data.AlbumGroupExtended;
+import spotify.bot.util.data.ForwarderMessage;
 import spotify.util.SpotifyUtils;
 import spotify.util.data.AlbumTrackPair;
 
 @Service
 public class ForwarderService {
+  private final static Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+  private final static Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+  private final static long RETRY_BACKOFF_BASE_MS = 30 * 1000;
+  private final static long RETRY_BACKOFF_MAX_MS = 60 * 60 * 1000;
+  private final static int MAX_DELIVERY_ATTEMPTS = 10;
+
   @Value("${spotify.discovery.crawl.forwarder.url:#{null}}")
   private String forwarderUrl;
 
@@ -38,14 +51,30 @@ public class ForwarderService {
   @Value("${spotify.discovery.crawl.forwarder.whitelisted_types:#{null}}")
   private String[] forwarderWhitelistedTypes;
 
+  @Value("${spotify.discovery.crawl.forwarder.digest_size:1}")
+  private int forwarderDigestSize;
+
+  @Value("${spotify.discovery.crawl.forwarder.digest_mask:#{null}}")
+  private String forwarderDigestMask;
+
+  @Value("${spotify.discovery.crawl.forwarder.digest_separator:#{null}}")
+  private String forwarderDigestSeparator;
+
   private boolean active;
 
+  private final DatabaseService databaseService;
   private final DiscoveryBotLogger log;
   private final FeatureControl featureControl;
 
-  ForwarderService(DiscoveryBotLogger botLogger, FeatureControl featureControl) {
+  private final ScheduledExecutorService forwarderExecutor;
+  private ForwarderOutboxSender forwarderOutboxSender;
+  private ScheduledFuture<?> nextDrain;
+
+  ForwarderService(DatabaseService databaseService, DiscoveryBotLogger botLogger, FeatureControl featureControl) {
+    this.databaseService = databaseService;
     this.log = botLogger;
     this.featureControl = featureControl;
+    this.forwarderExecutor = Executors.newSingleThreadScheduledExecutor();
   }
 
   @PostConstruct
@@ -60,42 +89,117 @@ public class ForwarderService {
       if (hasRestrictedTypes()) {
         log.info("Forwarder: Types restricted to: " + String.join(", ", Arrays.asList(forwarderWhitelistedTypes)).toUpperCase());
       }
+      if (forwarderDigestSize > 1) {
+        log.info("Forwarder: Digest mode enabled, up to " + forwarderDigestSize + " releases are forwarded per request");
+      }
+      this.forwarderOutboxSender = new ForwarderOutboxSender(new DatabaseOutbox(),
+        new ForwarderHttpClient(forwarderUrl, CONNECT_TIMEOUT, REQUEST_TIMEOUT),
+        forwarderDigestMask, forwarderDigestSeparator != null ? forwarderDigestSeparator : "\n", forwarderDigestSize, RETRY_BACKOFF_BASE_MS, RETRY_BACKOFF_MAX_MS, MAX_DELIVERY_ATTEMPTS);
+
+      // Deliver anything left over from a previous run
+      scheduleDrain(0);
     }
   }
 
+  @PreDestroy
+  private void shutdown() {
+    forwarderExecutor.shutdownNow();
+  }
+
+  /**
+   * Put every new release (of the whitelisted types and artists) into the
+   * persistent forwarder outbox, once per album. The actual delivery happens in
+   * the background, so the crawl doesn't wait for it.
+   */
   public void forwardResults(Map<PlaylistStore, List<AlbumTrackPair>> newTracksByTargetPlaylist) {
     if (active) {
-      List<String> whitelistedTypes = Arrays.asList(forwarderWhitelistedTypes);
-      for (PlaylistStore ps : newTracksByTargetPlaylist.keySet()) {
-        AlbumGroupExtended albumGroupExtended = ps.getAlbumGroupExtended();
-        if (!hasRestrictedTypes() || whitelistedTypes.contains(albumGroupExtended.toString())) {
-          newTracksByTargetPlaylist.values().stream()
-            .flatMap(Collection::stream)
+      Map<String, ForwarderMessage> messagesByAlbumId = new LinkedHashMap<>();
+      for (Map.Entry<PlaylistStore, List<AlbumTrackPair>> entry : newTracksByTargetPlaylist.entrySet()) {
+        AlbumGroupExtended albumGroupExtended = entry.getKey().getAlbumGroupExtended();
+        if (!hasRestrictedTypes() || Arrays.asList(forwarderWhitelistedTypes).contains(albumGroupExtended.toString())) {
+          entry.getValue().stream()
             .filter(this::isWhitelistedArtist)
-            .forEach(this::forwardAlbum);
+            .map(AlbumTrackPair::getAlbum)
+            .forEach(album -> messagesByAlbumId.computeIfAbsent(album.getId(), id -> new ForwarderMessage(id, createMessage(album), 0, 0)));
         }
       }
+      if (!messagesByAlbumId.isEmpty()) {
+        databaseService.enqueueForwarderMessages(new ArrayList<>(messagesByAlbumId.values()));
+        scheduleDrain(0);
+      }
     }
   }
 
-  private void forwardAlbum(AlbumTrackPair atp) {
-    AlbumSimplified album = atp.getAlbum();
-
+  private String createMessage(AlbumSimplified album) {
     ExternalUrl externalUrls = album.getExternalUrls();
     String albumLink = externalUrls != null && externalUrls.get("spotify") != null
       ? externalUrls.get("spotify")
       : album.getHref();
 
-    String message = forwarderMessageMask != null
+    return forwarderMessageMask != null
       ? String.format(forwarderMessageMask, SpotifyUtils.getFirstArtistName(album), albumLink)
       : albumLink;
+  }
 
-    HttpHeaders headers = new HttpHeaders();
-    headers.setAccept(List.of(MediaType.APPLICATION_JSON));
-    HttpEntity<String> entity = new HttpEntity<>(message, headers);
+  private synchronized void scheduleDrain(long delayMs) {
+    if (nextDrain != null) {
+      nextDrain.cancel(false);
+    }
+    nextDrain = forwarderExecutor.schedule(this::drainOutbox, delayMs, TimeUnit.MILLISECONDS);
+  }
 
-    RestTemplate restTemplate = new RestTemplate();
-    restTemplate.exchange(forwarderUrl, HttpMethod.POST, entity, String.class);
+  /**
+   * Deliver everything due in the outbox. The next drain is always scheduled,
+   * even if this one failed unexpectedly, so pending messages aren't stuck until
+   * the next crawl.
+   */
+  private void drainOutbox() {
+    long nextDrainDelayMs = RETRY_BACKOFF_BASE_MS;
+    boolean drainAgain = true;
+    try {
+      ForwarderOutboxSender.Result result = forwarderOutboxSender.drain(System.currentTimeMillis());
+      if (result.getFailed() > 0) {
+        log.warning(String.format("Forwarder: %d releases couldn't be delivered and will be retried", result.getFailed()), false);
+      }
+      if (result.getGivenUp() > 0) {
+        log.error(String.format("Forwarder: Gave up on %d releases after %d failed delivery attempts", result.getGivenUp(), MAX_DELIVERY_ATTEMPTS), false);
+      }
+      drainAgain = result.getNextAttemptAt() != null;
+      if (drainAgain) {
+        nextDrainDelayMs = Math.max(0, result.getNextAttemptAt() - System.currentTimeMillis());
+      }
+    } catch (RuntimeException e) {
+      log.stackTrace(e);
+    } finally {
+      if (drainAgain) {
+        scheduleDrain(nextDrainDelayMs);
+      }
+    }
+  }
+
+  /**
+   * The forwarder outbox as stored in the database
+   */
+  private class DatabaseOutbox implements ForwarderOutboxSender.Outbox {
+    @Override
+    public List<ForwarderMessage> getMessages() {
+      try {
+        return databaseService.getForwarderOutbox();
+      } catch (SQLException e) {
+        log.stackTrace(e);
+        return List.of();
+      }
+    }
+
+    @Override
+    public void update(List<ForwarderMessage> messages) {
+      databaseService.updateForwarderMessages(messages);
+    }
+
+    @Override
+    public void remove(Collection<String> albumIds) {
+      databaseService.removeForwarderMessages(albumIds);
+    }
   }
 
   private boolean isWhitelistedArtist(AlbumTrackPair atp) {
@@ -16,6 +16,8 @@ import spotify.api.events.SpotifyApiException;
 import spotify.bot.config.database.DatabaseService;
 import spotify.bot.filter.FilterService;
 import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.DiscoveryBotMetrics;
+import spotify.bot.util.SpotifyCallBudget;
 import spotify.bot.util.data.CachedArtistsContainer;
 import spotify.services.ArtistService;
 import spotify.util.SpotifyUtils;
@@ -27,20 +29,27 @@ import spotify.util.SpotifyUtils;
  */
 @Service
 public class CachedArtistService {
+  private final static String FOLLOWED_ARTISTS_CACHE = "followed_artists";
+  private final static String REQUEST_FOLLOWED_ARTISTS = "followed_artists";
+
   private final ArtistService artistService;
   private final DatabaseService databaseService;
   private final DiscoveryAlbumService discoveryAlbumService;
   private final FilterService filterService;
   private final DiscoveryBotLogger log;
+  private final DiscoveryBotMetrics metrics;
+  private final SpotifyCallBudget callBudget;
 
   private LocalDate artistCacheLastUpdated;
 
-  CachedArtistService(ArtistService artistService, DatabaseService databaseService, FilterService filterService, DiscoveryAlbumService discoveryAlbumService, DiscoveryBotLogger discoveryBotLogger) {
+  CachedArtistService(ArtistService artistService, DatabaseService databaseService, FilterService filterService, DiscoveryAlbumService discoveryAlbumService, DiscoveryBotLogger discoveryBotLogger, DiscoveryBotMetrics metrics, SpotifyCallBudget callBudget) {
     this.artistService = artistService;
     this.databaseService = databaseService;
     this.filterService = filterService;
     this.discoveryAlbumService = discoveryAlbumService;
     this.log = discoveryBotLogger;
+    this.metrics = metrics;
+    this.callBudget = callBudget;
   }
 
   /**
@@ -48,7 +57,9 @@ public class CachedArtistService {
    */
   public CachedArtistsContainer getFollowedArtistsIds() throws SQLException, IllegalStateException {
     List<String> cachedArtists = getCachedArtistIds();
-    if (isArtistCacheExpired()) {
+    boolean expired = isArtistCacheExpired();
+    metrics.recordCacheLookups(FOLLOWED_ARTISTS_CACHE, expired ? 0 : 1, expired ? 1 : 0);
+    if (expired) {
       List<Artist> followedArtist = getRealArtists();
       if (followedArtist.isEmpty()) {
         throw new IllegalArgumentException("No followed artists found!");
@@ -98,7 +109,7 @@ public class CachedArtistService {
    * Get the real artist IDs directly from the Spotify API
    */
   private List<Artist> getRealArtists() throws SpotifyApiException {
-    List<Artist> followedArtists = artistService.getFollowedArtists();
+    List<Artist> followedArtists = callBudget.account(REQUEST_FOLLOWED_ARTISTS, null, artistService::getFollowedArtists);
     return followedArtists.stream()
         .filter(artist -> artist != null && !SpotifyUtils.isNullString(artist.getId()))
         .collect(Collectors.toList());
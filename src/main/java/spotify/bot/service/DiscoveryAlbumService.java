@@ -23,49 +23,73 @@ import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
 import se.michaelthelin.spotify.model_objects.specification.Paging;
 import se.michaelthelin.spotify.requests.data.IPagingRequestBuilder;
 import se.michaelthelin.spotify.requests.data.artists.GetArtistsAlbumsRequest;
-import spotify.api.SpotifyCall;
 import spotify.api.events.SpotifyApiException;
+import spotify.bot.util.CrawlEventBus;
+import spotify.bot.util.CrawlTracer;
 import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.DiscoveryBotMetrics;
+import spotify.bot.util.ReleaseFreshnessTracker;
+import spotify.bot.util.SpotifyCallBudget;
+import spotify.bot.util.data.CrawlEvent;
 import spotify.services.AlbumService;
-import spotify.services.UserService;
 import spotify.util.SpotifyOptimizedExecutorService;
 import spotify.util.SpotifyUtils;
 
 @Service
 public class DiscoveryAlbumService {
   private static final int MAX_ALBUM_FETCH_LIMIT = 50;
+  private static final int ARTIST_PROGRESS_STEPS = 100;
+  private static final String REQUEST_ARTIST_ALBUMS = "artist_albums";
+  private static final String REQUEST_SEVERAL_ARTISTS = "several_artists";
 
   private final String albumGroupString;
 
   private final SpotifyApi spotifyApi;
-  private final UserService userService;
+  private final MarketContext marketContext;
   private final SpotifyOptimizedExecutorService spotifyOptimizedExecutorService;
   private final DiscoveryBotLogger log;
+  private final CrawlEventBus crawlEventBus;
+  private final DiscoveryBotMetrics metrics;
+  private final CrawlTracer tracer;
+  private final SpotifyCallBudget callBudget;
+  private final ReleaseFreshnessTracker releaseFreshnessTracker;
 
-  DiscoveryAlbumService(SpotifyApi spotifyApi, AlbumService albumService, UserService userService, SpotifyOptimizedExecutorService spotifyOptimizedExecutorService, DiscoveryBotLogger log) {
+  DiscoveryAlbumService(SpotifyApi spotifyApi, AlbumService albumService, MarketContext marketContext, SpotifyOptimizedExecutorService spotifyOptimizedExecutorService, DiscoveryBotLogger log, CrawlEventBus crawlEventBus, DiscoveryBotMetrics metrics, CrawlTracer tracer, SpotifyCallBudget callBudget, ReleaseFreshnessTracker releaseFreshnessTracker) {
     this.spotifyApi = spotifyApi;
-    this.userService = userService;
+    this.marketContext = marketContext;
     this.spotifyOptimizedExecutorService = spotifyOptimizedExecutorService;
     this.albumGroupString = albumService.createAlbumGroupString(Set.of(AlbumGroup.ALBUM, AlbumGroup.SINGLE, AlbumGroup.COMPILATION, AlbumGroup.APPEARS_ON));
     this.log = log;
+    this.crawlEventBus = crawlEventBus;
+    this.metrics = metrics;
+    this.tracer = tracer;
+    this.callBudget = callBudget;
+    this.releaseFreshnessTracker = releaseFreshnessTracker;
   }
 
   /**
    * Fetch all albums of the given artists. (Note: This will very likely take up
    * the majority of the crawling process, as it requires firing at least one
-   * Spotify Web API request for EVERY SINGLE ARTIST!)
+   * Spotify Web API request for EVERY SINGLE ARTIST!)<br/>
+   * <br/>
+   * The progress is published as crawl events in steps of (roughly) one percent.
    */
   public List<AlbumSimplified> getAllAlbumsOfArtists(List<String> followedArtists, boolean showProgress) throws SpotifyApiException {
-    CountryCode marketOfCurrentUser = userService.getMarketOfCurrentUser();
+    CountryCode marketOfCurrentUser = marketContext.getUserMarket();
 
     int done = 0;
+    int total = followedArtists.size();
+    int progressStep = Math.max(1, total / ARTIST_PROGRESS_STEPS);
     List<AlbumSimplified> results = new ArrayList<>();
     for (String artist : followedArtists) {
       List<AlbumSimplified> albumIdsOfSingleArtist = getAlbumIdsOfSingleArtist(artist, albumGroupString, marketOfCurrentUser);
       results.addAll(albumIdsOfSingleArtist);
+      done++;
       if (showProgress) {
-        done++;
-        log.debug(done + " / " + followedArtists.size());
+        log.debug(done + " / " + total);
+      }
+      if (done % progressStep == 0 || done == total) {
+        crawlEventBus.publish(CrawlEvent.Type.ARTIST_PROGRESS, Map.of("done", done, "total", total, "releases", results.size()));
       }
     }
     return results;
@@ -80,43 +104,54 @@ public class DiscoveryAlbumService {
    * @return the albums
    */
   private List<AlbumSimplified> getAlbumIdsOfSingleArtist(String artistId, String albumGroupString, CountryCode market) throws SpotifyApiException {
-    List<AlbumSimplified> allAlbums = executePagingStopAtFirstAppearsOn(spotifyApi
+    List<AlbumSimplified> allAlbums = executePagingStopAtFirstAppearsOn(artistId, spotifyApi
       .getArtistsAlbums(artistId)
       .market(market)
       .limit(MAX_ALBUM_FETCH_LIMIT)
       .album_type(albumGroupString));
+    releaseFreshnessTracker.recordArtistCatalog(artistId, allAlbums);
     return attachOriginArtistIdForAppearsOnReleases(artistId, allAlbums);
   }
 
   /**
-   * A custom version of SpotifyCall.executePaging that stops as soon as it finds an appears_on release
+   * A custom version of SpotifyCall.executePaging that stops as soon as it finds an appears_on release.
+   * Every page is accounted as its own request against the artist, and the total of the artist is
+   * recorded in the metrics and traced as a single span.
    */
-  private List<AlbumSimplified> executePagingStopAtFirstAppearsOn(IPagingRequestBuilder<AlbumSimplified, GetArtistsAlbumsRequest.Builder> pagingRequestBuilder) throws SpotifyApiException {
-    List<AlbumSimplified> resultList = new ArrayList<>();
-    Paging<AlbumSimplified> paging = null;
-    do {
-      if (paging != null && paging.getNext() != null) {
-        pagingRequestBuilder.offset(paging.getOffset() + paging.getLimit());
-      }
-      try {
-        paging = SpotifyCall.execute(pagingRequestBuilder);
-      } catch (SpotifyApiException e) {
-        if (TooManyRequestsException.class.equals(e.getNestedException().getClass())) {
-          TooManyRequestsException tooManyRequestsException = (TooManyRequestsException) e.getNestedException();
-          log.error("You have unfortunately been super-rate-limited by Spotify. Please restart the app after the cooldown has expired. Estimated time: " + tooManyRequestsException.getRetryAfter() + " seconds");
-          System.exit(182);
+  private List<AlbumSimplified> executePagingStopAtFirstAppearsOn(String artistId, IPagingRequestBuilder<AlbumSimplified, GetArtistsAlbumsRequest.Builder> pagingRequestBuilder) throws SpotifyApiException {
+    try (CrawlTracer.Scope span = tracer.startSpan(REQUEST_ARTIST_ALBUMS)) {
+      span.setAttribute("artist", artistId);
+      List<AlbumSimplified> resultList = new ArrayList<>();
+      Paging<AlbumSimplified> paging = null;
+      long fetchStart = System.nanoTime();
+      int pages = 0;
+      do {
+        if (paging != null && paging.getNext() != null) {
+          pagingRequestBuilder.offset(paging.getOffset() + paging.getLimit());
         }
-      }
-      AlbumSimplified[] newItems = paging.getItems();
-      SpotifyUtils.addToListIfNotBlank(newItems, resultList);
+        try {
+          paging = callBudget.execute(REQUEST_ARTIST_ALBUMS, SpotifyCallBudget.artist(artistId), pagingRequestBuilder);
+          pages++;
+        } catch (SpotifyApiException e) {
+          if (TooManyRequestsException.class.equals(e.getNestedException().getClass())) {
+            TooManyRequestsException tooManyRequestsException = (TooManyRequestsException) e.getNestedException();
+            log.error("You have unfortunately been super-rate-limited by Spotify. Please restart the app after the cooldown has expired. Estimated time: " + tooManyRequestsException.getRetryAfter() + " seconds");
+            System.exit(182);
+          }
+        }
+        AlbumSimplified[] newItems = paging.getItems();
+        SpotifyUtils.addToListIfNotBlank(newItems, resultList);
 
-      // Fetches are sorted by AlbumGroup, so if the first entry of this paged result is an Appears-On release, we can stop
-      if (newItems == null || newItems.length == 0 || newItems[0].getAlbumGroup().equals(AlbumGroup.APPEARS_ON)) {
-        break;
-      }
+        // Fetches are sorted by AlbumGroup, so if the first entry of this paged result is an Appears-On release, we can stop
+        if (newItems == null || newItems.length == 0 || newItems[0].getAlbumGroup().equals(AlbumGroup.APPEARS_ON)) {
+          break;
+        }
 
-    } while (paging.getNext() != null);
-    return resultList;
+      } while (paging.getNext() != null);
+      metrics.recordArtistReleaseFetch(System.nanoTime() - fetchStart, pages);
+      span.setAttribute("pages", pages).setAttribute("releases", resultList.size());
+      return resultList;
+    }
   }
 
   /**
@@ -188,7 +223,7 @@ public class DiscoveryAlbumService {
 
     Map<String, String> artistIdToName = new HashMap<>();
     for (List<String> sublistArtistIds : SpotifyUtils.partitionList(relevantAppearsOnArtistsIds, 50)) {
-      Artist[] execute = SpotifyCall.execute(spotifyApi.getSeveralArtists(sublistArtistIds.toArray(String[]::new)));
+      Artist[] execute = callBudget.execute(REQUEST_SEVERAL_ARTISTS, null, spotifyApi.getSeveralArtists(sublistArtistIds.toArray(String[]::new)));
       for (Artist a : execute) {
         artistIdToName.put(a.getId(), a.getName());
       }
@@ -8,31 +8,49 @@ import org.springframework.stereotype.Component;
 
 import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
 import spotify.api.events.SpotifyApiException;
+import spotify.bot.util.CrawlTracer;
+import spotify.bot.util.DiscoveryBotMetrics;
+import spotify.bot.util.DiscoveryBotUtils;
+import spotify.bot.util.SpotifyCallBudget;
 import spotify.services.TrackService;
 import spotify.util.SpotifyOptimizedExecutorService;
 import spotify.util.data.AlbumTrackPair;
 
 @Component
 public class DiscoveryTrackService {
+  private static final String REQUEST_ALBUM_TRACKS = "album_tracks";
+
   private final TrackService trackService;
   private final SpotifyOptimizedExecutorService spotifyOptimizedExecutorService;
+  private final DiscoveryBotMetrics metrics;
+  private final CrawlTracer tracer;
+  private final SpotifyCallBudget callBudget;
 
-  DiscoveryTrackService(TrackService trackService, SpotifyOptimizedExecutorService spotifyOptimizedExecutorService) {
+  DiscoveryTrackService(TrackService trackService, SpotifyOptimizedExecutorService spotifyOptimizedExecutorService, DiscoveryBotMetrics metrics, CrawlTracer tracer, SpotifyCallBudget callBudget) {
     this.trackService = trackService;
     this.spotifyOptimizedExecutorService = spotifyOptimizedExecutorService;
+    this.metrics = metrics;
+    this.tracer = tracer;
+    this.callBudget = callBudget;
   }
 
   public List<AlbumTrackPair> getTracksOfAlbums(List<AlbumSimplified> albums) {
     List<Callable<AlbumTrackPair>> callables = new ArrayList<>();
     for (AlbumSimplified album : albums) {
       callables.add(() -> {
-        try {
-          return trackService.getTracksOfSingleAlbum(album);
-        } catch (SpotifyApiException e) {
-          return null;
+        try (CrawlTracer.Scope span = tracer.startSpan(REQUEST_ALBUM_TRACKS)) {
+          span.setAttribute("album", album.getId());
+          try {
+            AlbumTrackPair albumTrackPair = callBudget.account(REQUEST_ALBUM_TRACKS, SpotifyCallBudget.artist(DiscoveryBotUtils.getOriginArtistId(album)), () -> trackService.getTracksOfSingleAlbum(album));
+            span.setAttribute("tracks", albumTrackPair.getTracks().size());
+            return albumTrackPair;
+          } catch (SpotifyApiException e) {
+            span.setAttribute("error", e.getClass().getSimpleName());
+            return null;
+          }
         }
       });
     }
-    return spotifyOptimizedExecutorService.executeAndWait(callables);
+    return spotifyOptimizedExecutorService.executeAndWait(metrics.trackPending(callables));
   }
 }
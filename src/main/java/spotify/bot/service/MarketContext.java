@@ -0,0 +1,74 @@
+package spotify.bot.service;
+
+import org.springframework.stereotype.Component;
+
+import com.neovisionaries.i18n.CountryCode;
+
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.bot.util.SpotifyCallBudget;
+import spotify.services.UserService;
+
+/**
+ * Holds the market of the current user for the duration of a crawl, so that it
+ * only has to be resolved once per crawl instead of once per lookup. Shared by
+ * every component that fetches releases for or checks the availability in the
+ * user's market.
+ */
+@Component
+public class MarketContext {
+  private final static String REQUEST_USER_MARKET = "current_user";
+
+  private final UserService userService;
+  private final SpotifyCallBudget callBudget;
+
+  private volatile CountryCode userMarket;
+
+  MarketContext(UserService userService, SpotifyCallBudget callBudget) {
+    this.userService = userService;
+    this.callBudget = callBudget;
+  }
+
+  /**
+   * Resolve the market of the current user anew (to be called once at the start
+   * of every crawl)
+   */
+  public void refresh() {
+    this.userMarket = callBudget.account(REQUEST_USER_MARKET, null, userService::getMarketOfCurrentUser);
+  }
+
+  /**
+   * Return the market of the current user as resolved during the last
+   * {@link MarketContext#refresh}. Resolves it on the spot if it never was.
+   */
+  public CountryCode getUserMarket() {
+    CountryCode market = this.userMarket;
+    if (market == null) {
+      refresh();
+      market = this.userMarket;
+    }
+    return market;
+  }
+
+  /**
+   * Check if the given track is available in the user's market. This is a plain
+   * identity scan over the track's market array, so no collection gets created
+   * for any lookup.
+   *
+   * @param track the track
+   * @return true if it's available in the user's market (or if the market info is missing)
+   */
+  public boolean isAvailable(TrackSimplified track) {
+    CountryCode[] availableMarkets = track.getAvailableMarkets();
+    if (availableMarkets == null) {
+      // Hotfix because for some reason this endpoint only returns null anymore
+      return true;
+    }
+    CountryCode market = getUserMarket();
+    for (CountryCode availableMarket : availableMarkets) {
+      if (availableMarket == market) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,133 @@
+package spotify.bot.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+import spotify.api.events.SpotifyApiException;
+import spotify.bot.util.AdaptivePacer;
+
+/**
+ * Adds a large number of tracks to the top of a playlist in batches while
+ * retaining their order, without any fixed cooldown between the batches.<br/>
+ * <br/>
+ * Every batch is inserted at an explicit position directly below the
+ * previously inserted batch, and the next batch is only sent once the previous
+ * one was acknowledged with a new snapshot ID. The final order is therefore
+ * independent of timing. Only when Spotify signals pressure does the
+ * {@link AdaptivePacer} slow down, and the affected batch gets retried at the
+ * very same position.<br/>
+ * <br/>
+ * A server error doesn't tell whether the batch was inserted or not. Before
+ * such a batch is retried, the playlist is therefore checked for the batch at
+ * its position, so a batch that did land isn't inserted a second time. Rate
+ * limited requests are rejected before they are processed and are retried
+ * right away.
+ */
+public class OrderedPlaylistInserter {
+  private final static int MAX_ATTEMPTS_PER_BATCH = 5;
+
+  /**
+   * A single "add items to playlist" request
+   */
+  @FunctionalInterface
+  public interface PlaylistItemAdder {
+    /**
+     * Insert the given URIs at the given position of the playlist
+     *
+     * @return the snapshot ID of the playlist after the insertion
+     */
+    String addItems(String playlistId, List<String> uris, int position) throws SpotifyApiException;
+  }
+
+  /**
+   * Checks whether an insertion with an unknown outcome did land
+   */
+  @FunctionalInterface
+  public interface InsertionVerifier {
+    /**
+     * Check if the given URIs are at the given position of the playlist
+     *
+     * @return the current snapshot ID of the playlist if they are, null otherwise
+     */
+    String findInsertion(String playlistId, List<String> uris, int position) throws SpotifyApiException;
+  }
+
+  private final PlaylistItemAdder playlistItemAdder;
+  private final InsertionVerifier insertionVerifier;
+  private final AdaptivePacer pacer;
+  private final int batchSize;
+
+  public OrderedPlaylistInserter(PlaylistItemAdder playlistItemAdder, InsertionVerifier insertionVerifier, AdaptivePacer pacer, int batchSize) {
+    this.playlistItemAdder = playlistItemAdder;
+    this.insertionVerifier = insertionVerifier;
+    this.pacer = pacer;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Insert the given URIs at the top of the playlist. The resulting order is the
+   * same as adding every batch of the given list to the top one after another
+   * (i.e. the last batch ends up at the very top, but each batch retains its
+   * inner order).
+   *
+   * @param playlistId the playlist ID
+   * @param uris the URIs to insert
+   * @return the snapshot ID after the last insertion (null if nothing was inserted)
+   */
+  public String insertAtTop(String playlistId, List<String> uris) throws SpotifyApiException {
+    String snapshotId = null;
+    int position = 0;
+    for (List<String> batch : batchesInInsertionOrder(uris)) {
+      String newSnapshotId = insertBatch(playlistId, batch, position);
+      if (newSnapshotId == null || newSnapshotId.equals(snapshotId)) {
+        throw new IllegalStateException(String.format("Insertion at position %d of playlist %s wasn't acknowledged with a new snapshot", position, playlistId));
+      }
+      snapshotId = newSnapshotId;
+      position += batch.size();
+    }
+    return snapshotId;
+  }
+
+  /**
+   * Return the given elements in the order they will be in at the top of the
+   * playlist after {@link OrderedPlaylistInserter#insertAtTop}
+   */
+  public <T> List<T> resultingOrder(List<T> elements) {
+    List<T> resultingOrder = new ArrayList<>();
+    batchesInInsertionOrder(elements).forEach(resultingOrder::addAll);
+    return resultingOrder;
+  }
+
+  private <T> List<List<T>> batchesInInsertionOrder(List<T> elements) {
+    List<List<T>> batches = new ArrayList<>();
+    for (int i = 0; i < elements.size(); i += batchSize) {
+      batches.add(0, elements.subList(i, Math.min(elements.size(), i + batchSize)));
+    }
+    return batches;
+  }
+
+  private String insertBatch(String playlistId, List<String> batch, int position) throws SpotifyApiException {
+    boolean outcomeUnknown = false;
+    for (int attempt = 1; ; attempt++) {
+      pacer.await();
+      try {
+        if (outcomeUnknown) {
+          String landedSnapshotId = insertionVerifier.findInsertion(playlistId, batch, position);
+          if (landedSnapshotId != null) {
+            pacer.onSuccess();
+            return landedSnapshotId;
+          }
+        }
+        String snapshotId = playlistItemAdder.addItems(playlistId, batch, position);
+        pacer.onSuccess();
+        return snapshotId;
+      } catch (SpotifyApiException e) {
+        if (!pacer.onFailure(e) || attempt >= MAX_ATTEMPTS_PER_BATCH) {
+          throw e;
+        }
+        outcomeUnknown = outcomeUnknown || !(e.getNestedException() instanceof TooManyRequestsException);
+      }
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package spotify.bot.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import se.michaelthelin.spotify.model_objects.IPlaylistItem;
+import se.michaelthelin.spotify.model_objects.specification.Paging;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import spotify.api.events.SpotifyApiException;
+import spotify.bot.util.data.MirroredTrack;
+
+/**
+ * Reads all items of a playlist page by page. Once the first page has revealed
+ * the total, all remaining pages are requested in parallel, in waves of a
+ * limited number of concurrent requests.<br/>
+ * <br/>
+ * The pages of a wave may complete in any order, and the trimmed responses
+ * don't contain their offset. Every page is therefore put into the slot of the
+ * offset it was requested with, rather than relying on the order or content of
+ * the responses.<br/>
+ * <br/>
+ * The playlists are usually read from within tasks that already occupy the
+ * shared Spotify executor, so the page waves must never be submitted to that
+ * same executor: with all of its workers waiting for their own nested pages,
+ * nothing would be left to run them. Use a {@link PageWavePool} instead.
+ */
+public class PagedPlaylistReader {
+
+  /**
+   * A single "get playlist items" request
+   */
+  @FunctionalInterface
+  public interface PageReader {
+    /**
+     * Read the page of the playlist starting at the given offset
+     */
+    Paging<PlaylistTrack> readPage(String playlistId, int offset) throws SpotifyApiException;
+  }
+
+  /**
+   * Runs a wave of page requests and waits for all of them to complete
+   */
+  @FunctionalInterface
+  public interface PageWaveExecutor {
+    void executeAndWait(List<Callable<Paging<PlaylistTrack>>> callables);
+  }
+
+  /**
+   * Runs the page waves on a small, dedicated thread pool. Page requests never
+   * submit further tasks themselves, so this pool can't deadlock regardless of
+   * how many callers wait for it at the same time.
+   */
+  public static class PageWavePool implements PageWaveExecutor {
+    private final ThreadPoolExecutor executor;
+
+    public PageWavePool(int threads) {
+      this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    }
+
+    /**
+     * Run the given wave and wait for all of it. Failed pages are simply missing
+     * afterwards, which the reader reports.
+     */
+    @Override
+    public void executeAndWait(List<Callable<Paging<PlaylistTrack>>> callables) {
+      try {
+        executor.invokeAll(callables);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Return the number of page requests waiting for a free thread
+     */
+    public int getQueuedCount() {
+      return executor.getQueue().size();
+    }
+
+    public void shutdown() {
+      executor.shutdownNow();
+    }
+  }
+
+  private final PageReader pageReader;
+  private final PageWaveExecutor pageWaveExecutor;
+  private final int pageLimit;
+  private final int maxConcurrentPageRequests;
+
+  public PagedPlaylistReader(PageReader pageReader, PageWaveExecutor pageWaveExecutor, int pageLimit, int maxConcurrentPageRequests) {
+    this.pageReader = pageReader;
+    this.pageWaveExecutor = pageWaveExecutor;
+    this.pageLimit = pageLimit;
+    this.maxConcurrentPageRequests = maxConcurrentPageRequests;
+  }
+
+  /**
+   * Read all items of the given playlist in playlist order
+   *
+   * @param playlistId the playlist ID
+   * @return the items
+   */
+  public List<MirroredTrack> readPlaylistItems(String playlistId) throws SpotifyApiException {
+    Paging<PlaylistTrack> firstPage = pageReader.readPage(playlistId, 0);
+    int total = firstPage.getTotal();
+    List<MirroredTrack> tracks = new ArrayList<>(total);
+    addPageItems(tracks, firstPage);
+
+    int remainingPageCount = Math.max(0, (total - 1) / pageLimit);
+    AtomicReferenceArray<Paging<PlaylistTrack>> remainingPages = new AtomicReferenceArray<>(remainingPageCount);
+    for (int waveStart = 0; waveStart < remainingPageCount; waveStart += maxConcurrentPageRequests) {
+      List<Callable<Paging<PlaylistTrack>>> callables = new ArrayList<>();
+      for (int i = waveStart; i < Math.min(remainingPageCount, waveStart + maxConcurrentPageRequests); i++) {
+        int index = i;
+        int offset = (index + 1) * pageLimit;
+        callables.add(() -> {
+          Paging<PlaylistTrack> page = pageReader.readPage(playlistId, offset);
+          remainingPages.set(index, page);
+          return page;
+        });
+      }
+      pageWaveExecutor.executeAndWait(callables);
+    }
+
+    for (int i = 0; i < remainingPageCount; i++) {
+      Paging<PlaylistTrack> page = remainingPages.get(i);
+      if (page == null) {
+        throw new IllegalStateException(String.format("Page at offset %d of playlist %s couldn't be read", (i + 1) * pageLimit, playlistId));
+      }
+      addPageItems(tracks, page);
+    }
+    return tracks;
+  }
+
+  private void addPageItems(List<MirroredTrack> tracks, Paging<PlaylistTrack> page) {
+    for (PlaylistTrack playlistTrack : page.getItems()) {
+      IPlaylistItem item = playlistTrack.getTrack();
+      tracks.add(new MirroredTrack(
+        item != null ? item.getId() : null,
+        item != null ? item.getUri() : null,
+        playlistTrack.getAddedAt()));
+    }
+  }
+}
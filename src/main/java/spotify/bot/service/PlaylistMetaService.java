@@ -4,29 +4,33 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import se.michaelthelin.spotify.SpotifyApi;
-import se.michaelthelin.spotify.model_objects.IPlaylistItem;
 import se.michaelthelin.spotify.model_objects.miscellaneous.CurrentlyPlaying;
+import se.michaelthelin.spotify.model_objects.specification.Context;
 import se.michaelthelin.spotify.model_objects.specification.Playlist;
-import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
 import se.michaelthelin.spotify.requests.data.playlists.ChangePlaylistsDetailsRequest;
-import spotify.api.SpotifyCall;
 import spotify.api.events.SpotifyApiException;
 import spotify.bot.properties.FeatureControl;
 import spotify.bot.config.properties.PlaylistStoreConfig;
 import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
-import spotify.services.PlaylistService;
+import spotify.bot.util.DiscoveryBotMetrics;
+import spotify.bot.util.SpotifyCallBudget;
+import spotify.bot.util.data.MirroredTrack;
+import spotify.bot.util.data.NotifiersShownEvent;
 import spotify.util.SpotifyOptimizedExecutorService;
 import spotify.util.SpotifyUtils;
 import spotify.util.data.AlbumTrackPair;
@@ -49,6 +53,10 @@ public class PlaylistMetaService {
    */
   public final static String INDICATOR_OFF = "\u26AB";
 
+  private final static String REQUEST_PLAYLIST = "playlist";
+  private final static String REQUEST_CURRENTLY_PLAYING = "currently_playing";
+  private final static String REQUEST_CHANGE_PLAYLIST_DETAILS = "change_playlist_details";
+
   /**
    * The description timestamp. Example: "January 1, 2000 - 00:00"
    */
@@ -59,22 +67,43 @@ public class PlaylistMetaService {
    */
   public static final String DESCRIPTION_PREFIX = "Last Discovery: ";
 
+  /**
+   * The URI prefix of a playback context that is a playlist
+   */
+  private static final String PLAYLIST_CONTEXT_URI_PREFIX = "spotify:playlist:";
+
   private final SpotifyApi spotifyApi;
-  private final PlaylistService playlistService;
+  private final PlaylistMirrorService playlistMirrorService;
   private final PlaylistStoreConfig playlistStoreConfig;
   private final SpotifyOptimizedExecutorService spotifyOptimizedExecutorService;
   private final FeatureControl featureControl;
+  private final ApplicationEventPublisher applicationEventPublisher;
+  private final DiscoveryBotMetrics metrics;
+  private final SpotifyCallBudget callBudget;
+
+  /**
+   * The IDs of the tracks added within the notification timeout window (along
+   * with their addition dates), by playlist ID
+   */
+  private final Map<String, Map<String, Date>> recentAdditions;
 
   PlaylistMetaService(SpotifyApi spotifyApi,
-    PlaylistService playlistService,
+    PlaylistMirrorService playlistMirrorService,
     PlaylistStoreConfig playlistStoreConfig,
     SpotifyOptimizedExecutorService spotifyOptimizedExecutorService,
-    FeatureControl featureControl) {
+    FeatureControl featureControl,
+    ApplicationEventPublisher applicationEventPublisher,
+    DiscoveryBotMetrics metrics,
+    SpotifyCallBudget callBudget) {
     this.spotifyApi = spotifyApi;
-    this.playlistService = playlistService;
+    this.playlistMirrorService = playlistMirrorService;
     this.playlistStoreConfig = playlistStoreConfig;
     this.spotifyOptimizedExecutorService = spotifyOptimizedExecutorService;
     this.featureControl = featureControl;
+    this.applicationEventPublisher = applicationEventPublisher;
+    this.metrics = metrics;
+    this.callBudget = callBudget;
+    this.recentAdditions = new ConcurrentHashMap<>();
   }
 
   /**
@@ -84,16 +113,17 @@ public class PlaylistMetaService {
   public void initLastUpdatedFromPlaylistDescriptions() {
     if (featureControl.isPlaylistMetaEnabled()) {
       List<Callable<Void>> callables = new ArrayList<>();
-      for (PlaylistStore ps : playlistStoreConfig.getEnabledPlaylistStores()) {
+      for (Map.Entry<String, List<PlaylistStore>> entry : PlaylistStoreConfig.groupByPlaylistId(playlistStoreConfig.getEnabledPlaylistStores()).entrySet()) {
         callables.add(() -> {
-          Playlist playlist = SpotifyCall.execute(spotifyApi.getPlaylist(ps.getPlaylistId()));
+          Playlist playlist = callBudget.execute(REQUEST_PLAYLIST, SpotifyCallBudget.playlist(entry.getKey()), spotifyApi.getPlaylist(entry.getKey()));
           if (containsNewIndicator(playlist.getName())) {
             String description = playlist.getDescription();
             if (description.startsWith(DESCRIPTION_PREFIX)) {
               String rawDate = description.replace(DESCRIPTION_PREFIX, "").trim();
               try {
                 LocalDateTime lastUpdateFromDescription = DESCRIPTION_TIMESTAMP_FORMAT.parse(rawDate, LocalDateTime::from);
-                ps.setLastUpdate(lastUpdateFromDescription);
+                entry.getValue().forEach(ps -> ps.setLastUpdate(lastUpdateFromDescription));
+                registerRecentAdditions(entry.getKey(), playlistMirrorService.getPlaylistMirror(entry.getKey()).getTracks());
               } catch (DateTimeParseException e) {
                 e.printStackTrace();
               }
@@ -102,34 +132,69 @@ public class PlaylistMetaService {
           return null; // must return something for Void class
         });
       }
-      spotifyOptimizedExecutorService.executeAndWaitVoid(callables);
+      spotifyOptimizedExecutorService.executeAndWaitVoid(metrics.trackPending(callables));
+      if (hasPendingNotifiers()) {
+        applicationEventPublisher.publishEvent(new NotifiersShownEvent(this));
+      }
     }
   }
 
   /**
    * Display the [NEW] notifiers of the given album groups' playlists titles, if
-   * any songs were added
+   * any songs were added (only once per physical playlist)
    */
   public void showNotifiers(Map<PlaylistStore, List<AlbumTrackPair>> songsByPlaylist) throws SpotifyApiException {
     if (featureControl.isPlaylistMetaEnabled()) {
       List<Callable<Void>> callables = new ArrayList<>();
-      for (PlaylistStore ps : songsByPlaylist.keySet()) {
+      for (Map.Entry<String, List<PlaylistStore>> entry : PlaylistStoreConfig.groupByPlaylistId(songsByPlaylist.keySet()).entrySet()) {
         callables.add(() -> {
-          updatePlaylistTitleAndDescription(ps, INDICATOR_OFF, INDICATOR_NEW, true);
-          playlistStoreConfig.setPlaylistStoreUpdatedJustNow(ps.getAlbumGroupExtended());
+          updatePlaylistTitleAndDescription(entry.getKey(), INDICATOR_OFF, INDICATOR_NEW, true);
+          entry.getValue().forEach(ps -> playlistStoreConfig.setPlaylistStoreUpdatedJustNow(ps.getAlbumGroupExtended()));
           return null; // must return something for Void class
         });
       }
-      spotifyOptimizedExecutorService.executeAndWaitVoid(callables);
+      spotifyOptimizedExecutorService.executeAndWaitVoid(metrics.trackPending(callables));
+      if (!callables.isEmpty()) {
+        applicationEventPublisher.publishEvent(new NotifiersShownEvent(this));
+      }
     }
   }
 
+  /**
+   * Remember the given tracks as added to the given playlist, so that playing any
+   * of them will clear the playlist's notifier. Tracks outside the notification
+   * timeout window are ignored (and dropped from previous registrations).
+   *
+   * @param playlistId the playlist ID
+   * @param addedTracks the added tracks
+   */
+  public void registerRecentAdditions(String playlistId, Collection<MirroredTrack> addedTracks) {
+    Map<String, Date> recentAdditionsOfPlaylist = recentAdditions.computeIfAbsent(playlistId, id -> new ConcurrentHashMap<>());
+    recentAdditionsOfPlaylist.values().removeIf(addedAt -> !SpotifyUtils.isWithinTimeoutWindow(addedAt, NEW_NOTIFICATION_TIMEOUT_DAYS));
+    for (MirroredTrack track : addedTracks) {
+      if (track.getId() != null && track.getAddedAt() != null && SpotifyUtils.isWithinTimeoutWindow(track.getAddedAt(), NEW_NOTIFICATION_TIMEOUT_DAYS)) {
+        recentAdditionsOfPlaylist.merge(track.getId(), track.getAddedAt(), (a, b) -> a.after(b) ? a : b);
+      }
+    }
+  }
+
+  /**
+   * Return true if any enabled playlist currently carries a [NEW] notifier
+   * (judging by the "last update" field, which is unset once marked as read)
+   */
+  public boolean hasPendingNotifiers() {
+    return playlistStoreConfig.getEnabledPlaylistStores().stream()
+      .anyMatch(playlistStore -> playlistStore.getLastUpdate() != null);
+  }
+
   /**
    * Convenience method to try and clear every obsolete New indicator
    *
    * @param force if true, force-clear all notifiers no matter what
+   * @return true if the user is currently playing anything (always false if no
+   *         playlist needed a deep check, as playback isn't looked up then)
    */
-  public void clearObsoleteNotifiers(boolean force) throws SpotifyApiException {
+  public boolean clearObsoleteNotifiers(boolean force) throws SpotifyApiException {
     Collection<PlaylistStore> enabledPlaylistStores = playlistStoreConfig.getEnabledPlaylistStores();
 
     // Do a lite pre-check to see if ANY playlists even need a deep check (to reduce API calls).
@@ -142,11 +207,16 @@ public class PlaylistMetaService {
     if (!psRequireDeepCheck.isEmpty()) {
       // Once it's been established that at least one playlist needs a deep check for notifier clearance,
       // compare the currently playing song with the recently added songs of the playlists
-      CurrentlyPlaying currentlyPlaying = SpotifyCall.execute(spotifyApi.getUsersCurrentlyPlayingTrack());
+      CurrentlyPlaying currentlyPlaying = callBudget.execute(REQUEST_CURRENTLY_PLAYING, null, spotifyApi.getUsersCurrentlyPlayingTrack());
 
       if (currentlyPlaying != null && currentlyPlaying.getItem() != null) {
         List<Callable<Void>> callables = new ArrayList<>();
-        for (PlaylistStore ps : psRequireDeepCheck) {
+        for (List<PlaylistStore> playlistStoresOfPlaylist : PlaylistStoreConfig.groupByPlaylistId(psRequireDeepCheck).values()) {
+          // The most recent update of any album group sharing the playlist counts
+          PlaylistStore ps = playlistStoresOfPlaylist.stream()
+            .filter(playlistStore -> playlistStore.getLastUpdate() != null)
+            .max(Comparator.comparing(PlaylistStore::getLastUpdate))
+            .orElse(playlistStoresOfPlaylist.get(0));
           callables.add(() -> {
             if (force || shouldIndicatorBeMarkedAsRead(ps, currentlyPlaying)) {
               markPlaylistAsRead(ps);
@@ -154,46 +224,46 @@ public class PlaylistMetaService {
             return null;
           });
         }
-        spotifyOptimizedExecutorService.executeAndWaitVoid(callables);
+        spotifyOptimizedExecutorService.executeAndWaitVoid(metrics.trackPending(callables));
       }
+      return currentlyPlaying != null && Boolean.TRUE.equals(currentlyPlaying.getIs_playing());
     }
+    return false;
   }
 
   /**
-   * Marks the given playlist as read.
+   * Marks the given playlist as read (including every other album group sharing
+   * the same playlist).
    *
    * @param ps the PlaylistStore to clear
    */
   public void markPlaylistAsRead(PlaylistStore ps) {
-    playlistStoreConfig.unsetPlaylistStoreUpdatedRecently(ps.getAlbumGroupExtended());
-    updatePlaylistTitleAndDescription(ps, INDICATOR_NEW, INDICATOR_OFF, false);
+    for (PlaylistStore playlistStore : playlistStoreConfig.getPlaylistStoresSharingPlaylist(ps.getPlaylistId())) {
+      playlistStoreConfig.unsetPlaylistStoreUpdatedRecently(playlistStore.getAlbumGroupExtended());
+    }
+    updatePlaylistTitleAndDescription(ps.getPlaylistId(), INDICATOR_NEW, INDICATOR_OFF, false);
   }
 
   /**
-   * Check if the [NEW] indicator for this playlist should be removed
+   * Check if the [NEW] indicator for this playlist should be removed. This is
+   * the case if the user is currently playing the playlist itself, or any track
+   * that was recently added to it. Neither check requires reading the playlist.
    */
   private boolean shouldIndicatorBeMarkedAsRead(PlaylistStore playlistStore, CurrentlyPlaying currentlyPlaying) {
     if (!SpotifyUtils.isWithinTimeoutWindow(playlistStore.getLastUpdate(), NEW_NOTIFICATION_TIMEOUT_DAYS)) {
       return true;
     }
 
-    Playlist playlist = playlistService.getPlaylist(playlistStore.getPlaylistId());
-
-    if (playlist != null && playlist.getTracks() != null && playlist.getTracks().getItems() != null) {
-      List<PlaylistTrack> recentlyAddedPlaylistTracks = Arrays.stream(playlist.getTracks().getItems())
-        .filter(pt -> SpotifyUtils.isWithinTimeoutWindow(pt.getAddedAt(), NEW_NOTIFICATION_TIMEOUT_DAYS))
-        .collect(Collectors.toList());
-
-      if (!recentlyAddedPlaylistTracks.isEmpty()) {
-        String currentlyPlayingItemId = currentlyPlaying.getItem().getId();
-        return recentlyAddedPlaylistTracks.stream()
-          .map(PlaylistTrack::getTrack)
-          .map(IPlaylistItem::getId)
-          .filter(Objects::nonNull)
-          .anyMatch(id -> Objects.equals(id, currentlyPlayingItemId));
-      }
+    Context context = currentlyPlaying.getContext();
+    if (context != null && Objects.equals(context.getUri(), PLAYLIST_CONTEXT_URI_PREFIX + playlistStore.getPlaylistId())) {
+      return true;
     }
 
+    Map<String, Date> recentAdditionsOfPlaylist = recentAdditions.get(playlistStore.getPlaylistId());
+    if (recentAdditionsOfPlaylist != null) {
+      Date addedAt = recentAdditionsOfPlaylist.get(currentlyPlaying.getItem().getId());
+      return addedAt != null && SpotifyUtils.isWithinTimeoutWindow(addedAt, NEW_NOTIFICATION_TIMEOUT_DAYS);
+    }
     return false;
   }
 
@@ -211,14 +281,13 @@ public class PlaylistMetaService {
    * symbol IF it isn't already contained in the playlist's name. Also timestamp
    * the playlist, if specified.
    *
-   * @param playlistStore       the PlaylistStore containing the relevant playlist
+   * @param playlistId          the ID of the relevant playlist
    * @param notifierTarget      the target String to be replaced
    * @param notifierReplacement the replacement String
    * @param timestamp           write the "Last Discovery" timestamp in the
    *                            description
    */
-  private void updatePlaylistTitleAndDescription(PlaylistStore playlistStore, String notifierTarget, String notifierReplacement, boolean timestamp) throws SpotifyApiException {
-    String playlistId = playlistStore.getPlaylistId();
+  private void updatePlaylistTitleAndDescription(String playlistId, String notifierTarget, String notifierReplacement, boolean timestamp) throws SpotifyApiException {
     if (playlistId != null) {
       String newPlaylistName = null;
       String newDescription = null;
@@ -227,7 +296,7 @@ public class PlaylistMetaService {
         newDescription = DESCRIPTION_PREFIX + LocalDateTime.now().format(DESCRIPTION_TIMESTAMP_FORMAT);
       }
 
-      Playlist p = playlistService.getPlaylist(playlistId);
+      Playlist p = callBudget.execute(REQUEST_PLAYLIST, SpotifyCallBudget.playlist(playlistId), spotifyApi.getPlaylist(playlistId));
       if (p != null) {
         String playlistName = p.getName();
         if (playlistName != null && playlistName.contains(notifierTarget)) {
@@ -243,7 +312,7 @@ public class PlaylistMetaService {
         if (newDescription != null) {
           playlistDetailsBuilder = playlistDetailsBuilder.description(newDescription);
         }
-        SpotifyCall.execute(playlistDetailsBuilder);
+        callBudget.execute(REQUEST_CHANGE_PLAYLIST_DETAILS, SpotifyCallBudget.playlist(playlistId), playlistDetailsBuilder);
       }
     }
   }
@@ -0,0 +1,276 @@
+package spotify.bot.service;
+
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import se.michaelthelin.spotify.SpotifyApi;
+import spotify.api.events.SpotifyApiException;
+import spotify.bot.config.database.DatabaseService;
+import spotify.bot.properties.FeatureControl;
+import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.DiscoveryBotMetrics;
+import spotify.bot.util.SpotifyCallBudget;
+import spotify.bot.util.data.MirroredTrack;
+import spotify.bot.util.data.PlaylistMirror;
+import spotify.util.SpotifyUtils;
+
+/**
+ * Maintains a persistent local mirror of every managed playlist (track ID,
+ * URI, added_at, position, and the snapshot ID of the mirrored version).<br/>
+ * <br/>
+ * Reading a mirror only costs a single, tiny request for the playlist's current
+ * snapshot ID. The full playlist is only read again if that snapshot differs,
+ * i.e. when the playlist was modified by anyone but the bot itself. The bot's
+ * own writes are applied to the mirror directly.
+ */
+@Service
+public class PlaylistMirrorService {
+  private final static int PLAYLIST_REMOVE_LIMIT = 100;
+  private final static String SNAPSHOT_ID_FIELDS = "snapshot_id";
+  private final static String PLAYLIST_MIRROR_CACHE = "playlist_mirror";
+  private final static String REQUEST_PLAYLIST_SNAPSHOT = "playlist_snapshot";
+  private final static String REQUEST_REMOVE_PLAYLIST_ITEMS = "remove_playlist_items";
+
+  private final SpotifyApi spotifyApi;
+  private final PlaylistReadService playlistReadService;
+  private final DatabaseService databaseService;
+  private final FeatureControl featureControl;
+  private final DiscoveryBotLogger log;
+  private final DiscoveryBotMetrics metrics;
+  private final SpotifyCallBudget callBudget;
+
+  private final Map<String, PlaylistMirror> mirrors;
+  private final Map<String, Object> locks;
+
+  PlaylistMirrorService(SpotifyApi spotifyApi, PlaylistReadService playlistReadService, DatabaseService databaseService, FeatureControl featureControl, DiscoveryBotLogger discoveryBotLogger, DiscoveryBotMetrics metrics, SpotifyCallBudget callBudget) {
+    this.spotifyApi = spotifyApi;
+    this.playlistReadService = playlistReadService;
+    this.databaseService = databaseService;
+    this.featureControl = featureControl;
+    this.log = discoveryBotLogger;
+    this.metrics = metrics;
+    this.callBudget = callBudget;
+    this.mirrors = new ConcurrentHashMap<>();
+    this.locks = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Return the up-to-date mirror of the given playlist. The playlist is only read
+   * in full if its current snapshot ID differs from the mirrored one.
+   *
+   * @param playlistId the playlist ID
+   * @return the mirror
+   */
+  public PlaylistMirror getPlaylistMirror(String playlistId) throws SpotifyApiException {
+    synchronized (lockFor(playlistId)) {
+      String currentSnapshotId = getCurrentSnapshotId(playlistId);
+      PlaylistMirror mirror = getLocalMirror(playlistId);
+      if (mirror != null && Objects.equals(mirror.getSnapshotId(), currentSnapshotId)) {
+        metrics.recordCacheLookups(PLAYLIST_MIRROR_CACHE, 1, 0);
+        return mirror;
+      }
+      metrics.recordCacheLookups(PLAYLIST_MIRROR_CACHE, 0, 1);
+
+      List<MirroredTrack> tracks = playlistReadService.readPlaylistItems(playlistId);
+      PlaylistMirror resyncedMirror = new PlaylistMirror(playlistId, currentSnapshotId, tracks);
+      store(resyncedMirror);
+      return resyncedMirror;
+    }
+  }
+
+  /**
+   * Return the current snapshot ID of the given playlist, as reported by Spotify
+   *
+   * @param playlistId the playlist ID
+   * @return the snapshot ID
+   */
+  public String getCurrentSnapshotId(String playlistId) throws SpotifyApiException {
+    return callBudget.execute(REQUEST_PLAYLIST_SNAPSHOT, SpotifyCallBudget.playlist(playlistId), spotifyApi.getPlaylist(playlistId).fields(SNAPSHOT_ID_FIELDS)).getSnapshotId();
+  }
+
+  /**
+   * Return the mirror of the given playlist as it is known locally, without
+   * checking it against its current snapshot ID (so it may be outdated)
+   *
+   * @param playlistId the playlist ID
+   * @return the local mirror, or null if there is none
+   */
+  public PlaylistMirror getLocalPlaylistMirror(String playlistId) {
+    synchronized (lockFor(playlistId)) {
+      return getLocalMirror(playlistId);
+    }
+  }
+
+  /**
+   * Apply an insertion by the bot itself to the top of the playlist. If the
+   * mirror didn't represent the snapshot the insertion was based on, it is
+   * invalidated instead.
+   *
+   * @param playlistId the playlist ID
+   * @param previousSnapshotId the snapshot ID before the insertion
+   * @param insertedTracks the inserted tracks, in their resulting order
+   * @param newSnapshotId the snapshot ID after the insertion
+   */
+  public void applyInsertionAtTop(String playlistId, String previousSnapshotId, List<MirroredTrack> insertedTracks, String newSnapshotId) {
+    synchronized (lockFor(playlistId)) {
+      PlaylistMirror mirror = getLocalMirror(playlistId);
+      if (mirror == null || newSnapshotId == null || !Objects.equals(mirror.getSnapshotId(), previousSnapshotId)) {
+        invalidate(playlistId);
+        return;
+      }
+      storeUpdate(mirror, mirror.withInsertionAtTop(newSnapshotId, insertedTracks));
+    }
+  }
+
+  /**
+   * Remove all tracks from the bottom of the playlist, so that only the given
+   * number of tracks remain. Since the positions are taken from the mirror, no
+   * read is required and other occurrences of the same tracks further up are
+   * left untouched. Items without a URI can't be removed, so they are skipped
+   * and further tracks above them are removed instead.
+   *
+   * @param playlistMirror the current mirror of the playlist
+   * @param newSize the number of tracks to retain
+   * @return the updated mirror
+   */
+  public PlaylistMirror trimToSize(PlaylistMirror playlistMirror, int newSize) throws SpotifyApiException {
+    Set<Integer> positions = playlistMirror.removablePositionsFromBottom(playlistMirror.size() - newSize);
+    return removeTracksAtPositions(playlistMirror, positions);
+  }
+
+  /**
+   * Remove the tracks at the given positions of the mirror from the playlist and
+   * apply the removal to the mirror. The tracks are removed by their positions
+   * against the mirrored snapshot ID, in batches of 100 starting from the very
+   * bottom (so the positions of the remaining tracks never shift). Unavailable
+   * items without a URI can't be addressed by the API and are kept.
+   *
+   * @param playlistMirror the current mirror of the playlist
+   * @param positions the positions of the tracks to remove
+   * @return the updated mirror
+   */
+  public PlaylistMirror removeTracksAtPositions(PlaylistMirror playlistMirror, Set<Integer> positions) throws SpotifyApiException {
+    String playlistId = playlistMirror.getPlaylistId();
+    synchronized (lockFor(playlistId)) {
+      List<MirroredTrack> tracks = playlistMirror.getTracks();
+      List<Integer> removablePositions = positions.stream()
+        .filter(position -> position >= 0 && position < tracks.size() && tracks.get(position).getUri() != null)
+        .sorted(Comparator.reverseOrder())
+        .collect(Collectors.toList());
+      if (removablePositions.isEmpty()) {
+        return playlistMirror;
+      }
+
+      String snapshotId = playlistMirror.getSnapshotId();
+      try {
+        for (List<Integer> chunk : SpotifyUtils.partitionList(removablePositions, PLAYLIST_REMOVE_LIMIT)) {
+          Map<String, JsonArray> positionsByUri = new LinkedHashMap<>();
+          for (int position : chunk) {
+            positionsByUri.computeIfAbsent(tracks.get(position).getUri(), u -> new JsonArray()).add(position);
+          }
+          JsonArray json = new JsonArray();
+          for (Map.Entry<String, JsonArray> entry : positionsByUri.entrySet()) {
+            JsonObject jsonObject = new JsonObject();
+            jsonObject.addProperty("uri", entry.getKey());
+            jsonObject.add("positions", entry.getValue());
+            json.add(jsonObject);
+          }
+          snapshotId = callBudget.execute(REQUEST_REMOVE_PLAYLIST_ITEMS, SpotifyCallBudget.playlist(playlistId), spotifyApi.removeItemsFromPlaylist(playlistId, json).snapshotId(snapshotId)).getSnapshotId();
+        }
+      } catch (SpotifyApiException e) {
+        invalidate(playlistId);
+        throw e;
+      }
+
+      Set<Integer> removedPositions = new HashSet<>(removablePositions);
+      PlaylistMirror localMirror = getLocalMirror(playlistId);
+      if (localMirror != null && Objects.equals(localMirror.getSnapshotId(), playlistMirror.getSnapshotId())) {
+        PlaylistMirror updatedMirror = localMirror.withoutPositions(snapshotId, removedPositions);
+        storeUpdate(localMirror, updatedMirror);
+        return updatedMirror;
+      }
+      invalidate(playlistId);
+      return playlistMirror.withoutPositions(snapshotId, removedPositions);
+    }
+  }
+
+  /**
+   * Run the given action while holding the lock of the given playlist, which
+   * every read and write of its mirror synchronizes on. Use this to make a
+   * read-modify-write sequence on the mirror atomic.
+   *
+   * @param playlistId the playlist ID
+   * @param action the action
+   * @return the result of the action
+   */
+  public <T> T withPlaylistLock(String playlistId, Supplier<T> action) {
+    synchronized (lockFor(playlistId)) {
+      return action.get();
+    }
+  }
+
+  /**
+   * Drop the mirror of the given playlist, so it gets fully read again on next
+   * access (e.g. after a failed write with an unknown outcome)
+   *
+   * @param playlistId the playlist ID
+   */
+  public void invalidate(String playlistId) {
+    synchronized (lockFor(playlistId)) {
+      mirrors.remove(playlistId);
+      databaseService.invalidatePlaylistMirror(playlistId);
+    }
+  }
+
+  ////////////////////////////////
+
+  private Object lockFor(String playlistId) {
+    return locks.computeIfAbsent(playlistId, id -> new Object());
+  }
+
+  private PlaylistMirror getLocalMirror(String playlistId) {
+    PlaylistMirror mirror = mirrors.get(playlistId);
+    if (mirror == null && featureControl.isCacheEnabled()) {
+      try {
+        mirror = databaseService.getPlaylistMirror(playlistId);
+        if (mirror != null) {
+          mirrors.put(playlistId, mirror);
+        }
+      } catch (SQLException e) {
+        log.stackTrace(e);
+      }
+    }
+    return mirror;
+  }
+
+  private void store(PlaylistMirror playlistMirror) {
+    mirrors.put(playlistMirror.getPlaylistId(), playlistMirror);
+    if (featureControl.isCacheEnabled()) {
+      databaseService.storePlaylistMirror(playlistMirror);
+    }
+  }
+
+  /**
+   * Store an update of the given local mirror, only writing the changed tracks
+   */
+  private void storeUpdate(PlaylistMirror localMirror, PlaylistMirror updatedMirror) {
+    mirrors.put(updatedMirror.getPlaylistId(), updatedMirror);
+    if (featureControl.isCacheEnabled()) {
+      databaseService.updatePlaylistMirror(localMirror, updatedMirror);
+    }
+  }
+}
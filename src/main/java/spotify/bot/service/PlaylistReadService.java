@@ -0,0 +1,91 @@
+package spotify.bot.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Service;
+
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.model_objects.specification.Paging;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import spotify.api.events.SpotifyApiException;
+import spotify.bot.util.DiscoveryBotMetrics;
+import spotify.bot.util.SpotifyCallBudget;
+import spotify.bot.util.data.MirroredTrack;
+
+/**
+ * Read path for entire playlists, as required for the playlist mirror. Only
+ * the fields the bot actually needs are requested (added_at, track ID and URI,
+ * plus the item type the library requires for parsing), which shrinks every
+ * page to a fraction of its usual size. The pages themselves are read in
+ * parallel by the {@link PagedPlaylistReader}, on their own small thread pool
+ * (the callers often run on the shared Spotify executor themselves).
+ */
+@Service
+public class PlaylistReadService {
+  private final static int PLAYLIST_PAGE_LIMIT = 100;
+  private final static int MAX_CONCURRENT_PAGE_REQUESTS = 8;
+  private final static String PLAYLIST_ITEMS_FIELDS = "total,items(added_at,track(type,id,uri))";
+  private final static String PLAYLIST_ITEM_URIS_FIELDS = "items(track(type,uri))";
+  private final static String REQUEST_PLAYLIST_ITEMS = "playlist_items";
+  private final static String METRICS_EXECUTOR_NAME = "playlist_pages";
+
+  private final SpotifyApi spotifyApi;
+  private final SpotifyCallBudget callBudget;
+  private final PagedPlaylistReader.PageWavePool pageWavePool;
+  private final PagedPlaylistReader pagedPlaylistReader;
+
+  PlaylistReadService(SpotifyApi spotifyApi, DiscoveryBotMetrics metrics, SpotifyCallBudget callBudget) {
+    this.spotifyApi = spotifyApi;
+    this.callBudget = callBudget;
+    this.pageWavePool = new PagedPlaylistReader.PageWavePool(MAX_CONCURRENT_PAGE_REQUESTS);
+    this.pagedPlaylistReader = new PagedPlaylistReader(this::readPage,
+      pageWavePool,
+      PLAYLIST_PAGE_LIMIT, MAX_CONCURRENT_PAGE_REQUESTS);
+    metrics.registerQueue(METRICS_EXECUTOR_NAME, pageWavePool, PagedPlaylistReader.PageWavePool::getQueuedCount);
+  }
+
+  @PreDestroy
+  public void shutdownPageWavePool() {
+    pageWavePool.shutdown();
+  }
+
+  /**
+   * Read all items of the given playlist in playlist order
+   *
+   * @param playlistId the playlist ID
+   * @return the items
+   */
+  public List<MirroredTrack> readPlaylistItems(String playlistId) throws SpotifyApiException {
+    return pagedPlaylistReader.readPlaylistItems(playlistId);
+  }
+
+  /**
+   * Read the URIs of a single range of the given playlist (at most 100 items)
+   *
+   * @param playlistId the playlist ID
+   * @param offset the position of the first item
+   * @param limit the number of items
+   * @return the URIs (null for unavailable items), in playlist order
+   */
+  public List<String> readItemUris(String playlistId, int offset, int limit) throws SpotifyApiException {
+    Paging<PlaylistTrack> page = callBudget.execute(REQUEST_PLAYLIST_ITEMS, SpotifyCallBudget.playlist(playlistId), spotifyApi.getPlaylistsItems(playlistId)
+      .fields(PLAYLIST_ITEM_URIS_FIELDS)
+      .limit(limit)
+      .offset(offset));
+    return Arrays.stream(page.getItems())
+      .map(PlaylistTrack::getTrack)
+      .map(item -> item != null ? item.getUri() : null)
+      .collect(Collectors.toList());
+  }
+
+  private Paging<PlaylistTrack> readPage(String playlistId, int offset) throws SpotifyApiException {
+    return callBudget.execute(REQUEST_PLAYLIST_ITEMS, SpotifyCallBudget.playlist(playlistId), spotifyApi.getPlaylistsItems(playlistId)
+      .fields(PLAYLIST_ITEMS_FIELDS)
+      .limit(PLAYLIST_PAGE_LIMIT)
+      .offset(offset));
+  }
+}
@@ -1,121 +1,321 @@
 package spotify.bot.service;
 
+import java.sql.SQLException;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
 
-import se.michaelthelin.spotify.model_objects.IPlaylistItem;
-import se.michaelthelin.spotify.model_objects.specification.Playlist;
-import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
 import spotify.api.events.SpotifyApiException;
 import spotify.bot.properties.FeatureControl;
+import spotify.bot.config.database.DatabaseService;
+import spotify.bot.config.properties.PlaylistStoreConfig;
 import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
+import spotify.bot.util.AdaptivePacer;
+import spotify.bot.util.CrawlTracer;
 import spotify.bot.util.DiscoveryBotLogger;
-import spotify.services.PlaylistService;
+import spotify.bot.util.DiscoveryBotMetrics;
+import spotify.bot.util.ReleaseFreshnessTracker;
+import spotify.bot.util.SpotifyCallBudget;
+import spotify.bot.util.data.MirroredTrack;
+import spotify.bot.util.data.PlaylistJournalEntry;
+import spotify.bot.util.data.PlaylistMirror;
 import spotify.util.SpotifyOptimizedExecutorService;
-import spotify.util.SpotifyUtils;
 import spotify.util.data.AlbumTrackPair;
 
 @Service
 public class PlaylistSongsService {
-  private final static int PLAYLIST_ADDITION_COOLDOWN = 1000;
   private final static int PLAYLIST_ADD_LIMIT = 100;
   private final static int PLAYLIST_SIZE_LIMIT = 10000;
+  private final static long PRESSURE_BACKOFF_BASE_MS = 500;
+  private final static long PRESSURE_BACKOFF_MAX_MS = 30 * 1000;
+  private final static String REQUEST_ADD_PLAYLIST_ITEMS = "add_playlist_items";
 
-  private final PlaylistService playlistService;
+  private final SpotifyApi spotifyApi;
+  private final PlaylistMirrorService playlistMirrorService;
+  private final PlaylistReadService playlistReadService;
+  private final PlaylistMetaService playlistMetaService;
+  private final DatabaseService databaseService;
   private final SpotifyOptimizedExecutorService spotifyOptimizedExecutorService;
   private final DiscoveryBotLogger log;
   private final FeatureControl featureControl;
+  private final OrderedPlaylistInserter orderedPlaylistInserter;
+  private final DiscoveryBotMetrics metrics;
+  private final CrawlTracer tracer;
+  private final SpotifyCallBudget callBudget;
+  private final ReleaseFreshnessTracker releaseFreshnessTracker;
 
-  PlaylistSongsService(PlaylistService playlistService,
+  PlaylistSongsService(SpotifyApi spotifyApi,
+    PlaylistMirrorService playlistMirrorService,
+    PlaylistReadService playlistReadService,
+    PlaylistMetaService playlistMetaService,
+    DatabaseService databaseService,
     SpotifyOptimizedExecutorService spotifyOptimizedExecutorService,
     DiscoveryBotLogger discoveryBotLogger,
-    FeatureControl featureControl) {
-    this.playlistService = playlistService;
+    FeatureControl featureControl,
+    DiscoveryBotMetrics metrics,
+    CrawlTracer tracer,
+    SpotifyCallBudget callBudget,
+    ReleaseFreshnessTracker releaseFreshnessTracker) {
+    this.spotifyApi = spotifyApi;
+    this.playlistMirrorService = playlistMirrorService;
+    this.playlistReadService = playlistReadService;
+    this.playlistMetaService = playlistMetaService;
+    this.databaseService = databaseService;
     this.spotifyOptimizedExecutorService = spotifyOptimizedExecutorService;
     this.log = discoveryBotLogger;
     this.featureControl = featureControl;
+    this.metrics = metrics;
+    this.tracer = tracer;
+    this.callBudget = callBudget;
+    this.releaseFreshnessTracker = releaseFreshnessTracker;
+    this.orderedPlaylistInserter = new OrderedPlaylistInserter(this::addItemsToPlaylist, this::findInsertedBatch,
+      new AdaptivePacer(PRESSURE_BACKOFF_BASE_MS, PRESSURE_BACKOFF_MAX_MS), PLAYLIST_ADD_LIMIT);
   }
 
   /**
-   * Adds all releases to the given playlists
+   * Adds all releases to the given playlists. Album groups sharing the same
+   * physical playlist get a single writer, which adds their releases merged in
+   * the default playlist group order. Once a playlist has been written, the
+   * time-to-discovery of its releases is recorded.<br/>
+   * <br/>
+   * Tracks already in their playlist, and repeated occurrences of the same track
+   * within one playlist write, are skipped rather than added again.
+   *
+   * @return the number of skipped tracks per playlist store (stores without any
+   *         skipped tracks are missing)
    */
-  public void addAllReleasesToSetPlaylists(Map<PlaylistStore, List<AlbumTrackPair>> songsByPlaylist) throws SpotifyApiException {
+  public Map<PlaylistStore, Integer> addAllReleasesToSetPlaylists(Map<PlaylistStore, List<AlbumTrackPair>> songsByPlaylist) throws SpotifyApiException {
     log.info("Adding to playlists:");
-    List<PlaylistStore> sortedPlaylistStores = songsByPlaylist.keySet().stream().sorted().collect(Collectors.toList());
+    Map<PlaylistStore, Integer> skippedTracksByPlaylistStore = new ConcurrentHashMap<>();
     List<Callable<Void>> callables = new ArrayList<>();
-    for (PlaylistStore ps : sortedPlaylistStores) {
-      List<AlbumTrackPair> albumTrackPairs = songsByPlaylist.get(ps);
-      Collections.sort(albumTrackPairs);
+    for (Map.Entry<String, List<PlaylistStore>> entry : PlaylistStoreConfig.groupByPlaylistId(songsByPlaylist.keySet()).entrySet()) {
+      String playlistId = entry.getKey();
+      List<AlbumTrackPair> mergedAlbumTrackPairs = new ArrayList<>();
+      for (PlaylistStore ps : entry.getValue()) {
+        List<AlbumTrackPair> albumTrackPairs = songsByPlaylist.get(ps);
+        Collections.sort(albumTrackPairs);
+        mergedAlbumTrackPairs.addAll(albumTrackPairs);
+        log.printAlbumTrackPairs(albumTrackPairs, ps.getAlbumGroupExtended());
+      }
       callables.add(() -> {
-        addSongsForPlaylistStore(ps, albumTrackPairs);
+        List<PlaylistJournalEntry> skippedEntries = addSongsToPlaylist(playlistId, mergedAlbumTrackPairs);
+        countSkippedTracks(entry.getValue(), songsByPlaylist, skippedEntries, skippedTracksByPlaylistStore);
+        if (featureControl.isPlaylistAdditionEnabled()) {
+          Instant addedAt = Instant.now();
+          for (PlaylistStore ps : entry.getValue()) {
+            releaseFreshnessTracker.recordAddedReleases(ps.getAlbumGroupExtended(), songsByPlaylist.get(ps), addedAt);
+          }
+        }
         return null; // must return something for Void class
       });
-      log.printAlbumTrackPairs(albumTrackPairs, ps.getAlbumGroupExtended());
     }
-    spotifyOptimizedExecutorService.executeAndWaitVoid(callables);
+    spotifyOptimizedExecutorService.executeAndWaitVoid(metrics.trackPending(callables));
+    return skippedTracksByPlaylistStore;
   }
 
   /**
-   * Add the given list of tracks to the playlist (a delay of a second per
-   * release is used to retain order if a lot of songs get added at once).
-   * May remove older songs to make room.
+   * Attribute the skipped journal entries of a merged playlist write back to the
+   * playlist stores they came from, by their sequence within the merged tracks
    */
-  private void addSongsForPlaylistStore(PlaylistStore ps, List<AlbumTrackPair> albumTrackPairs) throws SpotifyApiException {
-    if (!albumTrackPairs.isEmpty() && featureControl.isPlaylistAdditionEnabled()) {
-      Playlist playlist = playlistService.getPlaylist(ps.getPlaylistId());
-      circularPlaylistFitting(playlist, albumTrackPairs);
+  private void countSkippedTracks(List<PlaylistStore> playlistStores, Map<PlaylistStore, List<AlbumTrackPair>> songsByPlaylist,
+      List<PlaylistJournalEntry> skippedEntries, Map<PlaylistStore, Integer> skippedTracksByPlaylistStore) {
+    for (PlaylistJournalEntry skippedEntry : skippedEntries) {
+      int sequenceEnd = 0;
+      for (PlaylistStore ps : playlistStores) {
+        sequenceEnd += songsByPlaylist.get(ps).stream().mapToInt(atp -> atp.getTracks().size()).sum();
+        if (skippedEntry.getSequence() < sequenceEnd) {
+          skippedTracksByPlaylistStore.merge(ps, 1, Integer::sum);
+          break;
+        }
+      }
+    }
+  }
 
+  /**
+   * Replay all playlist additions of the write-ahead journal that weren't
+   * completed (e.g. because a previous crawl failed halfway through). Tracks
+   * that already made it into their playlist are skipped.
+   */
+  public void replayPendingPlaylistAdditions() {
+    if (featureControl.isPlaylistAdditionEnabled() && featureControl.isCacheEnabled()) {
+      List<PlaylistJournalEntry> pendingAdditions;
+      try {
+        pendingAdditions = databaseService.getPendingPlaylistAdditions();
+      } catch (SQLException e) {
+        log.stackTrace(e);
+        return;
+      }
+      if (!pendingAdditions.isEmpty()) {
+        log.info(String.format("Replaying %d pending playlist addition[s] from the journal...", pendingAdditions.size()));
+        Map<String, List<PlaylistJournalEntry>> pendingAdditionsByPlaylist = pendingAdditions.stream()
+          .collect(Collectors.groupingBy(PlaylistJournalEntry::getPlaylistId, LinkedHashMap::new, Collectors.toList()));
+        for (Map.Entry<String, List<PlaylistJournalEntry>> entry : pendingAdditionsByPlaylist.entrySet()) {
+          try {
+            addJournaledTracks(entry.getKey(), entry.getValue(), true);
+          } catch (SpotifyApiException e) {
+            log.warning(String.format("Failed to replay the pending additions for playlist %s, retrying next crawl", entry.getKey()));
+            log.stackTrace(e);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Add the given list of tracks to the playlist. The additions are written to
+   * the journal beforehand and only marked as done once they were confirmed by
+   * Spotify.
+   *
+   * @return the journal entries that were skipped (see {@link PlaylistSongsService#addJournaledTracks})
+   */
+  private List<PlaylistJournalEntry> addSongsToPlaylist(String playlistId, List<AlbumTrackPair> albumTrackPairs) throws SpotifyApiException {
+    if (!albumTrackPairs.isEmpty() && featureControl.isPlaylistAdditionEnabled()) {
       List<TrackSimplified> allTracksForPlaylist = albumTrackPairs.stream()
         .map(AlbumTrackPair::getTracks)
         .flatMap(Collection::stream)
         .collect(Collectors.toList());
 
-      Iterator<List<TrackSimplified>> partitionsIterator = SpotifyUtils.partitionList(allTracksForPlaylist, PLAYLIST_ADD_LIMIT).iterator();
-      while (partitionsIterator.hasNext()) {
-        List<TrackSimplified> partition = partitionsIterator.next();
-        List<String> ids = partition.stream().map(TrackSimplified::getId).collect(Collectors.toList());
-        playlistService.addSongsToPlaylistByIdTop(playlist, ids);
+      long journaledAt = System.currentTimeMillis();
+      List<PlaylistJournalEntry> entries = new ArrayList<>();
+      for (int i = 0; i < allTracksForPlaylist.size(); i++) {
+        TrackSimplified track = allTracksForPlaylist.get(i);
+        entries.add(new PlaylistJournalEntry(playlistId, track.getId(), track.getUri(), journaledAt, i));
+      }
+      boolean journaled = featureControl.isCacheEnabled() && databaseService.journalPlaylistAdditions(entries);
+      return addJournaledTracks(playlistId, entries, journaled);
+    }
+    return List.of();
+  }
 
-        if (partitionsIterator.hasNext()) {
-          SpotifyUtils.sneakySleep(PLAYLIST_ADDITION_COOLDOWN);
+  /**
+   * Add the tracks of the given journal entries to the playlist, skipping any
+   * track already in it and any repeated occurrence of the same track. The
+   * batches are chained via their snapshots and explicit positions to retain
+   * order if a lot of songs get added at once. May remove older songs to make
+   * room.
+   *
+   * @return the skipped journal entries
+   */
+  private List<PlaylistJournalEntry> addJournaledTracks(String playlistId, List<PlaylistJournalEntry> entries, boolean journaled) throws SpotifyApiException {
+    PlaylistMirror playlistMirror = playlistMirrorService.getPlaylistMirror(playlistId);
+    Set<String> urisInPlaylist = playlistMirror.getTracks().stream()
+      .map(MirroredTrack::getUri)
+      .filter(Objects::nonNull)
+      .collect(Collectors.toSet());
+
+    Map<String, PlaylistJournalEntry> missingEntriesByUri = new LinkedHashMap<>();
+    List<String> alreadyAddedUris = new ArrayList<>();
+    List<PlaylistJournalEntry> skippedEntries = new ArrayList<>();
+    for (PlaylistJournalEntry entry : entries) {
+      if (urisInPlaylist.contains(entry.getTrackUri())) {
+        alreadyAddedUris.add(entry.getTrackUri());
+        skippedEntries.add(entry);
+      } else if (missingEntriesByUri.putIfAbsent(entry.getTrackUri(), entry) != null) {
+        skippedEntries.add(entry);
+      }
+    }
+    if (journaled && !alreadyAddedUris.isEmpty()) {
+      databaseService.completePlaylistAdditions(playlistId, alreadyAddedUris);
+    }
+
+    List<PlaylistJournalEntry> missingEntries = new ArrayList<>(missingEntriesByUri.values());
+    if (!missingEntries.isEmpty()) {
+      playlistMirror = circularPlaylistFitting(playlistMirror, missingEntries.size());
+
+      List<String> urisToAdd = new ArrayList<>(missingEntriesByUri.keySet());
+      String newSnapshotId;
+      try (CrawlTracer.Scope span = tracer.startSpan("playlist_write")) {
+        span.setAttribute("playlist", playlistId).setAttribute("tracks", urisToAdd.size());
+        try {
+          newSnapshotId = orderedPlaylistInserter.insertAtTop(playlistId, urisToAdd);
+        } catch (RuntimeException e) {
+          span.setAttribute("error", e.getClass().getSimpleName());
+          playlistMirrorService.invalidate(playlistId);
+          throw e;
         }
       }
+
+      Date addedAt = new Date();
+      List<MirroredTrack> insertedTracks = orderedPlaylistInserter.resultingOrder(missingEntries).stream()
+        .map(entry -> new MirroredTrack(entry.getTrackId(), entry.getTrackUri(), addedAt))
+        .collect(Collectors.toList());
+      playlistMirrorService.applyInsertionAtTop(playlistId, playlistMirror.getSnapshotId(), insertedTracks, newSnapshotId);
+      playlistMetaService.registerRecentAdditions(playlistId, insertedTracks);
+      if (journaled) {
+        databaseService.completePlaylistAdditions(playlistId, urisToAdd);
+      }
+    }
+    return skippedEntries;
+  }
+
+  /**
+   * Add a single batch to the playlist. Every attempt (including retries by the
+   * inserter) is recorded as its own batch in the metrics and the trace, and
+   * failed attempts are counted on the enclosing playlist write.
+   */
+  private String addItemsToPlaylist(String playlistId, List<String> uris, int position) throws SpotifyApiException {
+    long batchStart = System.nanoTime();
+    try (CrawlTracer.Scope span = tracer.startSpan("playlist_batch")) {
+      span.setAttribute("position", position).setAttribute("tracks", uris.size());
+      try {
+        String snapshotId = callBudget.execute(REQUEST_ADD_PLAYLIST_ITEMS, SpotifyCallBudget.playlist(playlistId), spotifyApi.addItemsToPlaylist(playlistId, uris.toArray(String[]::new)).position(position)).getSnapshotId();
+        metrics.recordPlaylistBatch(uris.size(), System.nanoTime() - batchStart, true);
+        return snapshotId;
+      } catch (RuntimeException e) {
+        metrics.recordPlaylistBatch(uris.size(), System.nanoTime() - batchStart, false);
+        span.setAttribute("error", e.getClass().getSimpleName());
+        span.incrementParentAttribute("failedAttempts");
+        throw e;
+      }
     }
   }
 
+  /**
+   * Check if a batch whose insertion failed with an unknown outcome did land
+   * anyway. Since only tracks missing from the playlist are ever added, finding
+   * exactly these tracks at the batch's position means the batch was inserted.
+   */
+  private String findInsertedBatch(String playlistId, List<String> uris, int position) throws SpotifyApiException {
+    if (uris.equals(playlistReadService.readItemUris(playlistId, position, uris.size()))) {
+      log.warning(String.format("A failed batch of %d track[s] was inserted into playlist %s anyway and won't be retried", uris.size(), playlistId));
+      return playlistMirrorService.getCurrentSnapshotId(playlistId);
+    }
+    return null;
+  }
+
   /**
    * Check if circular playlist fitting is required
    */
-  private void circularPlaylistFitting(Playlist playlist, List<AlbumTrackPair> albumTrackPairs) throws SpotifyApiException {
-    int songsToAddCount = albumTrackPairs.stream().mapToInt(AlbumTrackPair::trackCount).sum();
-    int currentTracksInPlaylistCount = playlist.getTracks().getTotal();
+  private PlaylistMirror circularPlaylistFitting(PlaylistMirror playlistMirror, int songsToAddCount) throws SpotifyApiException {
+    int currentTracksInPlaylistCount = playlistMirror.size();
     if (currentTracksInPlaylistCount + songsToAddCount > PLAYLIST_SIZE_LIMIT) {
-      deleteSongsFromBottomOnLimit(playlist, currentTracksInPlaylistCount, songsToAddCount);
+      return deleteSongsFromBottomOnLimit(playlistMirror, currentTracksInPlaylistCount, songsToAddCount);
     }
+    return playlistMirror;
   }
 
   /**
    * Delete as many songs from the bottom as necessary to make room for any new
-   * songs to add, as Spotify playlists have a fixed limit of 10000 songs.
+   * songs to add, as Spotify playlists have a fixed limit of 10000 songs. The
+   * songs are removed by their positions, so this is O(removed), not O(playlist).
    */
-  private void deleteSongsFromBottomOnLimit(Playlist playlist, int currentTracksInPlaylistCount, int songsToAddCount) throws SpotifyApiException {
-    String playlistId = playlist.getId();
-
+  private PlaylistMirror deleteSongsFromBottomOnLimit(PlaylistMirror playlistMirror, int currentTracksInPlaylistCount, int songsToAddCount) throws SpotifyApiException {
     int totalSongsToDeleteCount = currentTracksInPlaylistCount + songsToAddCount - PLAYLIST_SIZE_LIMIT;
-    int offset = currentTracksInPlaylistCount - totalSongsToDeleteCount;
-
-    List<IPlaylistItem> tracksToDelete = playlistService.getPlaylistTracks(playlistId, offset).stream()
-      .map(PlaylistTrack::getTrack)
-      .collect(Collectors.toList());
-    playlistService.removeItemsFromPlaylist(playlistId, tracksToDelete);
+    int newSize = Math.max(0, currentTracksInPlaylistCount - totalSongsToDeleteCount);
+    return playlistMirrorService.trimToSize(playlistMirror, newSize);
   }
 }
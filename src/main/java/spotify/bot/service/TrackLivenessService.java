@@ -0,0 +1,115 @@
+package spotify.bot.service;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.springframework.stereotype.Service;
+
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.model_objects.specification.AudioFeatures;
+import spotify.api.events.SpotifyApiException;
+import spotify.bot.config.database.DatabaseService;
+import spotify.bot.properties.FeatureControl;
+import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.DiscoveryBotMetrics;
+import spotify.bot.util.SpotifyCallBudget;
+import spotify.util.SpotifyOptimizedExecutorService;
+import spotify.util.SpotifyUtils;
+
+/**
+ * Performance service to resolve the liveness of tracks in as few requests as
+ * possible. Since the liveness of a published track never changes, every
+ * resolved value is permanently cached in the database.
+ */
+@Service
+public class TrackLivenessService {
+  private final static int MAX_AUDIO_FEATURES_FETCH_LIMIT = 100;
+  private final static String TRACK_LIVENESS_CACHE = "track_liveness";
+  private final static String REQUEST_AUDIO_FEATURES = "audio_features";
+
+  private final SpotifyApi spotifyApi;
+  private final DatabaseService databaseService;
+  private final SpotifyOptimizedExecutorService spotifyOptimizedExecutorService;
+  private final FeatureControl featureControl;
+  private final DiscoveryBotLogger log;
+  private final DiscoveryBotMetrics metrics;
+  private final SpotifyCallBudget callBudget;
+
+  TrackLivenessService(SpotifyApi spotifyApi, DatabaseService databaseService, SpotifyOptimizedExecutorService spotifyOptimizedExecutorService, FeatureControl featureControl, DiscoveryBotLogger discoveryBotLogger, DiscoveryBotMetrics metrics, SpotifyCallBudget callBudget) {
+    this.spotifyApi = spotifyApi;
+    this.databaseService = databaseService;
+    this.spotifyOptimizedExecutorService = spotifyOptimizedExecutorService;
+    this.featureControl = featureControl;
+    this.log = discoveryBotLogger;
+    this.metrics = metrics;
+    this.callBudget = callBudget;
+  }
+
+  /**
+   * Resolve the liveness of all given tracks. Cached values are taken from the
+   * database, the rest is fetched from the Spotify API in batches of 100 and
+   * then cached. Tracks whose liveness couldn't be resolved (e.g. because the
+   * request failed) are not part of the resulting map.
+   *
+   * @param trackIds the track IDs
+   * @return the liveness (0.0 - 1.0) by track ID
+   */
+  public Map<String, Float> resolveLiveness(Collection<String> trackIds) {
+    Set<String> uniqueTrackIds = new LinkedHashSet<>(trackIds);
+    uniqueTrackIds.remove(null);
+    if (uniqueTrackIds.isEmpty()) {
+      return Map.of();
+    }
+
+    Map<String, Float> livenessByTrackId = new HashMap<>();
+    try {
+      livenessByTrackId.putAll(databaseService.getTrackLivenessCache(uniqueTrackIds));
+    } catch (SQLException e) {
+      log.stackTrace(e);
+    }
+
+    List<String> uncachedTrackIds = new ArrayList<>(uniqueTrackIds);
+    uncachedTrackIds.removeAll(livenessByTrackId.keySet());
+    metrics.recordCacheLookups(TRACK_LIVENESS_CACHE, livenessByTrackId.size(), uncachedTrackIds.size());
+    if (!uncachedTrackIds.isEmpty()) {
+      Map<String, Float> fetchedLiveness = fetchLiveness(uncachedTrackIds);
+      if (!fetchedLiveness.isEmpty() && featureControl.isCacheEnabled()) {
+        databaseService.cacheTrackLiveness(fetchedLiveness);
+      }
+      livenessByTrackId.putAll(fetchedLiveness);
+    }
+    return livenessByTrackId;
+  }
+
+  private Map<String, Float> fetchLiveness(List<String> trackIds) {
+    List<Callable<AudioFeatures[]>> callables = new ArrayList<>();
+    for (List<String> chunk : SpotifyUtils.partitionList(trackIds, MAX_AUDIO_FEATURES_FETCH_LIMIT)) {
+      callables.add(() -> {
+        try {
+          return callBudget.execute(REQUEST_AUDIO_FEATURES, null, spotifyApi.getAudioFeaturesForSeveralTracks(chunk.toArray(String[]::new)));
+        } catch (SpotifyApiException e) {
+          return null;
+        }
+      });
+    }
+
+    Map<String, Float> livenessByTrackId = new HashMap<>();
+    for (AudioFeatures[] audioFeatures : spotifyOptimizedExecutorService.executeAndWait(metrics.trackPending(callables))) {
+      if (audioFeatures != null) {
+        for (AudioFeatures af : audioFeatures) {
+          if (af != null && af.getId() != null && af.getLiveness() != null) {
+            livenessByTrackId.put(af.getId(), af.getLiveness());
+          }
+        }
+      }
+    }
+    return livenessByTrackId;
+  }
+}
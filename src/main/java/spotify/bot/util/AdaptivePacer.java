@@ -0,0 +1,90 @@
+package spotify.bot.util;
+
+import se.michaelthelin.spotify.exceptions.detailed.BadGatewayException;
+import se.michaelthelin.spotify.exceptions.detailed.InternalServerErrorException;
+import se.michaelthelin.spotify.exceptions.detailed.ServiceUnavailableException;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+import spotify.api.events.SpotifyApiException;
+import spotify.util.SpotifyUtils;
+
+/**
+ * Paces consecutive requests against the Spotify API. As long as Spotify
+ * doesn't signal any pressure, requests are sent back-to-back without any
+ * delay. Once it does (rate limiting or a temporarily overloaded server), the
+ * delay doubles (or follows the given Retry-After) and then halves again with
+ * every successful request.
+ */
+public class AdaptivePacer {
+  private final long baseBackoffMs;
+  private final long maxBackoffMs;
+
+  private long currentDelayMs;
+  private int backoffCount;
+
+  public AdaptivePacer(long baseBackoffMs, long maxBackoffMs) {
+    this.baseBackoffMs = baseBackoffMs;
+    this.maxBackoffMs = maxBackoffMs;
+    this.currentDelayMs = 0;
+    this.backoffCount = 0;
+  }
+
+  /**
+   * Wait for the currently required delay (none, unless Spotify signaled pressure
+   * recently)
+   */
+  public void await() {
+    long delayMs = getCurrentDelayMs();
+    if (delayMs > 0) {
+      SpotifyUtils.sneakySleep(delayMs);
+    }
+  }
+
+  /**
+   * Register a successful request
+   */
+  public synchronized void onSuccess() {
+    currentDelayMs = currentDelayMs / 2 >= baseBackoffMs ? currentDelayMs / 2 : 0;
+  }
+
+  /**
+   * Register a failed request and increase the delay if the failure was a sign of
+   * pressure
+   *
+   * @param e the exception of the failed request
+   * @return true if the request should be retried after the next {@link AdaptivePacer#await}
+   */
+  public synchronized boolean onFailure(SpotifyApiException e) {
+    Exception nestedException = e.getNestedException();
+    if (nestedException instanceof TooManyRequestsException) {
+      long retryAfterMs = ((TooManyRequestsException) nestedException).getRetryAfter() * 1000L;
+      backOff(retryAfterMs);
+      return true;
+    } else if (nestedException instanceof ServiceUnavailableException
+      || nestedException instanceof BadGatewayException
+      || nestedException instanceof InternalServerErrorException) {
+      backOff(0);
+      return true;
+    }
+    return false;
+  }
+
+  private void backOff(long minimumDelayMs) {
+    long doubledDelayMs = Math.max(baseBackoffMs, currentDelayMs * 2);
+    currentDelayMs = Math.min(maxBackoffMs, Math.max(minimumDelayMs, doubledDelayMs));
+    backoffCount++;
+  }
+
+  /**
+   * Return the delay that will be waited before the next request
+   */
+  public synchronized long getCurrentDelayMs() {
+    return currentDelayMs;
+  }
+
+  /**
+   * Return how often Spotify signaled pressure so far
+   */
+  public synchronized int getBackoffCount() {
+    return backoffCount;
+  }
+}
@@ -0,0 +1,79 @@
+package spotify.bot.util;
+
+/**
+ * Interval for polling something that is usually idle. While the polled state
+ * is active, polls happen at the minimum interval. Every idle poll doubles the
+ * interval (up to the maximum), and the first active poll resets it again.<br/>
+ * <br/>
+ * Also keeps track of how many polls were saved compared to always polling at
+ * the minimum interval.
+ */
+public class AdaptivePollInterval {
+  private final long minIntervalMs;
+  private final long maxIntervalMs;
+
+  private long currentIntervalMs;
+  private long pollCount;
+  private long savedPollCount;
+
+  public AdaptivePollInterval(long minIntervalMs, long maxIntervalMs) {
+    this.minIntervalMs = minIntervalMs;
+    this.maxIntervalMs = maxIntervalMs;
+    this.currentIntervalMs = minIntervalMs;
+  }
+
+  /**
+   * Register a poll that found the polled state to be active
+   */
+  public synchronized void onActive() {
+    currentIntervalMs = minIntervalMs;
+  }
+
+  /**
+   * Register a poll that found the polled state to be idle
+   */
+  public synchronized void onIdle() {
+    currentIntervalMs = Math.min(maxIntervalMs, currentIntervalMs * 2);
+  }
+
+  /**
+   * Count a poll that happened after waiting for the given interval. A fixed
+   * poller would have polled (interval / minimum interval) times in the same
+   * span, so the difference counts as saved.
+   *
+   * @param waitedIntervalMs the interval waited before this poll
+   */
+  public synchronized void countPoll(long waitedIntervalMs) {
+    pollCount++;
+    savedPollCount += Math.max(0, waitedIntervalMs / minIntervalMs - 1);
+  }
+
+  /**
+   * Return the interval to wait until the next poll
+   */
+  public synchronized long getCurrentIntervalMs() {
+    return currentIntervalMs;
+  }
+
+  /**
+   * Return the number of polls since the last reset
+   */
+  public synchronized long getPollCount() {
+    return pollCount;
+  }
+
+  /**
+   * Return the number of polls saved since the last reset
+   */
+  public synchronized long getSavedPollCount() {
+    return savedPollCount;
+  }
+
+  /**
+   * Reset the poll counters (but not the current interval)
+   */
+  public synchronized void resetCounts() {
+    pollCount = 0;
+    savedPollCount = 0;
+  }
+}
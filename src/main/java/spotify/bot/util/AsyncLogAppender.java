@@ -0,0 +1,148 @@
+package spotify.bot.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous appender for the external log. Any number of threads may append
+ * lines, which only puts them into a lock-free queue and returns immediately. A
+ * single writer thread drains the queue and writes everything that piled up in
+ * one go, so log file I/O never happens on (or blocks) the logging threads.<br/>
+ * <br/>
+ * Lines are written in the order they were appended. {@link AsyncLogAppender#flush}
+ * waits until everything appended before it has been written.
+ */
+public class AsyncLogAppender {
+  /**
+   * The destination of the written lines
+   */
+  public interface Sink {
+    void append(List<String> lines) throws IOException;
+  }
+
+  private final static int MAX_BATCH_SIZE = 1024;
+  private final static long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private final static long FLUSH_TIMEOUT_MS = 10 * 1000;
+
+  private final Sink sink;
+  private final Consumer<Exception> errorHandler;
+  private final Queue<String> queue;
+  private final Thread writer;
+  private final Object flushMonitor;
+
+  private final AtomicLong appendedCount;
+  private volatile long writtenCount;
+  private volatile boolean writerIdle;
+  private volatile boolean running;
+
+  /**
+   * @param sink the destination of the written lines
+   * @param errorHandler receives any failure to write to the sink (which can't be
+   *                     written to the sink itself)
+   */
+  public AsyncLogAppender(Sink sink, Consumer<Exception> errorHandler) {
+    this.sink = sink;
+    this.errorHandler = errorHandler;
+    this.queue = new ConcurrentLinkedQueue<>();
+    this.flushMonitor = new Object();
+    this.appendedCount = new AtomicLong();
+    this.running = true;
+    this.writer = new Thread(this::writeLoop, "log-appender");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * Queue the given line to be written to the log. Never blocks.
+   *
+   * @param line the line (without line break)
+   */
+  public void append(String line) {
+    queue.offer(line);
+    appendedCount.incrementAndGet();
+    if (writerIdle) {
+      LockSupport.unpark(writer);
+    }
+  }
+
+  /**
+   * Wait until every line appended before this call has been written to the log
+   * (or the writer gave up on it)
+   */
+  public void flush() {
+    long target = appendedCount.get();
+    LockSupport.unpark(writer);
+    long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MS;
+    synchronized (flushMonitor) {
+      while (writtenCount < target && writer.isAlive()) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          return;
+        }
+        try {
+          flushMonitor.wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Write everything still queued and stop the writer
+   */
+  public void close() {
+    running = false;
+    LockSupport.unpark(writer);
+    try {
+      writer.join(FLUSH_TIMEOUT_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  ////////////////////////////////
+
+  private void writeLoop() {
+    List<String> batch = new ArrayList<>();
+    while (running || !queue.isEmpty()) {
+      String line;
+      while (batch.size() < MAX_BATCH_SIZE && (line = queue.poll()) != null) {
+        batch.add(line);
+      }
+      if (!batch.isEmpty()) {
+        write(batch);
+        batch.clear();
+      } else {
+        writerIdle = true;
+        if (running && queue.isEmpty()) {
+          LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        writerIdle = false;
+      }
+    }
+    synchronized (flushMonitor) {
+      flushMonitor.notifyAll();
+    }
+  }
+
+  private void write(List<String> batch) {
+    try {
+      sink.append(batch);
+    } catch (IOException | RuntimeException e) {
+      errorHandler.accept(e);
+    }
+    synchronized (flushMonitor) {
+      writtenCount += batch.size();
+      flushMonitor.notifyAll();
+    }
+  }
+}
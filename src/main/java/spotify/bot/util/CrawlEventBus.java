@@ -0,0 +1,106 @@
+package spotify.bot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.stereotype.Component;
+
+import spotify.bot.util.data.CrawlEvent;
+
+/**
+ * Bounded in-memory ring buffer of the most recent crawl events. Publishing an
+ * event only ever overwrites the oldest slot and never waits for any reader, so
+ * the crawler can't be held up by slow (or stuck) clients. Readers instead
+ * fetch everything since the last ID they've seen, and anything that has been
+ * overwritten in the meantime is simply missing for them.
+ */
+@Component
+public class CrawlEventBus {
+  private final static int CAPACITY = 512;
+
+  private final CrawlEvent[] ring = new CrawlEvent[CAPACITY];
+  private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+  private long nextId;
+  private Long currentCrawlStartId;
+
+  /**
+   * Publish a new event
+   *
+   * @param type the type of the event
+   * @param data the payload of the event
+   */
+  public void publish(CrawlEvent.Type type, Map<String, Object> data) {
+    synchronized (this) {
+      long id = nextId++;
+      ring[(int) (id % CAPACITY)] = new CrawlEvent(id, type, System.currentTimeMillis(), data);
+      if (type == CrawlEvent.Type.CRAWL_START) {
+        currentCrawlStartId = id;
+      } else if (type == CrawlEvent.Type.CRAWL_END) {
+        currentCrawlStartId = null;
+      }
+    }
+    for (Runnable listener : listeners) {
+      listener.run();
+    }
+  }
+
+  /**
+   * Publish the start of a crawl phase
+   */
+  public void phaseStarted(String phase) {
+    publish(CrawlEvent.Type.PHASE_START, Map.of("phase", phase));
+  }
+
+  /**
+   * Publish the end of a crawl phase
+   */
+  public void phaseFinished(String phase) {
+    publish(CrawlEvent.Type.PHASE_END, Map.of("phase", phase));
+  }
+
+  /**
+   * Register a listener to be called after every published event. Listeners are
+   * called on the publishing thread, so they must return immediately.
+   */
+  public void addListener(Runnable listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Return the ID the next published event will receive
+   */
+  public synchronized long getNextId() {
+    return nextId;
+  }
+
+  /**
+   * Return the ID of the start event of the crawl currently in progress, or null
+   * if no crawl is running (or its start has already been overwritten)
+   */
+  public synchronized Long getCurrentCrawlStartId() {
+    return currentCrawlStartId != null && currentCrawlStartId >= getOldestId() ? currentCrawlStartId : null;
+  }
+
+  /**
+   * Return all events still in the buffer, starting from the given ID. If the
+   * given ID has already been overwritten, the result starts at the oldest
+   * remaining event (which can be detected by comparing the IDs).
+   *
+   * @param fromId the ID of the first event to return (inclusive)
+   * @return the events, oldest first
+   */
+  public synchronized List<CrawlEvent> getEventsSince(long fromId) {
+    List<CrawlEvent> events = new ArrayList<>();
+    for (long id = Math.max(fromId, getOldestId()); id < nextId; id++) {
+      events.add(ring[(int) (id % CAPACITY)]);
+    }
+    return events;
+  }
+
+  private long getOldestId() {
+    return Math.max(0, nextId - CAPACITY);
+  }
+}
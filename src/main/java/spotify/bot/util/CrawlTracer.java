@@ -0,0 +1,257 @@
+package spotify.bot.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.gson.Gson;
+
+import spotify.api.SpotifyDependenciesSettings;
+import spotify.bot.util.data.CrawlTrace;
+
+/**
+ * Records a lightweight trace for every crawl: a root span for the crawl, one
+ * span per phase and child spans for the individual operations within them
+ * (e.g. the paged release fetch of a single artist). The most recent traces are
+ * kept in memory and additionally persisted as JSON in the Trace Event Format,
+ * so they can be loaded into a trace viewer (chrome://tracing, Perfetto)
+ * offline.<br/>
+ * <br/>
+ * Spans started on a thread become the parent of any span subsequently started
+ * on the same thread until they're closed. On any other thread (e.g. the
+ * executor threads), new spans are attached to the current phase instead.
+ */
+@Component
+public class CrawlTracer {
+  private final static String ROOT_SPAN_NAME = "crawl";
+  private final static String TRACES_DIRECTORY = "traces";
+  private final static String TRACE_FILE_PREFIX = "crawl-trace-";
+  private final static String TRACE_FILE_SUFFIX = ".json";
+  private final static int MAX_SPANS_PER_TRACE = 100_000;
+
+  private final DiscoveryBotLogger log;
+  private final File traceDirectory;
+  private final int maxTraces;
+
+  private final Deque<CrawlTrace> traces;
+  private final ThreadLocal<CrawlTrace.Span> currentSpan;
+
+  private volatile CrawlTrace activeTrace;
+  private volatile CrawlTrace.Span activePhase;
+
+  CrawlTracer(SpotifyDependenciesSettings spotifyDependenciesSettings, DiscoveryBotLogger discoveryBotLogger,
+      @Value("${spotify.discovery.trace.max_traces:10}") int maxTraces) {
+    this.log = discoveryBotLogger;
+    this.traceDirectory = new File(spotifyDependenciesSettings.configFilesBase(), TRACES_DIRECTORY);
+    this.maxTraces = maxTraces;
+    this.traces = new ArrayDeque<>();
+    this.currentSpan = new ThreadLocal<>();
+  }
+
+  /**
+   * A started span. Closing it ends the span and restores the previous span of
+   * the thread. If no trace is active, this does nothing.
+   */
+  public class Scope implements AutoCloseable {
+    private final CrawlTrace.Span span;
+    private final CrawlTrace.Span previous;
+
+    private Scope(CrawlTrace.Span span, CrawlTrace.Span previous) {
+      this.span = span;
+      this.previous = previous;
+    }
+
+    /**
+     * Set an attribute of this span
+     */
+    public Scope setAttribute(String key, Object value) {
+      if (span != null) {
+        span.setAttribute(key, value);
+      }
+      return this;
+    }
+
+    /**
+     * Increase the given numeric attribute of the parent span by one (e.g. to
+     * count retries of the parent operation)
+     */
+    public void incrementParentAttribute(String key) {
+      if (span != null && span.getParent() != null) {
+        span.getParent().incrementAttribute(key);
+      }
+    }
+
+    @Override
+    public void close() {
+      if (span != null) {
+        span.end();
+        if (span == activePhase) {
+          activePhase = null;
+        }
+        if (previous != null) {
+          currentSpan.set(previous);
+        } else {
+          currentSpan.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Start the trace of a new crawl (does nothing if tracing is disabled)
+   */
+  public void startTrace() {
+    if (maxTraces > 0) {
+      CrawlTrace trace = new CrawlTrace(System.currentTimeMillis(), MAX_SPANS_PER_TRACE);
+      trace.startSpan(null, ROOT_SPAN_NAME);
+      this.currentSpan.remove();
+      this.activePhase = null;
+      this.activeTrace = trace;
+    }
+  }
+
+  /**
+   * Finish the trace of the current crawl, keep it in memory and persist it.
+   * Must be called on the same thread as {@link CrawlTracer#startTrace}.
+   *
+   * @param successful whether the crawl was successful
+   */
+  public void finishTrace(boolean successful) {
+    CrawlTrace trace = activeTrace;
+    if (trace != null) {
+      this.activeTrace = null;
+      this.activePhase = null;
+      this.currentSpan.remove();
+      CrawlTrace.Span rootSpan = trace.getRootSpan();
+      rootSpan.setAttribute("successful", successful);
+      rootSpan.end();
+      synchronized (traces) {
+        traces.addLast(trace);
+        while (traces.size() > maxTraces) {
+          traces.removeFirst();
+        }
+      }
+      persist(trace);
+    }
+  }
+
+  /**
+   * Start a new phase of the current crawl. Spans started on other threads are
+   * attached to it until it's closed.
+   *
+   * @param phase the name of the phase
+   * @return the scope of the phase span
+   */
+  public Scope startPhase(String phase) {
+    Scope scope = startSpan(phase);
+    if (scope.span != null) {
+      this.activePhase = scope.span;
+    }
+    return scope;
+  }
+
+  /**
+   * Start a new span in the current crawl
+   *
+   * @param name the name of the span
+   * @return the scope of the span
+   */
+  public Scope startSpan(String name) {
+    CrawlTrace trace = activeTrace;
+    if (trace == null) {
+      return new Scope(null, null);
+    }
+    CrawlTrace.Span previous = currentSpan.get();
+    CrawlTrace.Span parent = previous != null ? previous : activePhase != null ? activePhase : trace.getRootSpan();
+    CrawlTrace.Span span = trace.startSpan(parent, name);
+    currentSpan.set(span);
+    return new Scope(span, previous);
+  }
+
+  /**
+   * Return the summaries of the traces kept in memory, oldest first
+   */
+  public List<Map<String, Object>> getTraceSummaries() {
+    synchronized (traces) {
+      return traces.stream()
+        .map(CrawlTrace::getSummary)
+        .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Return the given trace as JSON in the Trace Event Format, either from memory
+   * or (e.g. after a restart) from its persisted file. The active trace may be
+   * requested as well, with its unfinished spans cut off at the current time.
+   *
+   * @param traceId the trace ID
+   * @return the JSON, or null if there is no such trace
+   */
+  public String getTraceJson(long traceId) throws IOException {
+    CrawlTrace trace = activeTrace;
+    if (trace == null || trace.getId() != traceId) {
+      trace = null;
+      synchronized (traces) {
+        for (CrawlTrace t : traces) {
+          if (t.getId() == traceId) {
+            trace = t;
+          }
+        }
+      }
+    }
+    if (trace != null) {
+      return new Gson().toJson(trace.toTraceEventJson());
+    }
+    File traceFile = getTraceFile(traceId);
+    return traceFile.exists() ? Files.readString(traceFile.toPath(), StandardCharsets.UTF_8) : null;
+  }
+
+  ////////////////////////////////
+
+  private File getTraceFile(long traceId) {
+    return new File(traceDirectory, TRACE_FILE_PREFIX + traceId + TRACE_FILE_SUFFIX);
+  }
+
+  /**
+   * Write the given trace to its file and delete the oldest files exceeding the
+   * maximum number of traces
+   */
+  private void persist(CrawlTrace trace) {
+    try {
+      Files.createDirectories(traceDirectory.toPath());
+      Files.writeString(getTraceFile(trace.getId()).toPath(), new Gson().toJson(trace.toTraceEventJson()), StandardCharsets.UTF_8);
+
+      File[] traceFiles = traceDirectory.listFiles((dir, name) -> name.startsWith(TRACE_FILE_PREFIX) && name.endsWith(TRACE_FILE_SUFFIX));
+      if (traceFiles != null && traceFiles.length > maxTraces) {
+        List<File> sortedTraceFiles = new ArrayList<>(Arrays.asList(traceFiles));
+        sortedTraceFiles.sort(Comparator.comparingLong(this::getTraceIdOfFile));
+        for (File traceFile : sortedTraceFiles.subList(0, sortedTraceFiles.size() - maxTraces)) {
+          Files.deleteIfExists(traceFile.toPath());
+        }
+      }
+    } catch (IOException e) {
+      log.stackTrace(e);
+    }
+  }
+
+  private long getTraceIdOfFile(File traceFile) {
+    String name = traceFile.getName();
+    try {
+      return Long.parseLong(name.substring(TRACE_FILE_PREFIX.length(), name.length() - TRACE_FILE_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
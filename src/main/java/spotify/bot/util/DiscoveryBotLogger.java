@@ -1,18 +1,34 @@
 package spotify.bot.util;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
 import spotify.api.SpotifyDependenciesSettings;
 import spotify.bot.util.data.AlbumGroupExtended;
+import spotify.bot.util.data.CrawlEvent;
 import spotify.util.SpotifyLogger;
 import spotify.util.SpotifyUtils;
 import spotify.util.data.AlbumTrackPair;
@@ -30,12 +46,47 @@ public class DiscoveryBotLogger extends SpotifyLogger {
       .thenComparing(AlbumSimplified::getName);
 
   private final static String DROPPED_PREFIX = "x ";
+  private final static String DROPPED_REMAINING_MASK = "... and %d more";
+  private final static String DROPPED_RELEASES_OFF = "OFF";
   private final static String INDENT = " ";
 
-  private boolean hasUnflushedLogs;
+  private final static DateTimeFormatter LOG_TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+  private final static String LOG_LINE_MASK = "[%s] %s";
+  private final static String BLOCK_SEPARATOR_LINE = "-".repeat(80);
+
+  private final RotatingLogFile externalLog;
+  private final AsyncLogAppender externalLogAppender;
+  private final CrawlEventBus crawlEventBus;
+  private final Level droppedReleasesLevel;
+  private final int droppedReleasesMaxPerCategory;
+
+  private final AtomicBoolean hasUnflushedLogs = new AtomicBoolean(false);
 
-  DiscoveryBotLogger(SpotifyDependenciesSettings spotifyDependenciesSettings) {
+  DiscoveryBotLogger(SpotifyDependenciesSettings spotifyDependenciesSettings, CrawlEventBus crawlEventBus,
+      @Value("${spotify.log.path:./log.txt}") String logPath,
+      @Value("${spotify.log.rotation.max_size_mb:10}") long rotationMaxSizeMb,
+      @Value("${spotify.log.rotation.max_age_days:30}") long rotationMaxAgeDays,
+      @Value("${spotify.log.rotation.retention_days:0}") long retentionDays,
+      @Value("${spotify.log.dropped_releases.level:INFO}") String droppedReleasesLevel,
+      @Value("${spotify.log.dropped_releases.max_per_category:50}") int droppedReleasesMaxPerCategory) {
     super(spotifyDependenciesSettings);
+    this.crawlEventBus = crawlEventBus;
+    this.droppedReleasesLevel = DROPPED_RELEASES_OFF.equalsIgnoreCase(droppedReleasesLevel) ? null : Level.valueOf(droppedReleasesLevel.toUpperCase());
+    this.droppedReleasesMaxPerCategory = droppedReleasesMaxPerCategory;
+    this.externalLog = spotifyDependenciesSettings.enableExternalLogging()
+      ? new RotatingLogFile(new File(logPath), rotationMaxSizeMb * 1024 * 1024, Duration.ofDays(rotationMaxAgeDays), Duration.ofDays(retentionDays), this::consoleStackTrace)
+      : null;
+    this.externalLogAppender = externalLog != null ? new AsyncLogAppender(externalLog::append, this::consoleStackTrace) : null;
+  }
+
+  /**
+   * Write any pending lines to the external log before shutting down
+   */
+  @PreDestroy
+  public void closeExternalLog() {
+    if (externalLogAppender != null) {
+      externalLogAppender.close();
+    }
   }
 
   /////////////////////
@@ -53,7 +104,8 @@ public class DiscoveryBotLogger extends SpotifyLogger {
    */
   public void debug(String message, boolean writeToExternalLog) {
     updateFlushedStatus(writeToExternalLog);
-    logAtLevel(message, Level.DEBUG, true, writeToExternalLog);
+    logAtLevel(message, Level.DEBUG, true, false);
+    writeToExternalLog(message, writeToExternalLog);
   }
 
   /**
@@ -69,7 +121,8 @@ public class DiscoveryBotLogger extends SpotifyLogger {
    */
   public void info(String message, boolean writeToExternalLog) {
     updateFlushedStatus(writeToExternalLog);
-    logAtLevel(message, Level.INFO, true, writeToExternalLog);
+    logAtLevel(message, Level.INFO, true, false);
+    writeToExternalLog(message, writeToExternalLog);
   }
 
   /**
@@ -85,7 +138,8 @@ public class DiscoveryBotLogger extends SpotifyLogger {
    */
   public void warning(String message, boolean writeToExternalLog) {
     updateFlushedStatus(writeToExternalLog);
-    logAtLevel(message, Level.WARNING, true, writeToExternalLog);
+    logAtLevel(message, Level.WARNING, true, false);
+    writeToExternalLog(message, writeToExternalLog);
   }
 
   /**
@@ -101,26 +155,116 @@ public class DiscoveryBotLogger extends SpotifyLogger {
    */
   public void error(String message, boolean writeToExternalLog) {
     updateFlushedStatus(writeToExternalLog);
-    logAtLevel(message, Level.ERROR, true, writeToExternalLog);
+    logAtLevel(message, Level.ERROR, true, false);
+    writeToExternalLog(message, writeToExternalLog);
+  }
+
+  /**
+   * Print a separator line, which ends the current log block
+   */
+  @Override
+  public void printLine() {
+    logAtLevel(BLOCK_SEPARATOR_LINE, Level.INFO, true, false);
+    writeToExternalLog(BLOCK_SEPARATOR_LINE, true);
+  }
+
+  /**
+   * Queue the message for the external log. The actual write happens on the
+   * appender's writer thread, so this never blocks on file I/O.
+   */
+  private void writeToExternalLog(String message, boolean writeToExternalLog) {
+    if (writeToExternalLog && externalLogAppender != null) {
+      externalLogAppender.append(String.format(LOG_LINE_MASK, LocalDateTime.now().format(LOG_TIMESTAMP_FORMAT), message));
+    }
+  }
+
+  /**
+   * Print the stack trace of a failure of the external log itself, which
+   * therefore only goes to the console
+   */
+  private void consoleStackTrace(Exception e) {
+    StringWriter stackTrace = new StringWriter();
+    e.printStackTrace(new PrintWriter(stackTrace));
+    logAtLevel(stackTrace.toString(), Level.ERROR, true, false);
+  }
+
+  /**
+   * Wait until everything logged so far has been written to the external log
+   */
+  public void flush() {
+    if (externalLogAppender != null) {
+      externalLogAppender.flush();
+    }
   }
 
   /////////////////////
 
   /**
-   * Reset the log and print a line if anything was flushed
+   * Return the ID of the oldest block still available in the external log
+   */
+  public int getFirstLogBlockId() {
+    return externalLog != null ? externalLog.getFirstBlockId() : 0;
+  }
+
+  /**
+   * Return the number of blocks in the external log (including archived ones),
+   * i.e. the ID the next block will receive
+   */
+  public int getLogBlockCount() throws IOException {
+    return externalLog != null ? externalLog.getBlockCount() : 0;
+  }
+
+  /**
+   * Return a version of the external log, which changes whenever anything gets
+   * written to or cleared from it
+   */
+  public String getLogVersion() throws IOException {
+    return externalLog != null ? externalLog.getVersion() : "0";
+  }
+
+  /**
+   * Read the blocks of the external log within the given range (oldest first),
+   * without reading (or decompressing) anything else of the log
+   *
+   * @param fromBlock the index of the first block (inclusive)
+   * @param toBlock the index of the last block (exclusive)
+   * @return the blocks
+   */
+  public List<List<String>> readLogBlocks(int fromBlock, int toBlock) throws IOException {
+    return externalLog != null ? externalLog.readBlocks(fromBlock, toBlock) : List.of();
+  }
+
+  /**
+   * Clear the external log, including its archived segments
+   */
+  @Override
+  public boolean clearLog() {
+    flush();
+    return externalLog != null && externalLog.clear();
+  }
+
+  /////////////////////
+
+  /**
+   * Reset the log and print a line if anything was flushed. This is also the
+   * point where everything logged so far is guaranteed to be written to the
+   * external log.
    */
   public void resetAndPrintLine() {
     if (reset()) {
       printLine();
       reset();
     }
+    flush();
   }
 
   /**
    * Set the unflushed logs flag to true if it isn't already and the bot is writing to the external log
    */
   private void updateFlushedStatus(boolean writeToExternalLog) {
-    this.hasUnflushedLogs = hasUnflushedLogs || writeToExternalLog;
+    if (writeToExternalLog) {
+      hasUnflushedLogs.set(true);
+    }
   }
 
   /**
@@ -129,9 +273,7 @@ public class DiscoveryBotLogger extends SpotifyLogger {
    * @return true if anything was flushed
    */
   private boolean reset() {
-    boolean hasBeenReset = this.hasUnflushedLogs;
-    this.hasUnflushedLogs = false;
-    return hasBeenReset;
+    return hasUnflushedLogs.getAndSet(false);
   }
 
   /////////////////////
@@ -147,62 +289,123 @@ public class DiscoveryBotLogger extends SpotifyLogger {
   }
 
   /**
-   * Print the given list of AlbumSimplifieds with a prefix indicating that they
-   * were dropped
+   * Log all releases in base which aren't in subtrahend (base is expected to
+   * contain every release of subtrahend, so the difference in size is the number
+   * of dropped releases). The difference itself is only computed if the report
+   * is actually written.
+   *
+   * @param descriptionMask the description of the dropped releases, with a single %d for their number
    */
-  private void printDroppedAlbumSimplified(List<AlbumSimplified> albumSimplifieds) {
-    for (AlbumSimplified as : albumSimplifieds) {
-      info(DROPPED_PREFIX + INDENT + SpotifyUtils.formatAlbum(as));
-    }
+  public void printDroppedAlbumDifference(Collection<AlbumSimplified> base, Collection<AlbumSimplified> subtrahend, String descriptionMask) {
+    printDroppedAlbums(base.size() - subtrahend.size(), descriptionMask, () -> {
+      Set<AlbumSimplified> subtrahendSet = new HashSet<>(subtrahend);
+      return base.stream()
+        .filter(as -> !subtrahendSet.contains(as))
+        .distinct();
+    });
   }
 
   /**
-   * Log all releases in base which aren't in subtrahend
+   * Same as printDroppedAlbumDifference but for AlbumTrackPairs
    */
-  public void printDroppedAlbumDifference(Collection<AlbumSimplified> base, Collection<AlbumSimplified> subtrahend, String logDescription) {
-    Set<AlbumSimplified> differenceView = new HashSet<>(base);
-    differenceView.removeAll(subtrahend);
-    printDroppedAlbums(differenceView, logDescription);
+  public void printDroppedAlbumTrackPairDifference(Collection<AlbumTrackPair> unfilteredReleases, Collection<AlbumTrackPair> filteredReleases, String descriptionMask) {
+    printDroppedAlbums(unfilteredReleases.size() - filteredReleases.size(), descriptionMask, () -> {
+      Set<AlbumSimplified> filteredAlbums = filteredReleases.stream()
+        .map(AlbumTrackPair::getAlbum)
+        .collect(Collectors.toSet());
+      return unfilteredReleases.stream()
+        .map(AlbumTrackPair::getAlbum)
+        .filter(as -> !filteredAlbums.contains(as))
+        .distinct();
+    });
   }
 
   /**
    * Log the dropped album track pairs
    */
-  public void printDroppedAlbumTrackPairs(Collection<AlbumTrackPair> droppedAlbums, String logDescription) {
-    List<AlbumSimplified> collect = droppedAlbums.stream().map(AlbumTrackPair::getAlbum).collect(Collectors.toList());
-    printDroppedAlbums(collect, logDescription);
+  public void printDroppedAlbumTrackPairs(Collection<AlbumTrackPair> droppedAlbums, String descriptionMask) {
+    printDroppedAlbums(droppedAlbums.size(), descriptionMask, () -> droppedAlbums.stream().map(AlbumTrackPair::getAlbum));
   }
 
   /**
-   * Log the dropped albums
+   * Log the dropped albums, sorted by {@link #ALBUM_SIMPLIFIED_COMPARATOR}. Only
+   * the count is needed up front: the albums are only supplied (and only the
+   * first ones of the configured maximum are sorted and formatted) if the report
+   * is enabled.
+   *
+   * @param droppedCount the number of dropped albums (nothing is logged for 0)
+   * @param descriptionMask the description of the dropped albums, with a single %d for their number
+   * @param droppedAlbums the supplier of the dropped albums
    */
-  public void printDroppedAlbums(Collection<AlbumSimplified> droppedAlbums, String logDescription) {
-    if (!droppedAlbums.isEmpty()) {
-      if (logDescription != null) {
-        info(DROPPED_PREFIX + logDescription);
+  public void printDroppedAlbums(int droppedCount, String descriptionMask, Supplier<Stream<AlbumSimplified>> droppedAlbums) {
+    if (droppedCount <= 0) {
+      return;
+    }
+    publishDroppedCount(droppedCount, descriptionMask);
+    if (droppedReleasesLevel == null) {
+      return;
+    }
+
+    // Keep only the first n albums in a max-heap, instead of sorting all of them
+    PriorityQueue<AlbumSimplified> firstAlbums = new PriorityQueue<>(ALBUM_SIMPLIFIED_COMPARATOR.reversed());
+    int[] total = new int[1];
+    droppedAlbums.get().forEach(as -> {
+      total[0]++;
+      if (droppedReleasesMaxPerCategory < 0 || firstAlbums.size() < droppedReleasesMaxPerCategory) {
+        firstAlbums.add(as);
+      } else if (droppedReleasesMaxPerCategory > 0 && ALBUM_SIMPLIFIED_COMPARATOR.compare(as, firstAlbums.peek()) < 0) {
+        firstAlbums.poll();
+        firstAlbums.add(as);
       }
-      List<AlbumSimplified> sortedDroppedAlbums = droppedAlbums.stream().sorted(ALBUM_SIMPLIFIED_COMPARATOR).collect(Collectors.toList());
-      printDroppedAlbumSimplified(sortedDroppedAlbums);
+    });
+    List<AlbumSimplified> sortedFirstAlbums = new ArrayList<>(firstAlbums);
+    sortedFirstAlbums.sort(ALBUM_SIMPLIFIED_COMPARATOR);
+
+    logDropped(String.format(descriptionMask, droppedCount));
+    for (AlbumSimplified as : sortedFirstAlbums) {
+      logDropped(INDENT + SpotifyUtils.formatAlbum(as));
     }
+    logRemainingDroppedCount(total[0] - sortedFirstAlbums.size());
   }
 
   /**
-   * Same as printDroppedAlbumDifference but for AlbumTrackPairs
+   * Log the dropped albums along with the album group they were dropped from (in
+   * the given order)
+   *
+   * @param descriptionMask the description of the dropped albums, with a single %d for their number
    */
-  public void printDroppedAlbumTrackPairDifference(Collection<AlbumTrackPair> unfilteredReleases, Collection<AlbumTrackPair> filteredReleases, String logDescription) {
-    printDroppedAlbumDifference(unfilteredReleases.stream().map(AlbumTrackPair::getAlbum).collect(Collectors.toList()),
-        filteredReleases.stream().map(AlbumTrackPair::getAlbum).collect(Collectors.toList()),
-        logDescription);
+  public void printDroppedAlbumsCustomGroup(List<Map.Entry<AlbumSimplified, AlbumGroupExtended>> droppedAlbums, String descriptionMask) {
+    if (droppedAlbums.isEmpty()) {
+      return;
+    }
+    publishDroppedCount(droppedAlbums.size(), descriptionMask);
+    if (droppedReleasesLevel == null) {
+      return;
+    }
+
+    logDropped(String.format(descriptionMask, droppedAlbums.size()));
+    int printedCount = droppedReleasesMaxPerCategory < 0 ? droppedAlbums.size() : Math.min(droppedAlbums.size(), droppedReleasesMaxPerCategory);
+    for (Map.Entry<AlbumSimplified, AlbumGroupExtended> droppedAlbum : droppedAlbums.subList(0, printedCount)) {
+      logDropped(INDENT + DiscoveryBotUtils.formatAlbum(droppedAlbum.getKey(), droppedAlbum.getValue()));
+    }
+    logRemainingDroppedCount(droppedAlbums.size() - printedCount);
   }
 
-  public void printDroppedAlbumsCustomGroup(List<Map.Entry<AlbumSimplified, AlbumGroupExtended>> droppedAlbums, String logDescription){
-    if (!droppedAlbums.isEmpty()) {
-      if (logDescription != null) {
-        info(DROPPED_PREFIX + logDescription);
-      }
-      for (Map.Entry<AlbumSimplified, AlbumGroupExtended> droppedAlbum : droppedAlbums) {
-        info(DROPPED_PREFIX + INDENT + DiscoveryBotUtils.formatAlbum(droppedAlbum.getKey(), droppedAlbum.getValue()));
-      }
+  private void logRemainingDroppedCount(int remainingCount) {
+    if (remainingCount > 0) {
+      logDropped(INDENT + String.format(DROPPED_REMAINING_MASK, remainingCount));
     }
   }
+
+  private void logDropped(String message) {
+    if (droppedReleasesLevel == Level.DEBUG) {
+      debug(DROPPED_PREFIX + message);
+    } else {
+      info(DROPPED_PREFIX + message);
+    }
+  }
+
+  private void publishDroppedCount(int count, String descriptionMask) {
+    crawlEventBus.publish(CrawlEvent.Type.RELEASES_DROPPED, Map.of("count", count, "reason", String.format(descriptionMask, count)));
+  }
 }
@@ -0,0 +1,289 @@
+package spotify.bot.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Central place for the Micrometer metrics of the bot, exposed in Prometheus
+ * format via the actuator endpoint <code>/actuator/prometheus</code>. All meter
+ * names are prefixed with <code>discovery.</code>.
+ */
+@Component
+public class DiscoveryBotMetrics {
+  private final static String PREFIX = "discovery.";
+  private final static String OUTCOME_SUCCESS = "success";
+  private final static String OUTCOME_FAILURE = "failure";
+  private final static String CACHE_HIT = "hit";
+  private final static String CACHE_MISS = "miss";
+  private final static String SPOTIFY_EXECUTOR = "spotify";
+  private final static String DATABASE_READ = "read";
+  private final static String DATABASE_WRITE = "write";
+  private final static Duration FRESHNESS_MIN_EXPECTED = Duration.ofMinutes(1);
+  private final static Duration FRESHNESS_MAX_EXPECTED = Duration.ofDays(60);
+
+  private final MeterRegistry meterRegistry;
+  private final AtomicLong lastSuccessfulCrawl;
+  private final AtomicInteger pendingSpotifyCalls;
+  private final Map<String, CacheCounters> cacheCounters;
+  private volatile Duration releaseFreshnessThreshold;
+
+  public DiscoveryBotMetrics(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+    this.lastSuccessfulCrawl = new AtomicLong(0);
+    this.pendingSpotifyCalls = new AtomicInteger(0);
+    this.cacheCounters = new ConcurrentHashMap<>();
+    this.releaseFreshnessThreshold = Duration.ofDays(1);
+
+    TimeGauge.builder(PREFIX + "crawl.since.last.success", lastSuccessfulCrawl, TimeUnit.MILLISECONDS,
+        last -> last.get() > 0 ? System.currentTimeMillis() - last.get() : Double.NaN)
+      .description("Time since the last successful crawl (NaN if there was none yet)")
+      .register(meterRegistry);
+    Gauge.builder(PREFIX + "executor.pending", pendingSpotifyCalls, AtomicInteger::get)
+      .description("Tasks submitted to the executor that haven't completed yet")
+      .tag("executor", SPOTIFY_EXECUTOR)
+      .register(meterRegistry);
+  }
+
+  /////////////////
+  // Crawl
+
+  /**
+   * Record a finished crawl
+   */
+  public void recordCrawl(long durationNanos, boolean successful) {
+    timer("crawl", "outcome", successful ? OUTCOME_SUCCESS : OUTCOME_FAILURE).record(durationNanos, TimeUnit.NANOSECONDS);
+    if (successful) {
+      lastSuccessfulCrawl.set(System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Record a finished phase of a crawl
+   */
+  public void recordCrawlPhase(String phase, long durationNanos) {
+    timer("crawl.phase", "phase", phase).record(durationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /////////////////
+  // Spotify
+
+  /**
+   * Record a single call to the Spotify Web API
+   *
+   * @param request the kind of request (e.g. "artist_albums")
+   */
+  public void recordSpotifyCall(String request, long durationNanos, boolean successful) {
+    timer("spotify.requests", "request", request, "outcome", successful ? OUTCOME_SUCCESS : OUTCOME_FAILURE)
+      .record(durationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Record a call to the Spotify Web API that was rejected with 429 Too Many
+   * Requests
+   *
+   * @param request the kind of request (e.g. "artist_albums")
+   */
+  public void recordSpotifyRateLimit(String request) {
+    counter("spotify.requests.rate_limited", "request", request).increment();
+  }
+
+  /**
+   * Record the full (paged) release fetch of a single artist
+   */
+  public void recordArtistReleaseFetch(long durationNanos, int pages) {
+    timer("artist.releases").record(durationNanos, TimeUnit.NANOSECONDS);
+    DistributionSummary.builder(PREFIX + "artist.releases.pages")
+      .register(meterRegistry)
+      .record(pages);
+  }
+
+  /**
+   * Wrap the given tasks for the Spotify executor, so they are counted as pending
+   * until they complete
+   */
+  public <T> List<Callable<T>> trackPending(List<Callable<T>> callables) {
+    pendingSpotifyCalls.addAndGet(callables.size());
+    List<Callable<T>> trackedCallables = new ArrayList<>(callables.size());
+    for (Callable<T> callable : callables) {
+      trackedCallables.add(() -> {
+        try {
+          return callable.call();
+        } finally {
+          pendingSpotifyCalls.decrementAndGet();
+        }
+      });
+    }
+    return trackedCallables;
+  }
+
+  /////////////////
+  // Playlists
+
+  /**
+   * Record a single batch written to a playlist (every retry counts as its own
+   * batch)
+   */
+  public void recordPlaylistBatch(int size, long durationNanos, boolean successful) {
+    timer("playlist.batches", "outcome", successful ? OUTCOME_SUCCESS : OUTCOME_FAILURE).record(durationNanos, TimeUnit.NANOSECONDS);
+    if (successful) {
+      counter("playlist.tracks.added").increment(size);
+    }
+  }
+
+  /////////////////
+  // Freshness
+
+  /**
+   * Record the time-to-discovery of a release added to a playlist. The histogram
+   * has a bucket boundary at the alert threshold, so the share of late releases
+   * can be read from it directly, but late releases are also counted on their own.
+   *
+   * @param albumGroup the album group of the target playlist
+   * @param artistTier the tier of the artist the release was found through
+   * @param timeToDiscovery the time between the release and its addition
+   * @param late whether it exceeded the alert threshold
+   */
+  public void recordReleaseFreshness(String albumGroup, String artistTier, Duration timeToDiscovery, boolean late) {
+    Timer.builder(PREFIX + "release.freshness")
+      .description("Time between the release date of a release and its addition to a playlist")
+      .tags("album_group", albumGroup, "artist_tier", artistTier)
+      .publishPercentileHistogram()
+      .serviceLevelObjectives(releaseFreshnessThreshold)
+      .minimumExpectedValue(FRESHNESS_MIN_EXPECTED)
+      .maximumExpectedValue(FRESHNESS_MAX_EXPECTED)
+      .register(meterRegistry)
+      .record(timeToDiscovery);
+    if (late) {
+      counter("release.freshness.late", "album_group", albumGroup, "artist_tier", artistTier).increment();
+    }
+  }
+
+  /**
+   * Register the alert threshold of the time-to-discovery, both as a gauge (for
+   * alerting rules) and as a histogram bucket boundary
+   */
+  public void registerReleaseFreshnessThreshold(Duration threshold) {
+    this.releaseFreshnessThreshold = threshold;
+    TimeGauge.builder(PREFIX + "release.freshness.threshold", threshold, TimeUnit.MILLISECONDS, Duration::toMillis)
+      .description("Time-to-discovery above which a release counts as late")
+      .register(meterRegistry);
+  }
+
+  /////////////////
+  // Database
+
+  /**
+   * Record a single read from the given table, including the iteration over the
+   * result set
+   */
+  public void recordDatabaseRead(String table, long durationNanos) {
+    timer("database", "operation", DATABASE_READ, "table", table).record(durationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Record a single write (insert or delete) to the given table
+   */
+  public void recordDatabaseWrite(String table, long durationNanos) {
+    timer("database", "operation", DATABASE_WRITE, "table", table).record(durationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /////////////////
+  // Caches
+
+  /**
+   * Record lookups in the given cache. Every cache also gets a hit ratio gauge.
+   *
+   * @param cache the name of the cache
+   * @param hits the number of lookups found in the cache
+   * @param misses the number of lookups not found in the cache
+   */
+  public void recordCacheLookups(String cache, long hits, long misses) {
+    CacheCounters counters = cacheCounters.computeIfAbsent(cache, this::registerCache);
+    counters.hits.increment(hits);
+    counters.misses.increment(misses);
+  }
+
+  /**
+   * Register a cache that keeps its own hit and miss counters
+   *
+   * @param cache the name of the cache
+   * @param source the cache
+   * @param hits the function returning the total hits of the cache
+   * @param misses the function returning the total misses of the cache
+   */
+  public <T> void registerCache(String cache, T source, ToDoubleFunction<T> hits, ToDoubleFunction<T> misses) {
+    FunctionCounter.builder(PREFIX + "cache.lookups", source, hits)
+      .tags("cache", cache, "result", CACHE_HIT)
+      .register(meterRegistry);
+    FunctionCounter.builder(PREFIX + "cache.lookups", source, misses)
+      .tags("cache", cache, "result", CACHE_MISS)
+      .register(meterRegistry);
+    registerHitRatio(cache, source, hits, misses);
+  }
+
+  /**
+   * Register a gauge for the queue depth of one of the bot's own executors
+   */
+  public <T> void registerQueue(String executor, T source, ToDoubleFunction<T> queueDepth) {
+    Gauge.builder(PREFIX + "executor.queued", source, queueDepth)
+      .tag("executor", executor)
+      .register(meterRegistry);
+  }
+
+  private CacheCounters registerCache(String cache) {
+    CacheCounters counters = new CacheCounters(
+      Counter.builder(PREFIX + "cache.lookups").tags("cache", cache, "result", CACHE_HIT).register(meterRegistry),
+      Counter.builder(PREFIX + "cache.lookups").tags("cache", cache, "result", CACHE_MISS).register(meterRegistry));
+    registerHitRatio(cache, counters, c -> c.hits.count(), c -> c.misses.count());
+    return counters;
+  }
+
+  private <T> void registerHitRatio(String cache, T source, ToDoubleFunction<T> hits, ToDoubleFunction<T> misses) {
+    Gauge.builder(PREFIX + "cache.hit.ratio", source, s -> {
+      double total = hits.applyAsDouble(s) + misses.applyAsDouble(s);
+      return total > 0 ? hits.applyAsDouble(s) / total : Double.NaN;
+    })
+      .tag("cache", cache)
+      .register(meterRegistry);
+  }
+
+  private Timer timer(String name, String... tags) {
+    return Timer.builder(PREFIX + name)
+      .tags(tags)
+      .register(meterRegistry);
+  }
+
+  private Counter counter(String name, String... tags) {
+    return Counter.builder(PREFIX + name)
+      .tags(tags)
+      .register(meterRegistry);
+  }
+
+  private static class CacheCounters {
+    private final Counter hits;
+    private final Counter misses;
+
+    CacheCounters(Counter hits, Counter misses) {
+      this.hits = hits;
+      this.misses = misses;
+    }
+  }
+}
@@ -8,7 +8,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.StringJoiner;
 
+import se.michaelthelin.spotify.enums.AlbumGroup;
 import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
 import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
 import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
 import spotify.bot.util.data.AlbumGroupExtended;
@@ -91,17 +93,43 @@ public class DiscoveryBotUtils {
   }
 
   /**
-   * Write the song count per album group into the target map
+   * Write the count of actually added songs per album group into the target map
+   *
+   * @param songsByPlaylist the songs to be added per playlist store
+   * @param skippedSongsByPlaylist the number of songs per playlist store that
+   *                               were skipped while adding (e.g. as they were
+   *                               already in the playlist)
    */
-  public static Map<AlbumGroupExtended, Integer> collectSongAdditionResults(Map<PlaylistStore, List<AlbumTrackPair>> songsByPlaylist) {
+  public static Map<AlbumGroupExtended, Integer> collectSongAdditionResults(Map<PlaylistStore, List<AlbumTrackPair>> songsByPlaylist, Map<PlaylistStore, Integer> skippedSongsByPlaylist) {
     Map<AlbumGroupExtended, Integer> targetCountMap = new HashMap<>();
     for (Map.Entry<PlaylistStore, List<AlbumTrackPair>> entry : songsByPlaylist.entrySet()) {
-      int totalSongsOfGroup = entry.getValue().stream().mapToInt(atp -> atp.getTracks().size()).sum();
+      int totalSongsOfGroup = entry.getValue().stream().mapToInt(atp -> atp.getTracks().size()).sum()
+        - skippedSongsByPlaylist.getOrDefault(entry.getKey(), 0);
       targetCountMap.put(entry.getKey().getAlbumGroupExtended(), totalSongsOfGroup);
     }
     return targetCountMap;
   }
 
+  /**
+   * Return the ID of the artist whose releases the given album was found in:
+   * the origin artist preserved for appears_on releases (both before and after
+   * the via-artist names have been resolved), otherwise the first artist
+   *
+   * @param album the album
+   * @return the artist ID, or null if the album has no artists or the origin
+   *         artist has no ID
+   */
+  public static String getOriginArtistId(AlbumSimplified album) {
+    ArtistSimplified[] artists = album.getArtists();
+    if (artists == null || artists.length == 0) {
+      return null;
+    }
+    if (AlbumGroup.APPEARS_ON.equals(album.getAlbumGroup())) {
+      return artists[artists.length - 1].getId();
+    }
+    return artists[0].getId();
+  }
+
   /**
    * Return a string which only contains a single character repeated n times
    */
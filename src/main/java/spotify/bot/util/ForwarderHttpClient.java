@@ -0,0 +1,51 @@
+package spotify.bot.util;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * HTTP client for the forwarder. A single underlying client is reused for every
+ * request, so its connections are pooled and kept alive between deliveries
+ * instead of being opened anew for every message.
+ */
+public class ForwarderHttpClient {
+  private final HttpClient httpClient;
+  private final URI uri;
+  private final Duration requestTimeout;
+
+  public ForwarderHttpClient(String url, Duration connectTimeout, Duration requestTimeout) {
+    this.httpClient = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1)
+      .connectTimeout(connectTimeout)
+      .build();
+    this.uri = URI.create(url);
+    this.requestTimeout = requestTimeout;
+  }
+
+  /**
+   * POST the given body to the forwarder URL
+   *
+   * @param body the request body
+   * @return the HTTP status code of the response
+   * @throws IOException if the request couldn't be sent or no response was received
+   */
+  public int post(String body) throws IOException {
+    HttpRequest request = HttpRequest.newBuilder(uri)
+      .timeout(requestTimeout)
+      .header("Accept", "application/json")
+      .header("Content-Type", "text/plain; charset=UTF-8")
+      .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+      .build();
+    try {
+      return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while forwarding", e);
+    }
+  }
+}
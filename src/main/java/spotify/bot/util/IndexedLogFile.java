@@ -0,0 +1,235 @@
+package spotify.bot.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The external log file, along with an in-memory index of the byte offsets of
+ * its blocks (the lines between two separator lines containing "---"). Blocks
+ * are addressed by their index since the start of the file, and reading any
+ * of them only seeks to and reads exactly their byte range, no matter how large
+ * the file is.<br/>
+ * <br/>
+ * The index is built with a single streaming pass on startup and afterwards
+ * only ever scans the bytes appended since, which also picks up any lines not
+ * written through this class.
+ */
+public class IndexedLogFile {
+  private final static String BLOCK_SEPARATOR = "---";
+  private final static int SCAN_BUFFER_SIZE = 64 * 1024;
+  private final static int INITIAL_INDEX_CAPACITY = 1024;
+
+  private final File file;
+
+  private long[] blockStarts;
+  private long[] blockEnds;
+  private int closedBlockCount;
+
+  private long openBlockStart;
+  private long openBlockEnd;
+  private boolean openBlockHasLines;
+
+  private long scannedLength;
+
+  public IndexedLogFile(File file) {
+    this.file = file;
+    resetIndex();
+  }
+
+  /**
+   * Append the given lines to the log file and update the index accordingly
+   *
+   * @param lines the lines to append (without line breaks)
+   */
+  public synchronized void append(List<String> lines) throws IOException {
+    if (lines.isEmpty()) {
+      return;
+    }
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists()) {
+      parent.mkdirs();
+    }
+    StringBuilder sb = new StringBuilder();
+    for (String line : lines) {
+      sb.append(line).append('\n');
+    }
+    try (OutputStream out = new FileOutputStream(file, true)) {
+      out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    refreshIndex();
+  }
+
+  /**
+   * Return the number of (non-empty) blocks in the log file
+   */
+  public synchronized int getBlockCount() throws IOException {
+    refreshIndex();
+    return closedBlockCount + (openBlockHasLines ? 1 : 0);
+  }
+
+  /**
+   * Return the number of bytes of the log file covered by the index. Any change
+   * to the log changes this number (unless it was cleared in the meantime, which
+   * also resets the block count).
+   */
+  public synchronized long getIndexedLength() throws IOException {
+    refreshIndex();
+    return scannedLength;
+  }
+
+  /**
+   * Return true if the log file currently ends with a separator line (or is
+   * empty), i.e. no block is still being written to
+   */
+  public synchronized boolean isAtBlockBoundary() throws IOException {
+    refreshIndex();
+    return !openBlockHasLines;
+  }
+
+  /**
+   * Read the blocks within the given range, oldest first
+   *
+   * @param fromBlock the index of the first block to read (inclusive)
+   * @param toBlock the index of the last block to read (exclusive)
+   * @return the lines of the blocks
+   */
+  public synchronized List<List<String>> readBlocks(int fromBlock, int toBlock) throws IOException {
+    int blockCount = getBlockCount();
+    List<List<String>> blocks = new ArrayList<>();
+    if (fromBlock >= toBlock || !file.exists()) {
+      return blocks;
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      for (int i = Math.max(0, fromBlock); i < Math.min(toBlock, blockCount); i++) {
+        long start = i < closedBlockCount ? blockStarts[i] : openBlockStart;
+        long end = i < closedBlockCount ? blockEnds[i] : openBlockEnd;
+        byte[] bytes = new byte[(int) (end - start)];
+        raf.seek(start);
+        raf.readFully(bytes);
+        blocks.add(splitLines(bytes));
+      }
+    }
+    return blocks;
+  }
+
+  /**
+   * Delete the entire content of the log file
+   *
+   * @return true if the file was cleared
+   */
+  public synchronized boolean clear() {
+    try {
+      if (file.exists()) {
+        new FileOutputStream(file, false).close();
+      }
+      resetIndex();
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  ////////////////////////////////
+
+  private void resetIndex() {
+    this.blockStarts = new long[INITIAL_INDEX_CAPACITY];
+    this.blockEnds = new long[INITIAL_INDEX_CAPACITY];
+    this.closedBlockCount = 0;
+    this.openBlockStart = 0;
+    this.openBlockEnd = 0;
+    this.openBlockHasLines = false;
+    this.scannedLength = 0;
+  }
+
+  /**
+   * Scan everything appended to the file since the last scan (or everything, if
+   * the file was truncated in the meantime)
+   */
+  private void refreshIndex() throws IOException {
+    long length = file.length();
+    if (length < scannedLength) {
+      resetIndex();
+    }
+    if (length > scannedLength) {
+      scan(scannedLength);
+    }
+  }
+
+  private void scan(long from) throws IOException {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file), SCAN_BUFFER_SIZE)) {
+      long skipped = 0;
+      while (skipped < from) {
+        long s = in.skip(from - skipped);
+        if (s <= 0) {
+          return;
+        }
+        skipped += s;
+      }
+
+      long position = from;
+      long lineStart = from;
+      int consecutiveDashes = 0;
+      boolean isSeparatorLine = false;
+      int b;
+      while ((b = in.read()) != -1) {
+        position++;
+        if (b == '\n') {
+          onLine(lineStart, position, isSeparatorLine);
+          lineStart = position;
+          consecutiveDashes = 0;
+          isSeparatorLine = false;
+        } else {
+          consecutiveDashes = b == '-' ? consecutiveDashes + 1 : 0;
+          isSeparatorLine |= consecutiveDashes >= BLOCK_SEPARATOR.length();
+        }
+      }
+
+      // An incomplete last line is only indexed once it's completed
+      this.scannedLength = lineStart;
+    }
+  }
+
+  private void onLine(long lineStart, long lineEnd, boolean isSeparatorLine) {
+    if (isSeparatorLine) {
+      if (openBlockHasLines) {
+        addClosedBlock(openBlockStart, openBlockEnd);
+      }
+      openBlockHasLines = false;
+    } else {
+      if (!openBlockHasLines) {
+        openBlockStart = lineStart;
+        openBlockHasLines = true;
+      }
+      openBlockEnd = lineEnd;
+    }
+  }
+
+  private void addClosedBlock(long start, long end) {
+    if (closedBlockCount == blockStarts.length) {
+      blockStarts = Arrays.copyOf(blockStarts, closedBlockCount * 2);
+      blockEnds = Arrays.copyOf(blockEnds, closedBlockCount * 2);
+    }
+    blockStarts[closedBlockCount] = start;
+    blockEnds[closedBlockCount] = end;
+    closedBlockCount++;
+  }
+
+  private List<String> splitLines(byte[] bytes) {
+    String content = new String(bytes, StandardCharsets.UTF_8);
+    List<String> lines = new ArrayList<>();
+    for (String line : content.split("\n")) {
+      lines.add(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+    }
+    return lines;
+  }
+}
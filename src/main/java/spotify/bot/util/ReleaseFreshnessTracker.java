@@ -0,0 +1,153 @@
+package spotify.bot.util;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import se.michaelthelin.spotify.enums.AlbumGroup;
+import se.michaelthelin.spotify.enums.ReleaseDatePrecision;
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import spotify.bot.util.data.AlbumGroupExtended;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * Tracks the time-to-discovery of every release added to a playlist, i.e. the
+ * time between the start of its release day and the moment it was added. The
+ * results are published as a histogram per album group and artist tier, where
+ * the tier is derived from the size of the artist's own catalog as seen in the
+ * most recent release fetch. Releases that took longer than the alert threshold
+ * are counted separately and logged as a warning.<br/>
+ * <br/>
+ * Only releases with a day-precise release date are tracked.
+ */
+@Component
+public class ReleaseFreshnessTracker {
+  private final static int SMALL_CATALOG_LIMIT = 10;
+  private final static int MEDIUM_CATALOG_LIMIT = 50;
+
+  /**
+   * The tier of an artist, based on the number of own releases (i.e. excluding
+   * appears_on)
+   */
+  public enum ArtistTier {
+    SMALL, MEDIUM, LARGE, UNKNOWN;
+
+    static ArtistTier fromCatalogSize(Integer releases) {
+      if (releases == null) {
+        return UNKNOWN;
+      } else if (releases < SMALL_CATALOG_LIMIT) {
+        return SMALL;
+      } else if (releases < MEDIUM_CATALOG_LIMIT) {
+        return MEDIUM;
+      }
+      return LARGE;
+    }
+
+    public String getTag() {
+      return name().toLowerCase();
+    }
+  }
+
+  private final DiscoveryBotMetrics metrics;
+  private final DiscoveryBotLogger log;
+  private final Duration alertThreshold;
+  private final Map<String, Integer> catalogSizeByArtist;
+
+  ReleaseFreshnessTracker(DiscoveryBotMetrics metrics, DiscoveryBotLogger discoveryBotLogger,
+      @Value("${spotify.discovery.freshness.alert_threshold_hours:24}") int alertThresholdHours) {
+    this.metrics = metrics;
+    this.log = discoveryBotLogger;
+    this.alertThreshold = Duration.ofHours(alertThresholdHours);
+    this.catalogSizeByArtist = new ConcurrentHashMap<>();
+    metrics.registerReleaseFreshnessThreshold(alertThreshold);
+  }
+
+  /**
+   * Remember the releases of the given artist found during the release fetch
+   * to determine the artist's tier
+   *
+   * @param artistId the artist ID
+   * @param releases the releases of the artist
+   */
+  public void recordArtistCatalog(String artistId, List<AlbumSimplified> releases) {
+    int ownReleases = (int) releases.stream()
+      .filter(release -> !AlbumGroup.APPEARS_ON.equals(release.getAlbumGroup()))
+      .count();
+    catalogSizeByArtist.put(artistId, ownReleases);
+  }
+
+  /**
+   * Return the tier of the artist the given release was found through. For
+   * releases other than appears_on, this is the first artist of the release
+   * whose catalog is known, as the followed artist isn't necessarily the first.
+   */
+  public ArtistTier getArtistTier(AlbumSimplified release) {
+    if (AlbumGroup.APPEARS_ON.equals(release.getAlbumGroup())) {
+      String originArtistId = DiscoveryBotUtils.getOriginArtistId(release);
+      return ArtistTier.fromCatalogSize(originArtistId != null ? catalogSizeByArtist.get(originArtistId) : null);
+    }
+    if (release.getArtists() != null) {
+      for (ArtistSimplified artist : release.getArtists()) {
+        Integer catalogSize = artist.getId() != null ? catalogSizeByArtist.get(artist.getId()) : null;
+        if (catalogSize != null) {
+          return ArtistTier.fromCatalogSize(catalogSize);
+        }
+      }
+    }
+    return ArtistTier.UNKNOWN;
+  }
+
+  /**
+   * Record the time-to-discovery of the given releases that were just added to
+   * the playlist of the given album group
+   *
+   * @param albumGroupExtended the album group of the target playlist
+   * @param albumTrackPairs the added releases
+   * @param addedAt the moment they were added
+   */
+  public void recordAddedReleases(AlbumGroupExtended albumGroupExtended, List<AlbumTrackPair> albumTrackPairs, Instant addedAt) {
+    List<String> lateReleases = new ArrayList<>();
+    for (AlbumTrackPair albumTrackPair : albumTrackPairs) {
+      AlbumSimplified release = albumTrackPair.getAlbum();
+      Instant releasedAt = getReleaseStart(release);
+      if (releasedAt != null) {
+        Duration timeToDiscovery = releasedAt.isBefore(addedAt) ? Duration.between(releasedAt, addedAt) : Duration.ZERO;
+        boolean late = timeToDiscovery.compareTo(alertThreshold) > 0;
+        metrics.recordReleaseFreshness(albumGroupExtended.getGroupName(), getArtistTier(release).getTag(), timeToDiscovery, late);
+        if (late) {
+          lateReleases.add(String.format("%s (after %d hour[s])", DiscoveryBotUtils.formatAlbum(release, albumGroupExtended), timeToDiscovery.toHours()));
+        }
+      }
+    }
+    if (!lateReleases.isEmpty()) {
+      log.warning(String.format("%d release[s] added later than the freshness threshold of %d hour[s]:", lateReleases.size(), alertThreshold.toHours()));
+      lateReleases.forEach(log::warning);
+    }
+  }
+
+  /**
+   * Return the start of the release day of the given release in the local time
+   * zone (the same the release date filters use), or null if the release date
+   * isn't precise to the day
+   */
+  private Instant getReleaseStart(AlbumSimplified release) {
+    if (release == null || release.getReleaseDate() == null || !ReleaseDatePrecision.DAY.equals(release.getReleaseDatePrecision())) {
+      return null;
+    }
+    try {
+      return LocalDate.parse(release.getReleaseDate()).atStartOfDay(ZoneId.systemDefault()).toInstant();
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+}
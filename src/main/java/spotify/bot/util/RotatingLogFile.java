@@ -0,0 +1,440 @@
+package spotify.bot.util;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The external log, rotated into gzip-compressed archive segments once the
+ * active log file exceeds a maximum size or its oldest entry a maximum age.
+ * Rotation only ever happens between two blocks, so every block is stored
+ * entirely within one file.<br/>
+ * <br/>
+ * Every block of a segment is compressed as its own gzip member (which still
+ * makes the segment a regular gzip file). Next to each segment, a small index
+ * file stores the time range of the segment and the compressed offsets of its
+ * blocks, so any block can be read by decompressing only that block.<br/>
+ * <br/>
+ * Blocks are addressed by a continuous ID across all segments and the active
+ * log, which stays stable when old segments are rotated out or deleted. The ID
+ * of the first block of the active log is kept in its own small index file.<br/>
+ * <br/>
+ * A rotation writes the segment and its index before truncating the active
+ * log, and only then advances the ID of the active log. If it is interrupted
+ * in between, the already rotated blocks are recognized on startup, so no
+ * block ends up twice in the log.
+ */
+public class RotatingLogFile {
+  private final static String SEGMENT_SUFFIX = ".gz";
+  private final static String INDEX_SUFFIX = ".idx";
+  private final static String NO_TIMESTAMP = "-";
+  private final static DateTimeFormatter LOG_TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+  private final static int LOG_TIMESTAMP_LENGTH = "[yyyy-MM-dd HH:mm:ss]".length();
+
+  private final File file;
+  private final File directory;
+  private final IndexedLogFile activeLog;
+  private final long maxSizeBytes;
+  private final Duration maxAge;
+  private final Duration retention;
+  private final Consumer<Exception> errorHandler;
+
+  private final File activeIndexFile;
+  private final List<LogSegment> segments;
+  private int activeFirstBlockId;
+  private LocalDateTime activeLogStart;
+
+  /**
+   * @param file the active log file (segments are stored next to it)
+   * @param maxSizeBytes the size of the active log after which it is rotated (0 to disable)
+   * @param maxAge the age of the oldest entry of the active log after which it is rotated (0 to disable)
+   * @param retention the age after which segments are deleted (0 to keep them forever)
+   * @param errorHandler receives any failure to load the segments (which can't
+   *                     be written to the log itself)
+   */
+  public RotatingLogFile(File file, long maxSizeBytes, Duration maxAge, Duration retention, Consumer<Exception> errorHandler) {
+    this.file = file;
+    this.directory = file.getAbsoluteFile().getParentFile();
+    this.activeLog = new IndexedLogFile(file);
+    this.maxSizeBytes = maxSizeBytes;
+    this.maxAge = maxAge;
+    this.retention = retention;
+    this.errorHandler = errorHandler;
+    this.activeIndexFile = new File(directory, file.getName() + INDEX_SUFFIX);
+    this.segments = loadSegments();
+    this.activeFirstBlockId = loadActiveFirstBlockId();
+    deleteExpiredSegments();
+  }
+
+  /**
+   * Append the given lines to the active log and rotate it if necessary
+   *
+   * @param lines the lines to append (without line breaks)
+   */
+  public synchronized void append(List<String> lines) throws IOException {
+    activeLog.append(lines);
+    if (shouldRotate()) {
+      rotate();
+    }
+  }
+
+  /**
+   * Return the ID of the oldest block still available
+   */
+  public synchronized int getFirstBlockId() {
+    return segments.isEmpty() ? activeFirstBlockId : segments.get(0).firstBlockId;
+  }
+
+  /**
+   * Return the number of blocks ever written (since the log was last cleared),
+   * i.e. the ID the next block will receive
+   */
+  public synchronized int getBlockCount() throws IOException {
+    return activeFirstBlockId + activeLog.getBlockCount();
+  }
+
+  /**
+   * Return a version of the log, which changes whenever anything gets written to,
+   * rotated in, or cleared from it
+   */
+  public synchronized String getVersion() throws IOException {
+    return String.format("%x-%x-%x", activeFirstBlockId, activeLog.getIndexedLength(), getBlockCount());
+  }
+
+  /**
+   * Read the blocks within the given range, oldest first. Blocks in archived
+   * segments are decompressed individually, nothing outside the range is read.
+   *
+   * @param fromBlock the ID of the first block to read (inclusive)
+   * @param toBlock the ID of the last block to read (exclusive)
+   * @return the lines of the blocks
+   */
+  public synchronized List<List<String>> readBlocks(int fromBlock, int toBlock) throws IOException {
+    List<List<String>> blocks = new ArrayList<>();
+    for (LogSegment segment : segments) {
+      int from = Math.max(fromBlock, segment.firstBlockId);
+      int to = Math.min(toBlock, segment.firstBlockId + segment.getBlockCount());
+      if (from < to) {
+        blocks.addAll(segment.readBlocks(from - segment.firstBlockId, to - segment.firstBlockId));
+      }
+    }
+    if (toBlock > activeFirstBlockId) {
+      blocks.addAll(activeLog.readBlocks(Math.max(0, fromBlock - activeFirstBlockId), toBlock - activeFirstBlockId));
+    }
+    return blocks;
+  }
+
+  /**
+   * Delete the entire log, including all archived segments
+   *
+   * @return true if the log was cleared
+   */
+  public synchronized boolean clear() {
+    boolean cleared = true;
+    for (LogSegment segment : segments) {
+      cleared &= segment.delete();
+    }
+    segments.clear();
+    activeFirstBlockId = 0;
+    activeLogStart = null;
+    if (activeIndexFile.exists()) {
+      cleared &= activeIndexFile.delete();
+    }
+    return activeLog.clear() && cleared;
+  }
+
+  ////////////////////////////////
+
+  /**
+   * Read the ID of the first block of the active log from its index file, or
+   * derive it from the newest segment if the file is missing. If the stored ID
+   * doesn't account for the newest segment yet, the last rotation was
+   * interrupted: if the active log still starts with the blocks of that segment,
+   * it is truncated now (or, if it couldn't be truncated back then and has grown
+   * since, the segment is dropped to be rotated again).
+   */
+  private int loadActiveFirstBlockId() {
+    int storedFirstBlockId = -1;
+    if (activeIndexFile.exists()) {
+      try {
+        storedFirstBlockId = Integer.parseInt(Files.readString(activeIndexFile.toPath(), StandardCharsets.UTF_8).trim());
+      } catch (IOException | NumberFormatException e) {
+        errorHandler.accept(e);
+      }
+    }
+    if (segments.isEmpty()) {
+      return Math.max(storedFirstBlockId, 0);
+    }
+
+    LogSegment newestSegment = segments.get(segments.size() - 1);
+    int firstBlockIdAfterSegments = newestSegment.firstBlockId + newestSegment.getBlockCount();
+    if (storedFirstBlockId >= firstBlockIdAfterSegments) {
+      return storedFirstBlockId;
+    }
+    try {
+      if (startsWithBlocksOf(newestSegment)) {
+        if (activeLog.getBlockCount() > newestSegment.getBlockCount()) {
+          segments.remove(segments.size() - 1);
+          newestSegment.delete();
+          return newestSegment.firstBlockId;
+        }
+        if (!activeLog.clear()) {
+          throw new IOException("Couldn't truncate the already rotated active log " + file);
+        }
+      }
+      writeActiveFirstBlockId(firstBlockIdAfterSegments);
+    } catch (IOException e) {
+      errorHandler.accept(e);
+    }
+    return firstBlockIdAfterSegments;
+  }
+
+  /**
+   * Check if the active log starts with the same blocks as the given segment
+   * (comparing the first and last block of the segment)
+   */
+  private boolean startsWithBlocksOf(LogSegment segment) throws IOException {
+    int blockCount = segment.getBlockCount();
+    if (blockCount == 0 || activeLog.getBlockCount() < blockCount) {
+      return false;
+    }
+    return segment.readBlocks(0, 1).equals(activeLog.readBlocks(0, 1))
+      && segment.readBlocks(blockCount - 1, blockCount).equals(activeLog.readBlocks(blockCount - 1, blockCount));
+  }
+
+  private void writeActiveFirstBlockId(int firstBlockId) throws IOException {
+    File tempFile = new File(activeIndexFile.getPath() + ".tmp");
+    Files.writeString(tempFile.toPath(), Integer.toString(firstBlockId), StandardCharsets.UTF_8);
+    Files.move(tempFile.toPath(), activeIndexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private boolean shouldRotate() throws IOException {
+    if (!activeLog.isAtBlockBoundary() || activeLog.getBlockCount() == 0) {
+      return false;
+    }
+    if (maxSizeBytes > 0 && activeLog.getIndexedLength() >= maxSizeBytes) {
+      return true;
+    }
+    if (!maxAge.isZero() && !maxAge.isNegative()) {
+      LocalDateTime start = getActiveLogStart();
+      return start != null && start.isBefore(LocalDateTime.now().minus(maxAge));
+    }
+    return false;
+  }
+
+  private LocalDateTime getActiveLogStart() throws IOException {
+    if (activeLogStart == null) {
+      List<List<String>> firstBlock = activeLog.readBlocks(0, 1);
+      if (!firstBlock.isEmpty()) {
+        activeLogStart = findTimestamp(firstBlock.get(0), false);
+      }
+    }
+    return activeLogStart;
+  }
+
+  /**
+   * Move every block of the active log into a new compressed segment. The
+   * segment is synced to disk and indexed before the active log is truncated,
+   * and the ID of the active log is only advanced after that (see
+   * {@link RotatingLogFile#loadActiveFirstBlockId} for the recovery).
+   */
+  private void rotate() throws IOException {
+    int blockCount = activeLog.getBlockCount();
+    List<List<String>> blocks = activeLog.readBlocks(0, blockCount);
+    int firstBlockId = activeFirstBlockId;
+
+    File segmentFile = new File(directory, String.format("%s.%08d%s", file.getName(), firstBlockId, SEGMENT_SUFFIX));
+    long[] offsets = new long[blocks.size() + 1];
+    try (FileOutputStream out = new FileOutputStream(segmentFile)) {
+      for (int i = 0; i < blocks.size(); i++) {
+        byte[] compressedBlock = compress(blocks.get(i));
+        out.write(compressedBlock);
+        offsets[i + 1] = offsets[i] + compressedBlock.length;
+      }
+      out.getFD().sync();
+    }
+
+    LocalDateTime from = findTimestamp(blocks.get(0), false);
+    LocalDateTime to = findTimestamp(blocks.get(blocks.size() - 1), true);
+    LogSegment segment = new LogSegment(segmentFile, firstBlockId, from, to, offsets);
+    segment.writeIndex();
+    if (!activeLog.clear()) {
+      throw new IOException("Couldn't truncate the active log " + file + " after rotating it");
+    }
+    segments.add(segment);
+    activeFirstBlockId = firstBlockId + blocks.size();
+    activeLogStart = null;
+    writeActiveFirstBlockId(activeFirstBlockId);
+    deleteExpiredSegments();
+  }
+
+  private void deleteExpiredSegments() {
+    if (retention.isZero() || retention.isNegative()) {
+      return;
+    }
+    LocalDateTime threshold = LocalDateTime.now().minus(retention);
+    while (!segments.isEmpty() && segments.get(0).to != null && segments.get(0).to.isBefore(threshold)) {
+      segments.remove(0).delete();
+    }
+  }
+
+  private List<LogSegment> loadSegments() {
+    List<LogSegment> loadedSegments = new ArrayList<>();
+    String prefix = file.getName() + ".";
+    File[] indexFiles = directory != null
+      ? directory.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(SEGMENT_SUFFIX + INDEX_SUFFIX))
+      : null;
+    if (indexFiles != null) {
+      for (File indexFile : indexFiles) {
+        String indexFileName = indexFile.getName();
+        File segmentFile = new File(directory, indexFileName.substring(0, indexFileName.length() - INDEX_SUFFIX.length()));
+        try {
+          if (segmentFile.exists()) {
+            loadedSegments.add(LogSegment.readIndex(segmentFile, indexFile));
+          }
+        } catch (IOException | RuntimeException e) {
+          errorHandler.accept(e);
+        }
+      }
+    }
+    loadedSegments.sort(Comparator.comparingInt(segment -> segment.firstBlockId));
+    return loadedSegments;
+  }
+
+  private static byte[] compress(List<String> lines) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+      for (String line : lines) {
+        gzip.write(line.getBytes(StandardCharsets.UTF_8));
+        gzip.write('\n');
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static List<String> decompress(byte[] compressedBlock) throws IOException {
+    try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressedBlock))) {
+      String content = new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+      return List.of(content.split("\n"));
+    }
+  }
+
+  /**
+   * Find the first (or last) parseable log timestamp of the given block
+   */
+  private static LocalDateTime findTimestamp(List<String> block, boolean fromEnd) {
+    for (int i = 0; i < block.size(); i++) {
+      String line = block.get(fromEnd ? block.size() - 1 - i : i);
+      if (line.length() >= LOG_TIMESTAMP_LENGTH && line.charAt(0) == '[') {
+        try {
+          return LocalDateTime.parse(line.substring(1, LOG_TIMESTAMP_LENGTH - 1), LOG_TIMESTAMP_FORMAT);
+        } catch (DateTimeParseException e) {
+          // Not a timestamped line, keep looking
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * A single compressed segment along with its index
+   */
+  private static class LogSegment {
+    private final File segmentFile;
+    private final int firstBlockId;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final long[] offsets;
+
+    LogSegment(File segmentFile, int firstBlockId, LocalDateTime from, LocalDateTime to, long[] offsets) {
+      this.segmentFile = segmentFile;
+      this.firstBlockId = firstBlockId;
+      this.from = from;
+      this.to = to;
+      this.offsets = offsets;
+    }
+
+    int getBlockCount() {
+      return offsets.length - 1;
+    }
+
+    List<List<String>> readBlocks(int fromBlock, int toBlock) throws IOException {
+      List<List<String>> blocks = new ArrayList<>();
+      try (RandomAccessFile raf = new RandomAccessFile(segmentFile, "r")) {
+        for (int i = fromBlock; i < toBlock; i++) {
+          byte[] compressedBlock = new byte[(int) (offsets[i + 1] - offsets[i])];
+          raf.seek(offsets[i]);
+          raf.readFully(compressedBlock);
+          blocks.add(decompress(compressedBlock));
+        }
+      }
+      return blocks;
+    }
+
+    /**
+     * Write the index next to the segment. The first line contains the first
+     * block ID and the time range, followed by one block offset per line (plus the
+     * end offset of the last block).
+     */
+    void writeIndex() throws IOException {
+      File indexFile = getIndexFile(segmentFile);
+      File tempFile = new File(indexFile.getPath() + ".tmp");
+      try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+        writer.write(String.format("%d %s %s", firstBlockId, formatTimestamp(from), formatTimestamp(to)));
+        writer.newLine();
+        for (long offset : offsets) {
+          writer.write(Long.toString(offset));
+          writer.newLine();
+        }
+      }
+      Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static LogSegment readIndex(File segmentFile, File indexFile) throws IOException {
+      List<String> lines = Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8);
+      String[] header = lines.get(0).split(" ");
+      long[] offsets = lines.stream()
+        .skip(1)
+        .filter(line -> !line.isBlank())
+        .mapToLong(Long::parseLong)
+        .toArray();
+      return new LogSegment(segmentFile, Integer.parseInt(header[0]), parseTimestamp(header[1]), parseTimestamp(header[2]), offsets);
+    }
+
+    boolean delete() {
+      boolean deletedIndex = getIndexFile(segmentFile).delete();
+      return segmentFile.delete() && deletedIndex;
+    }
+
+    private static File getIndexFile(File segmentFile) {
+      return new File(segmentFile.getPath() + INDEX_SUFFIX);
+    }
+
+    private static String formatTimestamp(LocalDateTime timestamp) {
+      return timestamp != null ? timestamp.toString() : NO_TIMESTAMP;
+    }
+
+    private static LocalDateTime parseTimestamp(String timestamp) {
+      return NO_TIMESTAMP.equals(timestamp) ? null : LocalDateTime.parse(timestamp);
+    }
+  }
+}
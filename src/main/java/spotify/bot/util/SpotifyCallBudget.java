@@ -0,0 +1,277 @@
+package spotify.bot.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+import se.michaelthelin.spotify.model_objects.specification.Paging;
+import se.michaelthelin.spotify.model_objects.specification.PagingCursorbased;
+import se.michaelthelin.spotify.requests.IRequest;
+import spotify.api.SpotifyCall;
+import spotify.api.events.SpotifyApiException;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * Accounts every Spotify Web API call of the bot against the endpoint it went
+ * to and (where applicable) the artist or playlist that triggered it: calls,
+ * pages, returned items, latency and rate limit (429) responses. Totals are
+ * kept since startup. Per-endpoint latency is also fed into the metrics, while
+ * the per-artist/playlist accounting is only kept in memory (there are far too
+ * many of them for metric tags) and exposed through a top-K report.
+ */
+@Component
+public class SpotifyCallBudget {
+  private final static String ARTIST_SUBJECT_PREFIX = "artist:";
+  private final static String PLAYLIST_SUBJECT_PREFIX = "playlist:";
+  private final static double[] REPORTED_PERCENTILES = {0.5, 0.95, 0.99};
+
+  private final DiscoveryBotMetrics metrics;
+  private final long since;
+  private final Map<String, EndpointBudget> endpointBudgets;
+  private final Map<String, SubjectBudget> subjectBudgets;
+
+  public SpotifyCallBudget(DiscoveryBotMetrics metrics) {
+    this.metrics = metrics;
+    this.since = System.currentTimeMillis();
+    this.endpointBudgets = new ConcurrentHashMap<>();
+    this.subjectBudgets = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Return the subject key for calls triggered by the given artist (null if the
+   * artist is unknown)
+   */
+  public static String artist(String artistId) {
+    return artistId != null ? ARTIST_SUBJECT_PREFIX + artistId : null;
+  }
+
+  /**
+   * Return the subject key for calls triggered by the given playlist
+   */
+  public static String playlist(String playlistId) {
+    return PLAYLIST_SUBJECT_PREFIX + playlistId;
+  }
+
+  /**
+   * Execute the given request via {@link SpotifyCall#execute} and account for it
+   *
+   * @param endpoint the name of the endpoint (e.g. "artist_albums")
+   * @param subject the artist or playlist the call is attributed to (see
+   *                {@link SpotifyCallBudget#artist} and
+   *                {@link SpotifyCallBudget#playlist}), or null
+   * @param requestBuilder the request
+   * @return the result of the request
+   */
+  public <T, BT extends IRequest.Builder<T, ?>> T execute(String endpoint, String subject, IRequest.Builder<T, BT> requestBuilder) throws SpotifyApiException {
+    return account(endpoint, subject, () -> SpotifyCall.execute(requestBuilder));
+  }
+
+  /**
+   * Run the given call (e.g. a library service method that talks to the API
+   * itself) and account for it as a single call
+   *
+   * @param endpoint the name of the endpoint
+   * @param subject the artist or playlist the call is attributed to, or null
+   * @param call the call
+   * @return the result of the call
+   */
+  public <T> T account(String endpoint, String subject, Supplier<T> call) throws SpotifyApiException {
+    long start = System.nanoTime();
+    try {
+      T result = call.get();
+      long latencyNanos = System.nanoTime() - start;
+      record(endpoint, subject, latencyNanos, result, false);
+      metrics.recordSpotifyCall(endpoint, latencyNanos, true);
+      return result;
+    } catch (SpotifyApiException e) {
+      long latencyNanos = System.nanoTime() - start;
+      boolean rateLimited = e.getNestedException() instanceof TooManyRequestsException;
+      record(endpoint, subject, latencyNanos, null, rateLimited);
+      metrics.recordSpotifyCall(endpoint, latencyNanos, false);
+      if (rateLimited) {
+        metrics.recordSpotifyRateLimit(endpoint);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Compile the report of all calls since startup: the totals by endpoint
+   * (including latency percentiles) and the top artists/playlists by number of
+   * calls
+   *
+   * @param topK the number of artists/playlists to include
+   * @return the report
+   */
+  public Map<String, Object> getReport(int topK) {
+    Map<String, Object> endpoints = new LinkedHashMap<>();
+    endpointBudgets.entrySet().stream()
+      .sorted(Map.Entry.comparingByKey())
+      .forEach(entry -> endpoints.put(entry.getKey(), entry.getValue().toMap()));
+
+    Comparator<Map.Entry<String, SubjectBudget>> byCost = Comparator
+      .comparingLong((Map.Entry<String, SubjectBudget> e) -> e.getValue().calls.sum())
+      .thenComparingLong(e -> e.getValue().latencyNanos.sum());
+    PriorityQueue<Map.Entry<String, SubjectBudget>> topSubjects = new PriorityQueue<>(byCost);
+    for (Map.Entry<String, SubjectBudget> entry : subjectBudgets.entrySet()) {
+      topSubjects.add(entry);
+      if (topSubjects.size() > topK) {
+        topSubjects.poll();
+      }
+    }
+    List<Map<String, Object>> top = new ArrayList<>();
+    while (!topSubjects.isEmpty()) {
+      Map.Entry<String, SubjectBudget> entry = topSubjects.poll();
+      Map<String, Object> subject = new LinkedHashMap<>();
+      subject.put("subject", entry.getKey());
+      subject.putAll(entry.getValue().toMap());
+      top.add(0, subject);
+    }
+
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("since", since);
+    report.put("endpoints", endpoints);
+    report.put("subjects", subjectBudgets.size());
+    report.put("top", top);
+    return report;
+  }
+
+  ////////////////////////////////
+
+  private void record(String endpoint, String subject, long latencyNanos, Object result, boolean rateLimited) {
+    boolean paged = result instanceof Paging || result instanceof PagingCursorbased;
+    int items = countItems(result);
+
+    EndpointBudget endpointBudget = endpointBudgets.computeIfAbsent(endpoint, e -> new EndpointBudget());
+    endpointBudget.record(latencyNanos, paged, items, result == null, rateLimited);
+    if (subject != null) {
+      SubjectBudget subjectBudget = subjectBudgets.computeIfAbsent(subject, s -> new SubjectBudget());
+      subjectBudget.record(latencyNanos, paged, items, result == null, rateLimited);
+      subjectBudget.callsByEndpoint.computeIfAbsent(endpoint, e -> new LongAdder()).increment();
+    }
+  }
+
+  private int countItems(Object result) {
+    if (result instanceof Paging) {
+      Object[] items = ((Paging<?>) result).getItems();
+      return items != null ? items.length : 0;
+    } else if (result instanceof PagingCursorbased) {
+      Object[] items = ((PagingCursorbased<?>) result).getItems();
+      return items != null ? items.length : 0;
+    } else if (result instanceof Object[]) {
+      return ((Object[]) result).length;
+    } else if (result instanceof AlbumTrackPair) {
+      List<?> tracks = ((AlbumTrackPair) result).getTracks();
+      return tracks != null ? tracks.size() : 0;
+    }
+    return result != null ? 1 : 0;
+  }
+
+  private static class SubjectBudget {
+    final LongAdder calls = new LongAdder();
+    final LongAdder pages = new LongAdder();
+    final LongAdder items = new LongAdder();
+    final LongAdder failures = new LongAdder();
+    final LongAdder rateLimited = new LongAdder();
+    final LongAdder latencyNanos = new LongAdder();
+    final Map<String, LongAdder> callsByEndpoint = new ConcurrentHashMap<>();
+
+    void record(long latencyNanos, boolean paged, int items, boolean failed, boolean rateLimited) {
+      this.calls.increment();
+      this.latencyNanos.add(latencyNanos);
+      this.items.add(items);
+      if (paged) {
+        this.pages.increment();
+      }
+      if (failed) {
+        this.failures.increment();
+      }
+      if (rateLimited) {
+        this.rateLimited.increment();
+      }
+    }
+
+    Map<String, Object> toMap() {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("calls", calls.sum());
+      map.put("pages", pages.sum());
+      map.put("items", items.sum());
+      map.put("failures", failures.sum());
+      map.put("rateLimited", rateLimited.sum());
+      map.put("totalLatencyMs", TimeUnit.NANOSECONDS.toMillis(latencyNanos.sum()));
+      if (!callsByEndpoint.isEmpty()) {
+        Map<String, Long> byEndpoint = new LinkedHashMap<>();
+        callsByEndpoint.forEach((endpoint, count) -> byEndpoint.put(endpoint, count.sum()));
+        map.put("callsByEndpoint", byEndpoint);
+      }
+      return map;
+    }
+  }
+
+  private static class EndpointBudget extends SubjectBudget {
+    final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+    @Override
+    void record(long latencyNanos, boolean paged, int items, boolean failed, boolean rateLimited) {
+      super.record(latencyNanos, paged, items, failed, rateLimited);
+      latencyHistogram.record(latencyNanos);
+    }
+
+    @Override
+    Map<String, Object> toMap() {
+      Map<String, Object> map = super.toMap();
+      for (double percentile : REPORTED_PERCENTILES) {
+        map.put(String.format("p%dMs", Math.round(percentile * 100)), latencyHistogram.percentileMillis(percentile));
+      }
+      return map;
+    }
+  }
+
+  /**
+   * A fixed-size latency histogram with exponentially growing buckets (four per
+   * doubling, from 1ms up to roughly 17 minutes). Percentiles are reported as
+   * the upper bound of their bucket, i.e. with an error of at most 19%.
+   */
+  private static class LatencyHistogram {
+    private final static int BUCKETS_PER_DOUBLING = 4;
+    private final static int BUCKET_COUNT = 20 * BUCKETS_PER_DOUBLING + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    void record(long latencyNanos) {
+      double millis = latencyNanos / 1_000_000.0;
+      int bucket = millis <= 1 ? 0 : (int) Math.ceil(BUCKETS_PER_DOUBLING * Math.log(millis) / Math.log(2));
+      counts.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+    }
+
+    long percentileMillis(double percentile) {
+      long total = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        total += counts.get(i);
+      }
+      if (total == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(percentile * total);
+      long seen = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        seen += counts.get(i);
+        if (seen >= rank) {
+          return Math.round(Math.pow(2, (double) i / BUCKETS_PER_DOUBLING));
+        }
+      }
+      return Math.round(Math.pow(2, (double) (BUCKET_COUNT - 1) / BUCKETS_PER_DOUBLING));
+    }
+  }
+}
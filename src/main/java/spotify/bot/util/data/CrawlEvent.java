@@ -0,0 +1,55 @@
+package spotify.bot.util.data;
+
+import java.util.Map;
+
+/**
+ * A structured event about the progress of a crawl. Events are numbered by a
+ * sequence ID that increases by one with every published event.
+ */
+public class CrawlEvent {
+	public enum Type {
+		CRAWL_START,
+		CRAWL_END,
+		PHASE_START,
+		PHASE_END,
+		ARTIST_PROGRESS,
+		RELEASES_ADDED,
+		RELEASES_DROPPED;
+
+		/**
+		 * Return the name of this type as used for the event name of a
+		 * server-sent event (e.g. "phase_start")
+		 */
+		public String getEventName() {
+			return name().toLowerCase();
+		}
+	}
+
+	private final long id;
+	private final Type type;
+	private final long timestamp;
+	private final Map<String, Object> data;
+
+	public CrawlEvent(long id, Type type, long timestamp, Map<String, Object> data) {
+		this.id = id;
+		this.type = type;
+		this.timestamp = timestamp;
+		this.data = data;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public Map<String, Object> getData() {
+		return data;
+	}
+}
@@ -0,0 +1,224 @@
+package spotify.bot.util.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * The trace of a single crawl: a tree of timed spans (the crawl itself, its
+ * phases and the individual requests within them), each with a set of
+ * attributes. Spans may be added from any thread.
+ */
+public class CrawlTrace {
+	private final long id;
+	private final long startMillis;
+	private final long startNanos;
+	private final int maxSpans;
+
+	private final List<Span> spans;
+	private int nextSpanId;
+	private int droppedSpans;
+
+	public CrawlTrace(long startMillis, int maxSpans) {
+		this.id = startMillis;
+		this.startMillis = startMillis;
+		this.startNanos = System.nanoTime();
+		this.maxSpans = maxSpans;
+		this.spans = new ArrayList<>();
+		this.nextSpanId = 0;
+		this.droppedSpans = 0;
+	}
+
+	/**
+	 * A single timed operation within a trace. Attributes may be set until the span
+	 * is ended.
+	 */
+	public static class Span {
+		private final int id;
+		private final Span parent;
+		private final String name;
+		private final String thread;
+		private final long threadId;
+		private final long startNanos;
+		private final Map<String, Object> attributes;
+		private long durationNanos;
+
+		private Span(int id, Span parent, String name, long startNanos) {
+			this.id = id;
+			this.parent = parent;
+			this.name = name;
+			this.thread = Thread.currentThread().getName();
+			this.threadId = Thread.currentThread().getId();
+			this.startNanos = startNanos;
+			this.attributes = new LinkedHashMap<>();
+			this.durationNanos = -1;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public Span getParent() {
+			return parent;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public synchronized Span setAttribute(String key, Object value) {
+			attributes.put(key, value);
+			return this;
+		}
+
+		/**
+		 * Increase the given numeric attribute by one (starting at zero)
+		 */
+		public synchronized void incrementAttribute(String key) {
+			attributes.merge(key, 1, (a, b) -> ((Number) a).intValue() + 1);
+		}
+
+		public synchronized void end() {
+			if (durationNanos < 0) {
+				durationNanos = System.nanoTime() - startNanos;
+			}
+		}
+
+		public synchronized long getDurationNanos() {
+			return durationNanos;
+		}
+
+		private synchronized Map<String, Object> getAttributes() {
+			return new LinkedHashMap<>(attributes);
+		}
+	}
+
+	/**
+	 * Start a new span. Once the maximum number of spans is reached, the span is
+	 * still returned (so callers don't need to care), but isn't part of the trace.
+	 *
+	 * @param parent the parent span (null for the root span)
+	 * @param name the name of the span
+	 * @return the started span
+	 */
+	public synchronized Span startSpan(Span parent, String name) {
+		Span span = new Span(nextSpanId++, parent, name, System.nanoTime());
+		if (spans.size() < maxSpans) {
+			spans.add(span);
+		} else {
+			droppedSpans++;
+		}
+		return span;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	/**
+	 * Return the root span of this trace, i.e. the crawl itself (null if no span was started yet)
+	 */
+	public synchronized Span getRootSpan() {
+		return spans.isEmpty() ? null : spans.get(0);
+	}
+
+	public synchronized int getSpanCount() {
+		return spans.size();
+	}
+
+	public synchronized int getDroppedSpans() {
+		return droppedSpans;
+	}
+
+	/**
+	 * Return a short summary of this trace (without the spans)
+	 */
+	public synchronized Map<String, Object> getSummary() {
+		Map<String, Object> summary = new LinkedHashMap<>();
+		summary.put("id", id);
+		summary.put("start", startMillis);
+		Span rootSpan = getRootSpan();
+		if (rootSpan != null) {
+			summary.put("durationMs", TimeUnit.NANOSECONDS.toMillis(Math.max(0, rootSpan.getDurationNanos())));
+			summary.putAll(rootSpan.getAttributes());
+		}
+		summary.put("spans", spans.size());
+		summary.put("droppedSpans", droppedSpans);
+		return summary;
+	}
+
+	/**
+	 * Export this trace in the Trace Event Format (as used by chrome://tracing and
+	 * Perfetto). Every span becomes a complete event ("X") on the lane of the
+	 * thread it was started on. Spans that haven't ended yet are cut off at the
+	 * time of the export.
+	 */
+	public synchronized JsonObject toTraceEventJson() {
+		JsonArray traceEvents = new JsonArray();
+		Map<Long, String> threadNames = new HashMap<>();
+		long now = System.nanoTime();
+		for (Span span : spans) {
+			threadNames.putIfAbsent(span.threadId, span.thread);
+			long durationNanos = span.getDurationNanos() >= 0 ? span.getDurationNanos() : now - span.startNanos;
+
+			JsonObject args = new JsonObject();
+			args.addProperty("spanId", span.id);
+			if (span.parent != null) {
+				args.addProperty("parentId", span.parent.id);
+			}
+			for (Map.Entry<String, Object> attribute : span.getAttributes().entrySet()) {
+				Object value = attribute.getValue();
+				if (value instanceof Number) {
+					args.addProperty(attribute.getKey(), (Number) value);
+				} else if (value instanceof Boolean) {
+					args.addProperty(attribute.getKey(), (Boolean) value);
+				} else {
+					args.addProperty(attribute.getKey(), String.valueOf(value));
+				}
+			}
+
+			JsonObject event = new JsonObject();
+			event.addProperty("name", span.name);
+			event.addProperty("cat", "crawl");
+			event.addProperty("ph", "X");
+			event.addProperty("ts", TimeUnit.NANOSECONDS.toMicros(span.startNanos - startNanos));
+			event.addProperty("dur", TimeUnit.NANOSECONDS.toMicros(durationNanos));
+			event.addProperty("pid", 1);
+			event.addProperty("tid", span.threadId);
+			event.add("args", args);
+			traceEvents.add(event);
+		}
+		for (Map.Entry<Long, String> threadName : threadNames.entrySet()) {
+			JsonObject args = new JsonObject();
+			args.addProperty("name", threadName.getValue());
+			JsonObject event = new JsonObject();
+			event.addProperty("name", "thread_name");
+			event.addProperty("ph", "M");
+			event.addProperty("pid", 1);
+			event.addProperty("tid", threadName.getKey());
+			event.add("args", args);
+			traceEvents.add(event);
+		}
+
+		JsonObject metadata = new JsonObject();
+		metadata.addProperty("traceId", id);
+		metadata.addProperty("startMillis", startMillis);
+		metadata.addProperty("droppedSpans", droppedSpans);
+
+		JsonObject json = new JsonObject();
+		json.add("traceEvents", traceEvents);
+		json.addProperty("displayTimeUnit", "ms");
+		json.add("otherData", metadata);
+		return json;
+	}
+}
@@ -0,0 +1,138 @@
+package spotify.bot.util.data;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe set of Strings that only stores a 64-bit fingerprint of each
+ * entry in a primitive open-addressing table. Memory usage is therefore a fixed
+ * eight bytes per slot, independent of the lengths of the stored Strings. The
+ * price is a negligible chance of false positives when two Strings share the
+ * same fingerprint (roughly n² / 2^65 for n entries).
+ */
+public class FingerprintSet {
+	private final static int INITIAL_CAPACITY = 1 << 12;
+	private final static double MAX_LOAD_FACTOR = 0.6;
+
+	/**
+	 * Marks an empty slot. A String whose fingerprint happens to be this exact
+	 * value gets remapped to {@link FingerprintSet#EMPTY_REPLACEMENT}.
+	 */
+	private final static long EMPTY = 0L;
+	private final static long EMPTY_REPLACEMENT = 1L;
+
+	private final ReadWriteLock lock;
+	private long[] slots;
+	private int size;
+
+	public FingerprintSet() {
+		this.lock = new ReentrantReadWriteLock();
+		this.slots = new long[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Add the given String to the set
+	 *
+	 * @param string the String
+	 * @return true if it wasn't part of the set yet
+	 */
+	public boolean add(String string) {
+		long fingerprint = fingerprint(string);
+		lock.writeLock().lock();
+		try {
+			if (size + 1 > slots.length * MAX_LOAD_FACTOR) {
+				resize();
+			}
+			if (insert(slots, fingerprint)) {
+				size++;
+				return true;
+			}
+			return false;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Check if the given String is (very likely) part of the set
+	 *
+	 * @param string the String
+	 * @return true if the fingerprint of the String is part of the set
+	 */
+	public boolean contains(String string) {
+		long fingerprint = fingerprint(string);
+		lock.readLock().lock();
+		try {
+			int mask = slots.length - 1;
+			for (int i = spread(fingerprint) & mask; ; i = (i + 1) & mask) {
+				long slot = slots[i];
+				if (slot == fingerprint) {
+					return true;
+				} else if (slot == EMPTY) {
+					return false;
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Return the number of stored fingerprints
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void resize() {
+		long[] newSlots = new long[slots.length * 2];
+		for (long slot : slots) {
+			if (slot != EMPTY) {
+				insert(newSlots, slot);
+			}
+		}
+		slots = newSlots;
+	}
+
+	private static boolean insert(long[] table, long fingerprint) {
+		int mask = table.length - 1;
+		for (int i = spread(fingerprint) & mask; ; i = (i + 1) & mask) {
+			long slot = table[i];
+			if (slot == fingerprint) {
+				return false;
+			} else if (slot == EMPTY) {
+				table[i] = fingerprint;
+				return true;
+			}
+		}
+	}
+
+	private static int spread(long fingerprint) {
+		return (int) (fingerprint ^ (fingerprint >>> 32));
+	}
+
+	/**
+	 * Compute the 64-bit fingerprint of a String (FNV-1a over the UTF-16 chars,
+	 * finalized with the SplitMix64 mixer to spread the bits)
+	 *
+	 * @param string the String
+	 * @return the fingerprint, never {@link FingerprintSet#EMPTY}
+	 */
+	static long fingerprint(String string) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < string.length(); i++) {
+			hash ^= string.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+		hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+		hash = hash ^ (hash >>> 31);
+		return hash == EMPTY ? EMPTY_REPLACEMENT : hash;
+	}
+}
@@ -0,0 +1,49 @@
+package spotify.bot.util.data;
+
+/**
+ * A single release waiting in the forwarder outbox to be delivered. Messages
+ * are keyed by album ID, so every release is only forwarded once.
+ */
+public class ForwarderMessage {
+	private final String albumId;
+	private final String message;
+	private final int attempts;
+	private final long nextAttemptAt;
+
+	public ForwarderMessage(String albumId, String message, int attempts, long nextAttemptAt) {
+		this.albumId = albumId;
+		this.message = message;
+		this.attempts = attempts;
+		this.nextAttemptAt = nextAttemptAt;
+	}
+
+	public String getAlbumId() {
+		return albumId;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Return the number of failed delivery attempts so far
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * Return the timestamp before which no further delivery is attempted
+	 */
+	public long getNextAttemptAt() {
+		return nextAttemptAt;
+	}
+
+	/**
+	 * Return a copy of this message with one more failed attempt, to be retried at
+	 * the given time
+	 */
+	public ForwarderMessage withFailedAttempt(long nextAttemptAt) {
+		return new ForwarderMessage(albumId, message, attempts + 1, nextAttemptAt);
+	}
+}
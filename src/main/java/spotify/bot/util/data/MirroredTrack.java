@@ -0,0 +1,31 @@
+package spotify.bot.util.data;
+
+import java.util.Date;
+
+/**
+ * A single item of a {@link PlaylistMirror}. ID and URI may be null for items
+ * that are no longer available on Spotify.
+ */
+public class MirroredTrack {
+	private final String id;
+	private final String uri;
+	private final Date addedAt;
+
+	public MirroredTrack(String id, String uri, Date addedAt) {
+		this.id = id;
+		this.uri = uri;
+		this.addedAt = addedAt;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getUri() {
+		return uri;
+	}
+
+	public Date getAddedAt() {
+		return addedAt;
+	}
+}
@@ -0,0 +1,15 @@
+package spotify.bot.util.data;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Fired whenever at least one playlist received a [NEW] notifier, i.e. there
+ * is a notifier pending to be cleared again
+ */
+public class NotifiersShownEvent extends ApplicationEvent {
+	private static final long serialVersionUID = 1L;
+
+	public NotifiersShownEvent(Object source) {
+		super(source);
+	}
+}
@@ -0,0 +1,47 @@
+package spotify.bot.util.data;
+
+/**
+ * A single intended playlist addition of the write-ahead playlist journal.
+ * Entries are keyed by playlist ID and track URI.
+ */
+public class PlaylistJournalEntry {
+	private final String playlistId;
+	private final String trackId;
+	private final String trackUri;
+	private final long journaledAt;
+	private final int sequence;
+
+	public PlaylistJournalEntry(String playlistId, String trackId, String trackUri, long journaledAt, int sequence) {
+		this.playlistId = playlistId;
+		this.trackId = trackId;
+		this.trackUri = trackUri;
+		this.journaledAt = journaledAt;
+		this.sequence = sequence;
+	}
+
+	public String getPlaylistId() {
+		return playlistId;
+	}
+
+	public String getTrackId() {
+		return trackId;
+	}
+
+	public String getTrackUri() {
+		return trackUri;
+	}
+
+	/**
+	 * Return the timestamp of the crawl that journaled this entry
+	 */
+	public long getJournaledAt() {
+		return journaledAt;
+	}
+
+	/**
+	 * Return the index of this entry within the additions journaled together
+	 */
+	public int getSequence() {
+		return sequence;
+	}
+}
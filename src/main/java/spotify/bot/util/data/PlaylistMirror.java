@@ -0,0 +1,122 @@
+package spotify.bot.util.data;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable local copy of a playlist's items (in playlist order, i.e. the
+ * index of a track is its position) together with the snapshot ID of the
+ * playlist version they represent.<br/>
+ * <br/>
+ * Every track also carries a sort key, under which it is stored in the
+ * database. The sort keys ascend in playlist order, but aren't necessarily
+ * contiguous: tracks inserted at the top get keys below the current lowest one
+ * and removed tracks leave gaps, so neither changes the keys of any other
+ * track. This way only the changed rows have to be written.
+ */
+public class PlaylistMirror {
+	private final String playlistId;
+	private final String snapshotId;
+	private final List<MirroredTrack> tracks;
+	private final List<Integer> sortKeys;
+
+	/**
+	 * Create a mirror with contiguous sort keys (i.e. the positions)
+	 */
+	public PlaylistMirror(String playlistId, String snapshotId, List<MirroredTrack> tracks) {
+		this(playlistId, snapshotId, tracks, contiguousSortKeys(0, tracks.size()));
+	}
+
+	public PlaylistMirror(String playlistId, String snapshotId, List<MirroredTrack> tracks, List<Integer> sortKeys) {
+		if (tracks.size() != sortKeys.size()) {
+			throw new IllegalArgumentException("Every track needs exactly one sort key");
+		}
+		this.playlistId = playlistId;
+		this.snapshotId = snapshotId;
+		this.tracks = List.copyOf(tracks);
+		this.sortKeys = List.copyOf(sortKeys);
+	}
+
+	public String getPlaylistId() {
+		return playlistId;
+	}
+
+	public String getSnapshotId() {
+		return snapshotId;
+	}
+
+	public List<MirroredTrack> getTracks() {
+		return tracks;
+	}
+
+	public List<Integer> getSortKeys() {
+		return sortKeys;
+	}
+
+	public int size() {
+		return tracks.size();
+	}
+
+	/**
+	 * Find the positions of the bottommost tracks that can be removed, i.e. those
+	 * with a URI. Unavailable items without a URI can't be addressed by the API,
+	 * so they are skipped and don't count towards the given number.
+	 *
+	 * @param count the number of tracks to remove
+	 * @return the positions of at most that many removable tracks
+	 */
+	public Set<Integer> removablePositionsFromBottom(int count) {
+		Set<Integer> positions = new HashSet<>();
+		for (int position = tracks.size() - 1; position >= 0 && positions.size() < count; position--) {
+			if (tracks.get(position).getUri() != null) {
+				positions.add(position);
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Return a copy of this mirror with the given tracks inserted at the top
+	 *
+	 * @param newSnapshotId the snapshot ID after the insertion
+	 * @param insertedTracks the inserted tracks, in their resulting order
+	 * @return the updated mirror
+	 */
+	public PlaylistMirror withInsertionAtTop(String newSnapshotId, List<MirroredTrack> insertedTracks) {
+		int lowestSortKey = sortKeys.isEmpty() ? 0 : sortKeys.get(0);
+		List<MirroredTrack> updatedTracks = new ArrayList<>(insertedTracks);
+		updatedTracks.addAll(tracks);
+		List<Integer> updatedSortKeys = contiguousSortKeys(lowestSortKey - insertedTracks.size(), insertedTracks.size());
+		updatedSortKeys.addAll(sortKeys);
+		return new PlaylistMirror(playlistId, newSnapshotId, updatedTracks, updatedSortKeys);
+	}
+
+	/**
+	 * Return a copy of this mirror without the tracks at the given positions
+	 *
+	 * @param newSnapshotId the snapshot ID after the removal
+	 * @param positions the positions of the removed tracks
+	 * @return the updated mirror
+	 */
+	public PlaylistMirror withoutPositions(String newSnapshotId, Set<Integer> positions) {
+		List<MirroredTrack> remainingTracks = new ArrayList<>();
+		List<Integer> remainingSortKeys = new ArrayList<>();
+		for (int position = 0; position < tracks.size(); position++) {
+			if (!positions.contains(position)) {
+				remainingTracks.add(tracks.get(position));
+				remainingSortKeys.add(sortKeys.get(position));
+			}
+		}
+		return new PlaylistMirror(playlistId, newSnapshotId, remainingTracks, remainingSortKeys);
+	}
+
+	private static List<Integer> contiguousSortKeys(int from, int count) {
+		List<Integer> keys = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			keys.add(from + i);
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,149 @@
+package spotify.controller;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import spotify.bot.util.CrawlEventBus;
+import spotify.bot.util.data.CrawlEvent;
+
+@RestController
+@Component
+public class CrawlEventsController {
+  private final static long EMITTER_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+  private final static long HEARTBEAT_INTERVAL = TimeUnit.SECONDS.toMillis(20);
+  private final static String GAP_EVENT_NAME = "gap";
+
+  private final CrawlEventBus crawlEventBus;
+
+  private final List<Subscriber> subscribers;
+  private final ScheduledExecutorService dispatchExecutor;
+  private final AtomicBoolean dispatchPending;
+
+  CrawlEventsController(CrawlEventBus crawlEventBus) {
+    this.crawlEventBus = crawlEventBus;
+    this.subscribers = new CopyOnWriteArrayList<>();
+    this.dispatchExecutor = Executors.newSingleThreadScheduledExecutor();
+    this.dispatchPending = new AtomicBoolean(false);
+    this.dispatchExecutor.scheduleWithFixedDelay(this::sendHeartbeats, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+    crawlEventBus.addListener(this::requestDispatch);
+  }
+
+  /**
+   * Stream the crawl events as server-sent events. Every event carries its
+   * sequence ID, so a reconnecting EventSource resumes right after the last event
+   * it received (via the Last-Event-ID header), as long as that event is still
+   * buffered. New clients start at the beginning of the crawl currently in
+   * progress, if any.<br/>
+   * <br/>
+   * Events are sent on a separate dispatcher thread, never on the crawler's. If a
+   * client falls so far behind that events were overwritten before it received
+   * them, it gets a "gap" event with the number of missed events.
+   *
+   * @param lastEventId (optional) the ID of the last event the client received
+   * @return the event stream
+   */
+  @GetMapping(value = "/crawlevents", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamCrawlEvents(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+    long nextId;
+    if (lastEventId != null) {
+      nextId = lastEventId + 1;
+    } else {
+      Long currentCrawlStartId = crawlEventBus.getCurrentCrawlStartId();
+      nextId = currentCrawlStartId != null ? currentCrawlStartId : crawlEventBus.getNextId();
+    }
+
+    SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT);
+    Subscriber subscriber = new Subscriber(emitter, nextId);
+    emitter.onCompletion(() -> subscribers.remove(subscriber));
+    emitter.onTimeout(() -> subscribers.remove(subscriber));
+    emitter.onError(e -> subscribers.remove(subscriber));
+    subscribers.add(subscriber);
+    requestDispatch();
+    return emitter;
+  }
+
+  /**
+   * Hand the dispatching over to the dispatcher thread, unless a dispatch is
+   * already pending (which will pick up the new events as well)
+   */
+  private void requestDispatch() {
+    if (dispatchPending.compareAndSet(false, true)) {
+      dispatchExecutor.execute(this::dispatch);
+    }
+  }
+
+  private void dispatch() {
+    dispatchPending.set(false);
+    for (Subscriber subscriber : subscribers) {
+      try {
+        List<CrawlEvent> events = crawlEventBus.getEventsSince(subscriber.nextId);
+        if (!events.isEmpty() && events.get(0).getId() > subscriber.nextId) {
+          long missedEvents = events.get(0).getId() - subscriber.nextId;
+          subscriber.emitter.send(SseEmitter.event()
+            .name(GAP_EVENT_NAME)
+            .data(Map.of("missed", missedEvents), MediaType.APPLICATION_JSON));
+        }
+        for (CrawlEvent event : events) {
+          subscriber.emitter.send(SseEmitter.event()
+            .id(String.valueOf(event.getId()))
+            .name(event.getType().getEventName())
+            .data(event, MediaType.APPLICATION_JSON));
+          subscriber.nextId = event.getId() + 1;
+        }
+      } catch (IOException | IllegalStateException e) {
+        dropSubscriber(subscriber);
+      }
+    }
+  }
+
+  /**
+   * Send a comment to every client, which keeps idle connections open and
+   * detects the ones that were closed on the other side
+   */
+  private void sendHeartbeats() {
+    for (Subscriber subscriber : subscribers) {
+      try {
+        subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+      } catch (IOException | IllegalStateException e) {
+        dropSubscriber(subscriber);
+      }
+    }
+  }
+
+  private void dropSubscriber(Subscriber subscriber) {
+    subscribers.remove(subscriber);
+    subscriber.emitter.complete();
+  }
+
+  @PreDestroy
+  public void shutdownCrawlEvents() {
+    dispatchExecutor.shutdownNow();
+    subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    subscribers.clear();
+  }
+
+  private static class Subscriber {
+    private final SseEmitter emitter;
+    private long nextId;
+
+    Subscriber(SseEmitter emitter, long nextId) {
+      this.emitter = emitter;
+      this.nextId = nextId;
+    }
+  }
+}
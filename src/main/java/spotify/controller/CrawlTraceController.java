@@ -0,0 +1,52 @@
+package spotify.controller;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import spotify.bot.util.CrawlTracer;
+
+@RestController
+@Component
+public class CrawlTraceController {
+  private final CrawlTracer crawlTracer;
+
+  CrawlTraceController(CrawlTracer crawlTracer) {
+    this.crawlTracer = crawlTracer;
+  }
+
+  /**
+   * List the traces of the most recent crawls (oldest first)
+   *
+   * @return the summaries of the traces, each containing its ID
+   */
+  @GetMapping("/traces")
+  public List<Map<String, Object>> listTraces() {
+    return crawlTracer.getTraceSummaries();
+  }
+
+  /**
+   * Return a single trace in the Trace Event Format, which can be loaded into
+   * chrome://tracing or Perfetto as it is
+   *
+   * @param traceId the ID of the trace
+   * @return a ResponseEntity containing the trace, or 404 if there is no such trace
+   */
+  @GetMapping("/traces/{traceId}")
+  public ResponseEntity<String> showTrace(@PathVariable long traceId) throws IOException {
+    String traceJson = crawlTracer.getTraceJson(traceId);
+    if (traceJson == null) {
+      return ResponseEntity.notFound().build();
+    }
+    return ResponseEntity.ok()
+      .contentType(MediaType.APPLICATION_JSON)
+      .body(traceJson);
+  }
+}
@@ -1,65 +1,154 @@
 package spotify.controller;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.EnableScheduling;
-import org.springframework.scheduling.annotation.SchedulingConfigurer;
-import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.ModelAndView;
 
 import spotify.api.events.SpotifyApiException;
 import spotify.bot.DiscoveryBotCrawler;
 import spotify.bot.properties.FeatureControl;
+import spotify.bot.util.AdaptivePollInterval;
 import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.data.NotifiersShownEvent;
 import spotify.util.SpotifyUtils;
 
 @RestController
 @Component
-@EnableScheduling
-public class MiscController implements SchedulingConfigurer {
+public class MiscController {
 
   private final static int CLEAR_NOTIFIERS_INTERVAL = 10 * 1000;
+  private final static int CLEAR_NOTIFIERS_MAX_INTERVAL = 5 * 60 * 1000;
+  private final static long CLEAR_NOTIFIERS_REPORT_INTERVAL = TimeUnit.DAYS.toMillis(1);
   private final static int SHUTDOWN_RETRY_SLEEP = 10 * 1000;
+  private final static String LOG_BLOCKS_NEXT_HEADER = "X-Log-Blocks-Before";
+  private final static String LOG_BLOCKS_NEWEST_HEADER = "X-Log-Blocks-Newest";
 
   private final DiscoveryBotCrawler crawler;
   private final DiscoveryBotLogger log;
   private final FeatureControl featureControl;
 
+  private final ScheduledExecutorService notifierPollExecutor;
+  private final AdaptivePollInterval notifierPollInterval;
+  private ScheduledFuture<?> nextNotifierPoll;
+  private long nextNotifierPollDelayMs;
+  private long lastNotifierPollReport;
+
   MiscController(DiscoveryBotCrawler discoveryBotCrawler, DiscoveryBotLogger botLogger, FeatureControl featureControl) {
     this.crawler = discoveryBotCrawler;
     this.log = botLogger;
     this.featureControl = featureControl;
+    this.notifierPollExecutor = Executors.newSingleThreadScheduledExecutor();
+    this.notifierPollInterval = new AdaptivePollInterval(CLEAR_NOTIFIERS_INTERVAL, CLEAR_NOTIFIERS_MAX_INTERVAL);
+    this.lastNotifierPollReport = System.currentTimeMillis();
   }
 
   /////////////////
   // Notifiers
 
-  @Override
-  public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
-    if (featureControl.isAutoClearNotifications() && featureControl.isPlaylistMetaEnabled()) {
-      taskRegistrar.addFixedDelayTask(this::clearNewIndicatorScheduler, CLEAR_NOTIFIERS_INTERVAL);
+  /**
+   * Start the notifier polling
+   */
+  @PostConstruct
+  public synchronized void startNotifierPolling() {
+    if (isNotifierPollingEnabled()) {
+      scheduleNextNotifierPoll(CLEAR_NOTIFIERS_INTERVAL);
     }
   }
 
   /**
-   * Periodic task running every 10 seconds to remove the [NEW] indicator where
-   * applicable. Will only run while crawler is idle.
-   *
-   * @throws SpotifyApiException on an external exception related to the Spotify Web API
+   * Wake up the notifier polling (if it stopped) as soon as a new notifier is
+   * shown, starting over at the shortest interval
    */
-  public void clearNewIndicatorScheduler() throws SpotifyApiException {
-    manuallyClearNotifiers(false);
+  @EventListener(NotifiersShownEvent.class)
+  public synchronized void wakeUpNotifierPolling() {
+    if (isNotifierPollingEnabled()) {
+      notifierPollInterval.onActive();
+      if (nextNotifierPoll != null) {
+        nextNotifierPoll.cancel(false);
+      }
+      scheduleNextNotifierPoll(CLEAR_NOTIFIERS_INTERVAL);
+    }
+  }
+
+  /**
+   * Adaptive periodic task to remove the [NEW] indicator where applicable. Runs
+   * every 10 seconds while something is playing, and backs off exponentially (up
+   * to every 5 minutes) while playback is idle. Stops entirely once no playlist
+   * carries a notifier anymore, until {@link MiscController#wakeUpNotifierPolling}
+   * is triggered again. Will only clear notifiers while the crawler is idle.
+   */
+  public synchronized void clearNewIndicatorScheduler() {
+    boolean keepPolling = true;
+    try {
+      // While the crawler is busy, it will show or keep its own notifiers, so just check again later
+      if (crawler.isReady()) {
+        if (crawler.hasPendingNotifiers()) {
+          notifierPollInterval.countPoll(nextNotifierPollDelayMs);
+          if (crawler.clearObsoleteNotifiers(false)) {
+            notifierPollInterval.onActive();
+          } else {
+            notifierPollInterval.onIdle();
+          }
+          reportSavedNotifierPolls();
+          keepPolling = crawler.hasPendingNotifiers();
+        } else {
+          keepPolling = false;
+        }
+      }
+    } catch (RuntimeException e) {
+      // Keep polling on any failure, so the notifiers don't stay forever
+      log.stackTrace(e);
+      notifierPollInterval.onIdle();
+    } finally {
+      if (keepPolling) {
+        scheduleNextNotifierPoll(notifierPollInterval.getCurrentIntervalMs());
+      } else {
+        nextNotifierPoll = null;
+      }
+    }
+  }
+
+  private boolean isNotifierPollingEnabled() {
+    return featureControl.isAutoClearNotifications() && featureControl.isPlaylistMetaEnabled();
+  }
+
+  private void scheduleNextNotifierPoll(long delayMs) {
+    nextNotifierPollDelayMs = delayMs;
+    nextNotifierPoll = notifierPollExecutor.schedule(this::clearNewIndicatorScheduler, delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  private void reportSavedNotifierPolls() {
+    if (System.currentTimeMillis() - lastNotifierPollReport >= CLEAR_NOTIFIERS_REPORT_INTERVAL) {
+      if (notifierPollInterval.getPollCount() > 0) {
+        log.info(String.format("Notifier polling in the past day: %d Spotify API calls (%d saved compared to polling every %d seconds)",
+          notifierPollInterval.getPollCount(), notifierPollInterval.getSavedPollCount(), CLEAR_NOTIFIERS_INTERVAL / 1000));
+      }
+      notifierPollInterval.resetCounts();
+      lastNotifierPollReport = System.currentTimeMillis();
+    }
+  }
+
+  @PreDestroy
+  public void shutdownNotifierPolling() {
+    notifierPollExecutor.shutdownNow();
   }
 
   /**
@@ -87,41 +176,57 @@ public class MiscController implements SchedulingConfigurer {
   }
 
   /**
-   * Returns the contents of the most recent log entries split by
-   * separating lines (---).
+   * Returns the most recent log blocks (entries split by separating lines) from
+   * the bottom of the log. Only the requested blocks are read from the log, which
+   * transparently pages into the compressed archive segments of rotated logs.<br/>
+   * <br/>
+   * Blocks are addressed by their index since the start of the log. The index of
+   * the newest block in the log is passed in the {@value #LOG_BLOCKS_NEWEST_HEADER}
+   * header. The response carries an ETag, so an unchanged log only costs a 304
+   * response for clients sending If-None-Match. Larger responses are gzipped.
    *
-   * @param limit (optional) maximum number of log blocks to return from the
-   *              bottom of the log (default: 10); Use -1 to return the entire log
-   * @return a ResponseEntity containing the entire log content as a List of
-   *         blocks, or an error
+   * @param limit (optional) maximum number of log blocks to return (default: 10);
+   *              Use -1 to return all log blocks
+   * @param before (optional) cursor to page backwards: only blocks older than
+   *               this one are returned. Each response passes the cursor for the
+   *               next page in the {@value #LOG_BLOCKS_NEXT_HEADER} header, which
+   *               is missing once the start of the log is reached.
+   * @param since (optional) cursor to only fetch new blocks: only this block and
+   *              any newer ones are returned (the given block itself is included,
+   *              as the newest block keeps growing during a crawl)
+   * @return a ResponseEntity containing the log blocks as lists of lines (newest
+   *         first), or an error
    */
   @GetMapping("/logblocks")
-  public ResponseEntity<List<List<String>>> showLogBlocks(@RequestParam(value = "limit", defaultValue = "10") Integer limit) {
+  public ResponseEntity<List<List<String>>> showLogBlocks(
+      @RequestParam(value = "limit", defaultValue = "10") Integer limit,
+      @RequestParam(value = "before", required = false) Integer before,
+      @RequestParam(value = "since", required = false) Integer since,
+      WebRequest webRequest) {
     try {
-      List<String> readLog = log.readLog(-1);
-
-      List<List<String>> groupedLog = new ArrayList<>();
-      List<String> currentBlock = new ArrayList<>();
-      for (String logLine : readLog) {
-        if (logLine.contains("---")) {
-          groupedLog.add(currentBlock);
-          currentBlock = new ArrayList<>();
-        } else {
-          currentBlock.add(logLine);
-        }
+      String eTag = "\"" + log.getLogVersion() + "\"";
+      if (webRequest.checkNotModified(eTag)) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
       }
-      if (!currentBlock.isEmpty()) {
-        groupedLog.add(currentBlock);
+
+      int firstBlockId = log.getFirstLogBlockId();
+      int blockCount = log.getLogBlockCount();
+      int toBlock = before != null ? Math.max(firstBlockId, Math.min(before, blockCount)) : blockCount;
+      int fromBlock = limit != null && limit >= 0 ? Math.max(firstBlockId, toBlock - limit) : firstBlockId;
+      if (since != null) {
+        fromBlock = Math.max(fromBlock, since);
       }
 
-      List<List<String>> collect = groupedLog.stream()
-          .filter(l -> !l.isEmpty())
-          .collect(Collectors.toList());
-      Collections.reverse(collect);
-      if (limit != null && limit >= 0) {
-        collect = collect.subList(0, Math.min(limit, collect.size()));
+      List<List<String>> blocks = log.readLogBlocks(fromBlock, toBlock);
+      Collections.reverse(blocks);
+
+      ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+        .eTag(eTag)
+        .header(LOG_BLOCKS_NEWEST_HEADER, String.valueOf(blockCount - 1));
+      if (fromBlock > firstBlockId && since == null) {
+        response.header(LOG_BLOCKS_NEXT_HEADER, String.valueOf(fromBlock));
       }
-      return ResponseEntity.ok(collect);
+      return response.body(blocks);
     } catch (IOException e) {
       log.stackTrace(e);
       return ResponseEntity.notFound().build();
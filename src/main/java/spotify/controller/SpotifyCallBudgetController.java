@@ -0,0 +1,32 @@
+package spotify.controller;
+
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import spotify.bot.util.SpotifyCallBudget;
+
+@RestController
+@Component
+public class SpotifyCallBudgetController {
+  private final SpotifyCallBudget spotifyCallBudget;
+
+  SpotifyCallBudgetController(SpotifyCallBudget spotifyCallBudget) {
+    this.spotifyCallBudget = spotifyCallBudget;
+  }
+
+  /**
+   * Show the Spotify Web API calls since startup by endpoint, along with the
+   * artists and playlists that caused the most calls
+   *
+   * @param top the number of artists/playlists to show (default: 20)
+   * @return the report
+   */
+  @GetMapping("/budget")
+  public Map<String, Object> showBudget(@RequestParam(defaultValue = "20") int top) {
+    return spotifyCallBudget.getReport(Math.max(0, top));
+  }
+}
@@ -2,13 +2,33 @@
   document.getElementById("copyright-current-year").innerHTML = new Date().getFullYear().toString();
 
   const urlParams = new URLSearchParams(window.location.search);
-  let limit = urlParams.get("limit") ?? 10;
+  let limit = parseInt(urlParams.get("limit") ?? 10);
+  const moreLogsLimit = 10;
+  const pollInterval = 10 * 1000;
+  const streamingPollInterval = 60 * 1000;
+  const eventPollDelay = 1000;
+
+  let logsContainer = document.getElementById("log");
+  let newestBlockId = null;
+  let nextBefore = null;
+  let eTag = null;
+  let eventPollTimeout = null;
 
   let moreLogs = document.getElementById("more-logs");
   moreLogs.onclick = () => {
-    const parser = new URL(window.location);
-    parser.searchParams.set("limit", (parseInt(limit) + 10).toString());
-    window.location = parser.href;
+    if (nextBefore !== null) {
+      fetch(`/logblocks?limit=${moreLogsLimit}&before=${nextBefore}`)
+        .then(response => {
+          nextBefore = parseHeader(response, "X-Log-Blocks-Before");
+          return response.json();
+        })
+        .then(json => {
+          let oldestBlockId = parseInt(logsContainer.lastElementChild?.dataset.blockId ?? 0);
+          json.forEach((log, i) => logsContainer.appendChild(createLogBlock(log, oldestBlockId - 1 - i)));
+          updateMoreLogsButton();
+        })
+        .catch(ex => console.error("Error while fetching older logs", ex));
+    }
   }
 
   let clearNotifications = document.getElementById("clear-notifications");
@@ -24,68 +44,163 @@
   }
 
   fetch(`/logblocks?limit=${limit}`)
-    .then(response => response.json())
-    .then(json => processLogBlocks(json))
+    .then(response => {
+      eTag = response.headers.get("ETag");
+      newestBlockId = parseHeader(response, "X-Log-Blocks-Newest");
+      nextBefore = parseHeader(response, "X-Log-Blocks-Before");
+      return response.json();
+    })
+    .then(json => {
+      json.forEach((log, i) => logsContainer.appendChild(createLogBlock(log, newestBlockId - i)));
+      updateMoreLogsButton();
+      if (window.EventSource) {
+        subscribeToCrawlEvents();
+        setInterval(pollNewLogBlocks, streamingPollInterval);
+      } else {
+        setInterval(pollNewLogBlocks, pollInterval);
+      }
+    })
     .catch(ex => console.error("Error while fetching logs", ex));
 
-  function processLogBlocks(logs) {
-    if (logs.length < limit) {
+  /**
+   * Fetch only the newest block (as it may have grown) and anything after it.
+   * Responds with an empty 304 if nothing was logged in the meantime.
+   */
+  function pollNewLogBlocks() {
+    let since = Math.max(0, newestBlockId ?? 0);
+    let headers = eTag ? {"If-None-Match": eTag} : {};
+    fetch(`/logblocks?since=${since}`, {headers: headers, cache: "no-store"})
+      .then(response => {
+        if (response.status === 304) {
+          return null;
+        }
+        eTag = response.headers.get("ETag");
+        newestBlockId = parseHeader(response, "X-Log-Blocks-Newest");
+        return response.json();
+      })
+      .then(json => {
+        if (json) {
+          logsContainer.querySelector(`[data-block-id="${since}"]`)?.remove();
+          let firstBlock = logsContainer.firstElementChild;
+          json.forEach((log, i) => logsContainer.insertBefore(createLogBlock(log, newestBlockId - i), firstBlock));
+        }
+      })
+      .catch(ex => console.error("Error while polling logs", ex));
+  }
+
+  /**
+   * Follow the crawl events to show the progress of a running crawl. Since the
+   * log only changes while something is happening, new log blocks are fetched
+   * shortly after each event instead of polling at a short interval.
+   */
+  function subscribeToCrawlEvents() {
+    let crawlStatus = document.getElementById("crawl-status");
+    let crawlEvents = new EventSource("/crawlevents");
+    let dropped = 0;
+
+    let showStatus = (text, idle) => {
+      crawlStatus.innerHTML = text;
+      crawlStatus.classList.toggle("idle", idle);
+    };
+    let onEvent = (type, handler) => crawlEvents.addEventListener(type, event => {
+      handler(JSON.parse(event.data).data);
+      scheduleEventPoll();
+    });
+
+    onEvent("crawl_start", () => {
+      dropped = 0;
+      showStatus("Crawl started...", false);
+    });
+    onEvent("phase_start", data => showStatus(`Crawling: ${data.phase.replace("_", " ")}...`, false));
+    onEvent("phase_end", () => {});
+    onEvent("artist_progress", data => showStatus(`Fetching releases: ${data.done} / ${data.total} artists (${data.releases} releases)`, false));
+    onEvent("releases_dropped", data => dropped += data.count);
+    onEvent("releases_added", data => {
+      let added = Object.values(data.releases).reduce((a, b) => a + b, 0);
+      showStatus(`Adding ${added} new release${added !== 1 ? 's' : ''} to the playlists...`, false);
+    });
+    onEvent("crawl_end", data => {
+      let songs = Object.values(data.results).reduce((a, b) => a + b, 0);
+      let summary = data.successful
+        ? `${songs} new song${songs !== 1 ? 's' : ''}, ${dropped} release${dropped !== 1 ? 's' : ''} dropped`
+        : "failed";
+      showStatus(`Last crawl: ${summary} (${(data.durationMs / 1000).toFixed(1)}s)`, true);
+    });
+    crawlEvents.addEventListener("gap", () => scheduleEventPoll());
+    crawlEvents.onerror = () => console.warn("Crawl event stream interrupted, reconnecting...");
+  }
+
+  function scheduleEventPoll() {
+    if (eventPollTimeout === null) {
+      eventPollTimeout = setTimeout(() => {
+        eventPollTimeout = null;
+        pollNewLogBlocks();
+      }, eventPollDelay);
+    }
+  }
+
+  function parseHeader(response, header) {
+    let value = response.headers.get(header);
+    return value !== null ? parseInt(value) : null;
+  }
+
+  function updateMoreLogsButton() {
+    if (nextBefore === null) {
       moreLogs.classList.add("no-more");
       moreLogs.innerHTML = "All Logs Loaded";
     }
+  }
 
-    let logsContainer = document.getElementById("log");
+  function createLogBlock(log, blockId) {
     let today = new Date();
-    for (let log of logs) {
-      let currentLogContainer = document.createElement("div");
-      let unimportantLines = 0;
-
-      for (let logLine of log) {
-        let currentLogLineTimeContainer = document.createElement("span");
-        let currentLogLineInfoContainer = document.createElement("span");
-
-        let i = logLine.indexOf('] ');
-        let timestamp = logLine.slice(0, i + 1);
-        let text = logLine.slice(i + 2);
-        currentLogLineTimeContainer.innerHTML = timestamp;
-        currentLogLineInfoContainer.innerHTML = text;
-
-        let currentLogLine = document.createElement("div");
-        if (!text.startsWith(" [") && !text.startsWith("Adding to playlist") && !text.includes(" new song")) {
-          currentLogLine.classList.add("unimportant");
-          unimportantLines++;
-        }
+    let currentLogContainer = document.createElement("div");
+    currentLogContainer.dataset.blockId = blockId;
+    let unimportantLines = 0;
 
-        currentLogLine.appendChild(currentLogLineTimeContainer);
-        currentLogLine.appendChild(currentLogLineInfoContainer);
-        currentLogContainer.appendChild(currentLogLine);
+    for (let logLine of log) {
+      let currentLogLineTimeContainer = document.createElement("span");
+      let currentLogLineInfoContainer = document.createElement("span");
+
+      let i = logLine.indexOf('] ');
+      let timestamp = logLine.slice(0, i + 1);
+      let text = logLine.slice(i + 2);
+      currentLogLineTimeContainer.innerHTML = timestamp;
+      currentLogLineInfoContainer.innerHTML = text;
+
+      let currentLogLine = document.createElement("div");
+      if (!text.startsWith(" [") && !text.startsWith("Adding to playlist") && !text.includes(" new song")) {
+        currentLogLine.classList.add("unimportant");
+        unimportantLines++;
       }
-      currentLogContainer.onclick = () => {
-        if (!window.getSelection().toString()) {
-          if (currentLogContainer.classList.contains("active")) {
-            currentLogContainer.classList.remove("active");
-          } else {
-            currentLogContainer.classList.add("active");
-          }
-        }
-      };
 
-      let blockDate = new Date(currentLogContainer.querySelector("span").innerHTML.slice(1, 11));
-      if (blockDate.getDay() === today.getDay()
-        && blockDate.getMonth() === today.getMonth()
-        && blockDate.getFullYear() === today.getFullYear()) {
-        currentLogContainer.classList.add("active");
+      currentLogLine.appendChild(currentLogLineTimeContainer);
+      currentLogLine.appendChild(currentLogLineInfoContainer);
+      currentLogContainer.appendChild(currentLogLine);
+    }
+    currentLogContainer.onclick = () => {
+      if (!window.getSelection().toString()) {
+        if (currentLogContainer.classList.contains("active")) {
+          currentLogContainer.classList.remove("active");
+        } else {
+          currentLogContainer.classList.add("active");
+        }
       }
+    };
 
-      logsContainer.appendChild(currentLogContainer);
+    let blockDate = new Date(currentLogContainer.querySelector("span").innerHTML.slice(1, 11));
+    if (blockDate.getDay() === today.getDay()
+      && blockDate.getMonth() === today.getMonth()
+      && blockDate.getFullYear() === today.getFullYear()) {
+      currentLogContainer.classList.add("active");
+    }
 
-      if (unimportantLines > 0) {
-        let lineCount = document.createElement("div");
-        lineCount.classList.add("line-count");
-        currentLogContainer.appendChild(lineCount);
-        let timestamp = log[0].slice(0, log[0].indexOf('] ') + 1);
-        lineCount.innerHTML = `${timestamp} ... ${unimportantLines} line${unimportantLines !== 1 ? 's' : ''} hidden ...`;
-      }
+    if (unimportantLines > 0) {
+      let lineCount = document.createElement("div");
+      lineCount.classList.add("line-count");
+      currentLogContainer.appendChild(lineCount);
+      let timestamp = log[0].slice(0, log[0].indexOf('] ') + 1);
+      lineCount.innerHTML = `${timestamp} ... ${unimportantLines} line${unimportantLines !== 1 ? 's' : ''} hidden ...`;
     }
+    return currentLogContainer;
   }
-})();
\ No newline at end of file
+})();
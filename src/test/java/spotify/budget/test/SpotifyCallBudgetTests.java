@@ -0,0 +1,132 @@
+package spotify.budget.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import se.michaelthelin.spotify.exceptions.detailed.BadGatewayException;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.Paging;
+import spotify.api.events.SpotifyApiException;
+import spotify.bot.util.DiscoveryBotMetrics;
+import spotify.bot.util.SpotifyCallBudget;
+
+public class SpotifyCallBudgetTests {
+
+	private final static String ARTIST_ALBUMS = "artist_albums";
+	private final static String SEVERAL_ARTISTS = "several_artists";
+	private final static String ARTIST_A = SpotifyCallBudget.artist("a");
+	private final static String ARTIST_B = SpotifyCallBudget.artist("b");
+
+	private SimpleMeterRegistry meterRegistry;
+	private SpotifyCallBudget callBudget;
+
+	@Before
+	public void setup() {
+		meterRegistry = new SimpleMeterRegistry();
+		callBudget = new SpotifyCallBudget(new DiscoveryBotMetrics(meterRegistry));
+	}
+
+	private static Paging<AlbumSimplified> page(int size) {
+		AlbumSimplified[] items = new AlbumSimplified[size];
+		for (int i = 0; i < size; i++) {
+			items[i] = new AlbumSimplified.Builder().setId("album" + i).build();
+		}
+		return new Paging.Builder<AlbumSimplified>()
+			.setItems(items)
+			.setTotal(size)
+			.build();
+	}
+
+	private void failingCall(String endpoint, String subject, Exception nestedException) {
+		try {
+			callBudget.account(endpoint, subject, () -> {
+				throw new SpotifyApiException(nestedException);
+			});
+			fail("Expected the exception to be passed on");
+		} catch (SpotifyApiException e) {
+			assertSame(nestedException, e.getNestedException());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> endpoint(Map<String, Object> report, String endpoint) {
+		return ((Map<String, Map<String, Object>>) report.get("endpoints")).get(endpoint);
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Map<String, Object>> top(Map<String, Object> report) {
+		return (List<Map<String, Object>>) report.get("top");
+	}
+
+	@Test
+	public void accountsPerEndpoint() {
+		Paging<AlbumSimplified> page = page(3);
+		assertSame(page, callBudget.account(ARTIST_ALBUMS, ARTIST_A, () -> page));
+		callBudget.account(ARTIST_ALBUMS, ARTIST_A, () -> page(2));
+		callBudget.account(SEVERAL_ARTISTS, null, () -> new String[] {"x", "y"});
+
+		Map<String, Object> report = callBudget.getReport(10);
+		Map<String, Object> artistAlbums = endpoint(report, ARTIST_ALBUMS);
+		assertEquals(2L, artistAlbums.get("calls"));
+		assertEquals(2L, artistAlbums.get("pages"));
+		assertEquals(5L, artistAlbums.get("items"));
+		assertEquals(0L, artistAlbums.get("failures"));
+		Map<String, Object> severalArtists = endpoint(report, SEVERAL_ARTISTS);
+		assertEquals(1L, severalArtists.get("calls"));
+		assertEquals(0L, severalArtists.get("pages"));
+		assertEquals(2L, severalArtists.get("items"));
+
+		// Calls without a subject only count towards their endpoint
+		assertEquals(1, report.get("subjects"));
+		assertEquals(2.0, meterRegistry.get("discovery.spotify.requests").tag("request", ARTIST_ALBUMS).timer().count(), 0.0);
+	}
+
+	@Test
+	public void accountsPerSubjectAndRanksTopK() {
+		for (int i = 0; i < 3; i++) {
+			callBudget.account(ARTIST_ALBUMS, ARTIST_A, () -> page(1));
+		}
+		callBudget.account(SEVERAL_ARTISTS, ARTIST_A, () -> new String[] {"x"});
+		callBudget.account(ARTIST_ALBUMS, ARTIST_B, () -> page(1));
+		callBudget.account(ARTIST_ALBUMS, SpotifyCallBudget.playlist("p"), () -> page(1));
+		callBudget.account(ARTIST_ALBUMS, SpotifyCallBudget.playlist("p"), () -> page(1));
+
+		Map<String, Object> report = callBudget.getReport(2);
+		assertEquals(3, report.get("subjects"));
+		List<Map<String, Object>> top = top(report);
+		assertEquals(2, top.size());
+		assertEquals(ARTIST_A, top.get(0).get("subject"));
+		assertEquals(4L, top.get(0).get("calls"));
+		assertEquals(Map.of(ARTIST_ALBUMS, 3L, SEVERAL_ARTISTS, 1L), top.get(0).get("callsByEndpoint"));
+		assertEquals("playlist:p", top.get(1).get("subject"));
+		assertEquals(2L, top.get(1).get("calls"));
+	}
+
+	@Test
+	public void countsRateLimitedCallsSeparately() {
+		failingCall(ARTIST_ALBUMS, ARTIST_A, new TooManyRequestsException("Rate limited", 5));
+		failingCall(ARTIST_ALBUMS, ARTIST_A, new BadGatewayException("Bad gateway"));
+		callBudget.account(ARTIST_ALBUMS, ARTIST_A, () -> page(1));
+
+		Map<String, Object> report = callBudget.getReport(10);
+		Map<String, Object> artistAlbums = endpoint(report, ARTIST_ALBUMS);
+		assertEquals(3L, artistAlbums.get("calls"));
+		assertEquals(2L, artistAlbums.get("failures"));
+		assertEquals(1L, artistAlbums.get("rateLimited"));
+		Map<String, Object> artistA = top(report).get(0);
+		assertEquals(2L, artistA.get("failures"));
+		assertEquals(1L, artistA.get("rateLimited"));
+
+		assertEquals(1.0, meterRegistry.get("discovery.spotify.requests.rate_limited").tag("request", ARTIST_ALBUMS).counter().count(), 0.0);
+		assertEquals(2.0, meterRegistry.get("discovery.spotify.requests").tags("request", ARTIST_ALBUMS, "outcome", "failure").timer().count(), 0.0);
+	}
+}
@@ -0,0 +1,55 @@
+package spotify.events.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import spotify.bot.util.CrawlEventBus;
+import spotify.bot.util.data.CrawlEvent;
+
+public class CrawlEventBusTests {
+
+	@Test
+	public void returnsEventsSinceGivenId() {
+		CrawlEventBus crawlEventBus = new CrawlEventBus();
+		crawlEventBus.publish(CrawlEvent.Type.CRAWL_START, Map.of());
+		crawlEventBus.phaseStarted("releases");
+		crawlEventBus.phaseFinished("releases");
+
+		List<CrawlEvent> events = crawlEventBus.getEventsSince(1);
+		assertEquals(2, events.size());
+		assertEquals(CrawlEvent.Type.PHASE_START, events.get(0).getType());
+		assertEquals(2, events.get(1).getId());
+		assertEquals(3, crawlEventBus.getNextId());
+	}
+
+	@Test
+	public void oldestEventsAreOverwritten() {
+		CrawlEventBus crawlEventBus = new CrawlEventBus();
+		crawlEventBus.publish(CrawlEvent.Type.CRAWL_START, Map.of());
+		for (int i = 0; i < 1000; i++) {
+			crawlEventBus.publish(CrawlEvent.Type.ARTIST_PROGRESS, Map.of("done", i));
+		}
+
+		List<CrawlEvent> events = crawlEventBus.getEventsSince(0);
+		assertEquals(512, events.size());
+		assertEquals(1001 - 512, events.get(0).getId());
+		assertEquals(1000, events.get(events.size() - 1).getId());
+		assertNull(crawlEventBus.getCurrentCrawlStartId());
+	}
+
+	@Test
+	public void currentCrawlStartIsTrackedUntilCrawlEnd() {
+		CrawlEventBus crawlEventBus = new CrawlEventBus();
+		crawlEventBus.phaseStarted("playlists");
+		crawlEventBus.publish(CrawlEvent.Type.CRAWL_START, Map.of());
+		assertEquals(Long.valueOf(1), crawlEventBus.getCurrentCrawlStartId());
+
+		crawlEventBus.publish(CrawlEvent.Type.CRAWL_END, Map.of());
+		assertNull(crawlEventBus.getCurrentCrawlStartId());
+	}
+}
@@ -0,0 +1,66 @@
+package spotify.events.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import spotify.bot.util.data.CrawlTrace;
+
+public class CrawlTraceTests {
+
+	@Test
+	public void exportsSpansAsCompleteEventsWithParents() {
+		CrawlTrace trace = new CrawlTrace(1000, 100);
+		CrawlTrace.Span root = trace.startSpan(null, "crawl");
+		CrawlTrace.Span phase = trace.startSpan(root, "releases");
+		CrawlTrace.Span artist = trace.startSpan(phase, "artist_albums")
+			.setAttribute("artist", "abc")
+			.setAttribute("pages", 3);
+		artist.end();
+		phase.end();
+		root.end();
+
+		JsonArray traceEvents = trace.toTraceEventJson().getAsJsonArray("traceEvents");
+		JsonObject artistEvent = traceEvents.get(2).getAsJsonObject();
+		assertEquals("artist_albums", artistEvent.get("name").getAsString());
+		assertEquals("X", artistEvent.get("ph").getAsString());
+		assertEquals(phase.getId(), artistEvent.getAsJsonObject("args").get("parentId").getAsInt());
+		assertEquals("abc", artistEvent.getAsJsonObject("args").get("artist").getAsString());
+		assertEquals(3, artistEvent.getAsJsonObject("args").get("pages").getAsInt());
+		assertFalse(traceEvents.get(0).getAsJsonObject().getAsJsonObject("args").has("parentId"));
+
+		// The single thread gets a name metadata event
+		assertEquals(4, traceEvents.size());
+		assertEquals("M", traceEvents.get(3).getAsJsonObject().get("ph").getAsString());
+	}
+
+	@Test
+	public void countsAttributesOfParent() {
+		CrawlTrace trace = new CrawlTrace(1000, 100);
+		CrawlTrace.Span write = trace.startSpan(null, "playlist_write");
+		write.incrementAttribute("failedAttempts");
+		write.incrementAttribute("failedAttempts");
+
+		JsonObject args = trace.toTraceEventJson().getAsJsonArray("traceEvents").get(0).getAsJsonObject().getAsJsonObject("args");
+		assertEquals(2, args.get("failedAttempts").getAsInt());
+	}
+
+	@Test
+	public void dropsSpansBeyondMaximum() {
+		CrawlTrace trace = new CrawlTrace(1000, 2);
+		CrawlTrace.Span root = trace.startSpan(null, "crawl");
+		trace.startSpan(root, "a").end();
+		CrawlTrace.Span dropped = trace.startSpan(root, "b");
+		dropped.end();
+
+		assertEquals(2, trace.getSpanCount());
+		assertEquals(1, trace.getDroppedSpans());
+		assertEquals(2, dropped.getId());
+		assertTrue(dropped.getDurationNanos() >= 0);
+	}
+}
@@ -0,0 +1,97 @@
+package spotify.filter.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import spotify.bot.filter.ParallelStageExecutor;
+import spotify.bot.util.DiscoveryBotMetrics;
+
+public class ParallelStageExecutorTests {
+
+	private final static int PARALLEL_THRESHOLD = 100;
+	private final static int LARGE_INPUT_SIZE = 20_000;
+
+	private final static Predicate<Integer> PREDICATE = i -> i % 3 == 0 || Integer.toString(i).contains("7");
+	private final static Function<Integer, String> MAPPER = i -> "release" + (i * 31 % 1000);
+
+	private ParallelStageExecutor parallelStageExecutor;
+	private ParallelStageExecutor sequentialStageExecutor;
+
+	@Before
+	public void createExecutors() {
+		DiscoveryBotMetrics metrics = new DiscoveryBotMetrics(new SimpleMeterRegistry());
+		parallelStageExecutor = new ParallelStageExecutor(metrics, PARALLEL_THRESHOLD);
+		sequentialStageExecutor = new ParallelStageExecutor(metrics, 0);
+	}
+
+	private static List<Integer> input(int size) {
+		List<Integer> elements = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			elements.add((i * 7919) % size);
+		}
+		return elements;
+	}
+
+	@Test
+	public void parallelResultsMatchSequentialOnesInOrder() {
+		List<Integer> elements = input(LARGE_INPUT_SIZE);
+
+		assertEquals(sequentialStageExecutor.filter(elements, PREDICATE), parallelStageExecutor.filter(elements, PREDICATE));
+		assertEquals(sequentialStageExecutor.map(elements, MAPPER), parallelStageExecutor.map(elements, MAPPER));
+	}
+
+	@Test
+	public void parallelForEachVisitsEveryElementOnce() {
+		List<Integer> elements = input(LARGE_INPUT_SIZE);
+		AtomicIntegerArray visits = new AtomicIntegerArray(LARGE_INPUT_SIZE);
+
+		parallelStageExecutor.forEach(elements, visits::incrementAndGet);
+
+		for (int i = 0; i < LARGE_INPUT_SIZE; i++) {
+			assertEquals(1, visits.get(i));
+		}
+	}
+
+	@Test
+	public void inputAboveThresholdRunsOnPool() {
+		Thread caller = Thread.currentThread();
+		Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+		parallelStageExecutor.filter(input(PARALLEL_THRESHOLD), i -> threads.add(Thread.currentThread()));
+
+		assertFalse(threads.contains(caller));
+	}
+
+	@Test
+	public void inputBelowThresholdRunsOnCallingThread() {
+		List<Integer> elements = input(PARALLEL_THRESHOLD - 1);
+		Thread caller = Thread.currentThread();
+		Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+		List<Integer> filtered = parallelStageExecutor.filter(elements, i -> {
+			threads.add(Thread.currentThread());
+			return PREDICATE.test(i);
+		});
+		List<String> mapped = parallelStageExecutor.map(elements, i -> {
+			threads.add(Thread.currentThread());
+			return MAPPER.apply(i);
+		});
+		parallelStageExecutor.forEach(elements, i -> threads.add(Thread.currentThread()));
+
+		assertEquals(Set.of(caller), threads);
+		assertEquals(sequentialStageExecutor.filter(elements, PREDICATE), filtered);
+		assertEquals(sequentialStageExecutor.map(elements, MAPPER), mapped);
+	}
+}
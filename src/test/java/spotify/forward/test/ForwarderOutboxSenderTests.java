@@ -0,0 +1,192 @@
+package spotify.forward.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import spotify.bot.properties.ForwarderOutboxSender;
+import spotify.bot.util.ForwarderHttpClient;
+import spotify.bot.util.data.ForwarderMessage;
+
+public class ForwarderOutboxSenderTests {
+	private final static long BASE_BACKOFF_MS = 1000;
+	private final static long MAX_BACKOFF_MS = 4000;
+	private final static int MAX_ATTEMPTS = 3;
+
+	private HttpServer httpServer;
+	private List<String> receivedBodies;
+	private Set<Integer> clientPorts;
+	private AtomicInteger responseStatus;
+
+	private InMemoryOutbox outbox;
+	private ForwarderHttpClient forwarderHttpClient;
+
+	@Before
+	public void setUp() throws IOException {
+		receivedBodies = Collections.synchronizedList(new ArrayList<>());
+		clientPorts = Collections.synchronizedSet(new HashSet<>());
+		responseStatus = new AtomicInteger(200);
+
+		httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		httpServer.createContext("/forward", exchange -> {
+			try (InputStream requestBody = exchange.getRequestBody()) {
+				receivedBodies.add(new String(requestBody.readAllBytes(), StandardCharsets.UTF_8));
+			}
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+			exchange.sendResponseHeaders(responseStatus.get(), -1);
+			exchange.close();
+		});
+		httpServer.start();
+
+		outbox = new InMemoryOutbox();
+		String url = "http://localhost:" + httpServer.getAddress().getPort() + "/forward";
+		forwarderHttpClient = new ForwarderHttpClient(url, Duration.ofSeconds(5), Duration.ofSeconds(5));
+	}
+
+	@After
+	public void tearDown() {
+		httpServer.stop(0);
+	}
+
+	private ForwarderOutboxSender createSender(String digestMask, int digestSize) {
+		return new ForwarderOutboxSender(outbox, forwarderHttpClient, digestMask, "\n", digestSize, BASE_BACKOFF_MS, MAX_BACKOFF_MS, MAX_ATTEMPTS);
+	}
+
+	@Test
+	public void deliversEveryMessageOnceOverReusedConnection() {
+		outbox.add(new ForwarderMessage("a", "release a", 0, 0));
+		outbox.add(new ForwarderMessage("b", "release b", 0, 0));
+		outbox.add(new ForwarderMessage("c", "release c", 0, 0));
+
+		ForwarderOutboxSender.Result result = createSender(null, 1).drain(100);
+
+		assertEquals(3, result.getDelivered());
+		assertEquals(List.of("release a", "release b", "release c"), receivedBodies);
+		assertTrue(outbox.getMessages().isEmpty());
+		assertNull(result.getNextAttemptAt());
+		assertEquals(1, clientPorts.size());
+	}
+
+	@Test
+	public void digestModeBatchesMessagesIntoFewRequests() {
+		for (String id : List.of("a", "b", "c", "d", "e")) {
+			outbox.add(new ForwarderMessage(id, "release " + id, 0, 0));
+		}
+
+		ForwarderOutboxSender.Result result = createSender("New releases:\n%s", 3).drain(100);
+
+		assertEquals(5, result.getDelivered());
+		assertEquals(List.of(
+			"New releases:\nrelease a\nrelease b\nrelease c",
+			"New releases:\nrelease d\nrelease e"), receivedBodies);
+		assertTrue(outbox.getMessages().isEmpty());
+	}
+
+	@Test
+	public void failedDeliveryIsRetriedWithBackoff() {
+		outbox.add(new ForwarderMessage("a", "release a", 0, 0));
+		ForwarderOutboxSender sender = createSender(null, 1);
+
+		responseStatus.set(503);
+		ForwarderOutboxSender.Result failedResult = sender.drain(100);
+		assertEquals(0, failedResult.getDelivered());
+		assertEquals(1, failedResult.getFailed());
+		assertEquals(Long.valueOf(100 + BASE_BACKOFF_MS), failedResult.getNextAttemptAt());
+		assertEquals(1, outbox.getMessages().get(0).getAttempts());
+
+		// Not due yet, so nothing is sent
+		responseStatus.set(200);
+		ForwarderOutboxSender.Result earlyResult = sender.drain(100 + BASE_BACKOFF_MS - 1);
+		assertEquals(0, earlyResult.getDelivered());
+		assertEquals(1, receivedBodies.size());
+
+		ForwarderOutboxSender.Result retriedResult = sender.drain(100 + BASE_BACKOFF_MS);
+		assertEquals(1, retriedResult.getDelivered());
+		assertEquals(List.of("release a", "release a"), receivedBodies);
+		assertTrue(outbox.getMessages().isEmpty());
+	}
+
+	@Test
+	public void backoffDoublesUpToMaximum() {
+		outbox.add(new ForwarderMessage("a", "release a", 1, 0));
+		responseStatus.set(500);
+
+		ForwarderOutboxSender.Result result = new ForwarderOutboxSender(outbox, forwarderHttpClient, null, "\n", 1, BASE_BACKOFF_MS, MAX_BACKOFF_MS, 10).drain(0);
+		assertEquals(Long.valueOf(2 * BASE_BACKOFF_MS), result.getNextAttemptAt());
+
+		outbox.add(new ForwarderMessage("b", "release b", 5, 0));
+		outbox.remove(List.of("a"));
+		result = new ForwarderOutboxSender(outbox, forwarderHttpClient, null, "\n", 1, BASE_BACKOFF_MS, MAX_BACKOFF_MS, 10).drain(0);
+		assertEquals(Long.valueOf(MAX_BACKOFF_MS), result.getNextAttemptAt());
+	}
+
+	@Test
+	public void messageIsDroppedAfterMaxAttempts() {
+		outbox.add(new ForwarderMessage("a", "release a", MAX_ATTEMPTS - 1, 0));
+		responseStatus.set(400);
+
+		ForwarderOutboxSender.Result result = createSender(null, 1).drain(100);
+
+		assertEquals(1, result.getGivenUp());
+		assertTrue(outbox.getMessages().isEmpty());
+		assertNull(result.getNextAttemptAt());
+	}
+
+	@Test
+	public void unreachableForwarderKeepsMessages() {
+		httpServer.stop(0);
+		outbox.add(new ForwarderMessage("a", "release a", 0, 0));
+
+		ForwarderOutboxSender.Result result = createSender(null, 1).drain(100);
+
+		assertEquals(1, result.getFailed());
+		assertEquals(1, outbox.getMessages().size());
+	}
+
+	/**
+	 * Mimics the outbox table, which ignores messages for an already queued album
+	 */
+	private static class InMemoryOutbox implements ForwarderOutboxSender.Outbox {
+		private final Map<String, ForwarderMessage> messages = new LinkedHashMap<>();
+
+		void add(ForwarderMessage message) {
+			messages.putIfAbsent(message.getAlbumId(), message);
+		}
+
+		@Override
+		public List<ForwarderMessage> getMessages() {
+			return new ArrayList<>(messages.values());
+		}
+
+		@Override
+		public void update(List<ForwarderMessage> updatedMessages) {
+			updatedMessages.forEach(m -> messages.put(m.getAlbumId(), m));
+		}
+
+		@Override
+		public void remove(Collection<String> albumIds) {
+			albumIds.forEach(messages::remove);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package spotify.log.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spotify.bot.util.AsyncLogAppender;
+import spotify.bot.util.IndexedLogFile;
+
+public class AsyncLogAppenderTests {
+	private File logFile;
+	private IndexedLogFile indexedLogFile;
+	private AsyncLogAppender appender;
+	private List<Exception> errors;
+
+	@Before
+	public void setUp() throws IOException {
+		logFile = File.createTempFile("log", ".txt");
+		indexedLogFile = new IndexedLogFile(logFile);
+		errors = new CopyOnWriteArrayList<>();
+		appender = new AsyncLogAppender(indexedLogFile::append, errors::add);
+	}
+
+	@After
+	public void tearDown() {
+		appender.close();
+		logFile.delete();
+		assertTrue(errors.isEmpty());
+	}
+
+	@Test
+	public void flushWritesEverythingAppendedBefore() throws IOException {
+		appender.append("first");
+		appender.append("second");
+		appender.append("-".repeat(80));
+		appender.append("third");
+		appender.flush();
+
+		assertEquals(List.of("first", "second", "-".repeat(80), "third"), Files.readAllLines(logFile.toPath(), StandardCharsets.UTF_8));
+		assertEquals(2, indexedLogFile.getBlockCount());
+	}
+
+	@Test
+	public void concurrentAppendsKeepEveryLineAndPerThreadOrder() throws Exception {
+		int threadCount = 8;
+		int linesPerThread = 2000;
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < threadCount; t++) {
+			int threadId = t;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < linesPerThread; i++) {
+					appender.append(threadId + ":" + i);
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		appender.flush();
+
+		List<String> lines = Files.readAllLines(logFile.toPath(), StandardCharsets.UTF_8);
+		assertEquals(threadCount * linesPerThread, lines.size());
+		int[] lastIndexByThread = new int[threadCount];
+		Arrays.fill(lastIndexByThread, -1);
+		for (String line : lines) {
+			String[] split = line.split(":");
+			int threadId = Integer.parseInt(split[0]);
+			int index = Integer.parseInt(split[1]);
+			assertTrue(index > lastIndexByThread[threadId]);
+			lastIndexByThread[threadId] = index;
+		}
+	}
+
+	@Test
+	public void closeWritesPendingLines() throws IOException {
+		for (int i = 0; i < 100; i++) {
+			appender.append("line " + i);
+		}
+		appender.close();
+
+		assertEquals(100, Files.readAllLines(logFile.toPath(), StandardCharsets.UTF_8).size());
+	}
+
+	@Test
+	public void sinkFailuresGoToTheErrorHandler() {
+		IOException failure = new IOException("Disk full");
+		List<Exception> sinkErrors = new CopyOnWriteArrayList<>();
+		AsyncLogAppender failingAppender = new AsyncLogAppender(lines -> {
+			throw failure;
+		}, sinkErrors::add);
+		try {
+			failingAppender.append("lost");
+			failingAppender.flush();
+			failingAppender.append("also lost");
+			failingAppender.flush();
+		} finally {
+			failingAppender.close();
+		}
+
+		assertEquals(List.of(failure, failure), sinkErrors);
+	}
+}
@@ -0,0 +1,179 @@
+package spotify.log.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spotify.bot.util.IndexedLogFile;
+import spotify.bot.util.RotatingLogFile;
+
+public class RotatingLogFileTests {
+	private final static String SEPARATOR = "-".repeat(80);
+
+	private File directory;
+	private File logFile;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("logs").toFile();
+		logFile = new File(directory, "log.txt");
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private RotatingLogFile createLog(long maxSizeBytes) {
+		return new RotatingLogFile(logFile, maxSizeBytes, Duration.ZERO, Duration.ZERO, RotatingLogFileTests::fail);
+	}
+
+	private static void fail(Exception e) {
+		throw new AssertionError(e);
+	}
+
+	private void writeBlocks(RotatingLogFile log, int from, int to) throws IOException {
+		for (int i = from; i < to; i++) {
+			log.append(block(i));
+		}
+	}
+
+	private static List<String> block(int i) {
+		return List.of("[2024-01-01 12:00:00] block " + i, "[2024-01-01 12:00:01] line", SEPARATOR);
+	}
+
+	/**
+	 * Put the log into the state of a rotation of the first blocks that was
+	 * interrupted after writing the segment: the active log still contains the
+	 * given blocks and its ID wasn't advanced
+	 */
+	private void interruptFirstRotation(int blockCount) throws IOException {
+		writeBlocks(createLog(1), 0, 1);
+		IndexedLogFile activeLog = new IndexedLogFile(logFile);
+		for (int i = 0; i < blockCount; i++) {
+			activeLog.append(block(i));
+		}
+		Files.writeString(new File(directory, "log.txt.idx").toPath(), "0");
+	}
+
+	private List<String> firstLines(RotatingLogFile log) throws IOException {
+		List<String> firstLines = new ArrayList<>();
+		log.readBlocks(log.getFirstBlockId(), log.getBlockCount()).forEach(block -> firstLines.add(block.get(0)));
+		return firstLines;
+	}
+
+	@Test
+	public void rotatesBySizeAndReadsAcrossSegments() throws IOException {
+		RotatingLogFile log = createLog(200);
+		writeBlocks(log, 0, 10);
+
+		File[] segments = directory.listFiles((dir, name) -> name.endsWith(".gz"));
+		assertTrue(segments != null && segments.length > 1);
+		assertEquals(0, log.getFirstBlockId());
+		assertEquals(10, log.getBlockCount());
+
+		List<List<String>> blocks = log.readBlocks(2, 9);
+		assertEquals(7, blocks.size());
+		for (int i = 0; i < blocks.size(); i++) {
+			assertEquals("[2024-01-01 12:00:00] block " + (i + 2), blocks.get(i).get(0));
+			assertEquals(2, blocks.get(i).size());
+		}
+	}
+
+	@Test
+	public void segmentsAreRegularGzipFiles() throws IOException {
+		RotatingLogFile log = createLog(1);
+		writeBlocks(log, 0, 1);
+
+		File segment = new File(directory, "log.txt.00000000.gz");
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(segment.toPath()))) {
+			assertEquals("[2024-01-01 12:00:00] block 0\n[2024-01-01 12:00:01] line\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void blockIdsSurviveRestart() throws IOException {
+		writeBlocks(createLog(250), 0, 7);
+
+		RotatingLogFile reopenedLog = createLog(250);
+		assertEquals(7, reopenedLog.getBlockCount());
+		writeBlocks(reopenedLog, 7, 9);
+
+		List<String> firstLines = new ArrayList<>();
+		reopenedLog.readBlocks(0, 9).forEach(block -> firstLines.add(block.get(0)));
+		assertEquals(9, firstLines.size());
+		assertEquals("[2024-01-01 12:00:00] block 8", firstLines.get(8));
+	}
+
+	@Test
+	public void expiredSegmentsAreDeletedWithoutShiftingIds() throws IOException {
+		writeBlocks(createLog(1), 0, 3);
+
+		RotatingLogFile log = new RotatingLogFile(logFile, 1, Duration.ZERO, Duration.ofDays(1), RotatingLogFileTests::fail);
+		assertEquals(3, log.getFirstBlockId());
+		assertEquals(3, log.getBlockCount());
+		assertTrue(log.readBlocks(0, 3).isEmpty());
+	}
+
+	@Test
+	public void rotationInterruptedBeforeTruncatingIsCompletedOnStartup() throws IOException {
+		interruptFirstRotation(1);
+
+		RotatingLogFile log = createLog(1000);
+		assertEquals(0, log.getFirstBlockId());
+		assertEquals(1, log.getBlockCount());
+		assertEquals(List.of("[2024-01-01 12:00:00] block 0"), firstLines(log));
+		assertEquals(0, logFile.length());
+
+		writeBlocks(log, 1, 2);
+		assertEquals(List.of("[2024-01-01 12:00:00] block 0", "[2024-01-01 12:00:00] block 1"), firstLines(log));
+	}
+
+	@Test
+	public void rotationInterruptedBeforeAdvancingIdIsCompletedOnStartup() throws IOException {
+		writeBlocks(createLog(1), 0, 1);
+		Files.writeString(new File(directory, "log.txt.idx").toPath(), "0");
+
+		RotatingLogFile log = createLog(1000);
+		assertEquals(1, log.getBlockCount());
+		assertEquals(List.of("[2024-01-01 12:00:00] block 0"), firstLines(log));
+	}
+
+	@Test
+	public void segmentOfUntruncatedActiveLogIsRotatedAgain() throws IOException {
+		interruptFirstRotation(2);
+
+		RotatingLogFile log = createLog(1000);
+		assertEquals(0, directory.listFiles((dir, name) -> name.endsWith(".gz")).length);
+		assertEquals(List.of("[2024-01-01 12:00:00] block 0", "[2024-01-01 12:00:00] block 1"), firstLines(log));
+	}
+
+	@Test
+	public void clearRemovesSegments() throws IOException {
+		RotatingLogFile log = createLog(1);
+		writeBlocks(log, 0, 3);
+
+		assertTrue(log.clear());
+		assertEquals(0, log.getBlockCount());
+		assertEquals(0, directory.listFiles((dir, name) -> name.endsWith(".gz")).length);
+	}
+}
@@ -0,0 +1,189 @@
+package spotify.playlist.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import se.michaelthelin.spotify.exceptions.detailed.BadRequestException;
+import se.michaelthelin.spotify.exceptions.detailed.InternalServerErrorException;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+import spotify.api.events.SpotifyApiException;
+import spotify.bot.service.OrderedPlaylistInserter;
+import spotify.bot.service.OrderedPlaylistInserter.InsertionVerifier;
+import spotify.bot.service.OrderedPlaylistInserter.PlaylistItemAdder;
+import spotify.bot.util.AdaptivePacer;
+
+public class OrderedPlaylistInserterTests {
+
+	private final static String PLAYLIST_ID = "stubPlaylist";
+	private final static int BATCH_SIZE = 100;
+
+	/**
+	 * A local stand-in for a Spotify playlist that applies insertions at the given
+	 * position and hands out a new snapshot ID for every mutation
+	 */
+	private static class PlaylistStub implements PlaylistItemAdder, InsertionVerifier {
+		private final List<String> items = new ArrayList<>();
+		private final List<Integer> failOnCalls = new ArrayList<>();
+		private final List<Integer> failBeforeApplyingOnCalls = new ArrayList<>();
+		private final List<Integer> failAfterApplyingOnCalls = new ArrayList<>();
+		private int calls = 0;
+		private int verifications = 0;
+		private int snapshot = 0;
+
+		@Override
+		public String addItems(String playlistId, List<String> uris, int position) {
+			assertEquals(PLAYLIST_ID, playlistId);
+			assertTrue(uris.size() <= BATCH_SIZE);
+			calls++;
+			if (failOnCalls.contains(calls)) {
+				throw new SpotifyApiException(new TooManyRequestsException("Rate limited", 0));
+			}
+			if (failBeforeApplyingOnCalls.contains(calls)) {
+				throw new SpotifyApiException(new InternalServerErrorException("Failed before applying"));
+			}
+			items.addAll(position, uris);
+			snapshot++;
+			if (failAfterApplyingOnCalls.contains(calls)) {
+				throw new SpotifyApiException(new InternalServerErrorException("Failed after applying"));
+			}
+			return "snapshot" + snapshot;
+		}
+
+		@Override
+		public String findInsertion(String playlistId, List<String> uris, int position) {
+			verifications++;
+			if (position + uris.size() <= items.size() && items.subList(position, position + uris.size()).equals(uris)) {
+				return "snapshot" + snapshot;
+			}
+			return null;
+		}
+	}
+
+	private PlaylistStub playlistStub;
+	private AdaptivePacer pacer;
+	private OrderedPlaylistInserter orderedPlaylistInserter;
+
+	@Before
+	public void createStub() {
+		playlistStub = new PlaylistStub();
+		playlistStub.items.addAll(List.of("spotify:track:old1", "spotify:track:old2", "spotify:track:old3"));
+		pacer = new AdaptivePacer(1, 10);
+		orderedPlaylistInserter = new OrderedPlaylistInserter(playlistStub, playlistStub, pacer, BATCH_SIZE);
+	}
+
+	private static List<String> uris(int count) {
+		return IntStream.range(0, count)
+			.mapToObj(i -> "spotify:track:new" + i)
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * The order produced by the former approach, where every batch was added to
+	 * the top of the playlist one after another
+	 */
+	private List<String> expectedOrder(List<String> uris) {
+		List<String> expected = new ArrayList<>(playlistStub.items);
+		for (int i = 0; i < uris.size(); i += BATCH_SIZE) {
+			expected.addAll(0, uris.subList(i, Math.min(uris.size(), i + BATCH_SIZE)));
+		}
+		return expected;
+	}
+
+	///////////////////////////////
+
+	@Test
+	public void singleBatch() {
+		List<String> uris = uris(42);
+		List<String> expected = expectedOrder(uris);
+
+		String snapshotId = orderedPlaylistInserter.insertAtTop(PLAYLIST_ID, uris);
+
+		assertEquals(expected, playlistStub.items);
+		assertEquals("snapshot1", snapshotId);
+	}
+
+	@Test
+	public void manyBatchesRetainOrder() {
+		List<String> uris = uris(2050);
+		List<String> expected = expectedOrder(uris);
+
+		String snapshotId = orderedPlaylistInserter.insertAtTop(PLAYLIST_ID, uris);
+
+		assertEquals(expected, playlistStub.items);
+		assertEquals("snapshot21", snapshotId);
+		assertEquals(21, playlistStub.calls);
+		assertEquals(0, pacer.getBackoffCount());
+	}
+
+	@Test
+	public void rateLimitedBatchesAreRetriedAtTheSamePosition() {
+		playlistStub.failOnCalls.addAll(List.of(2, 3, 7));
+		List<String> uris = uris(550);
+		List<String> expected = expectedOrder(uris);
+
+		orderedPlaylistInserter.insertAtTop(PLAYLIST_ID, uris);
+
+		assertEquals(expected, playlistStub.items);
+		assertEquals(9, playlistStub.calls);
+		assertEquals(3, pacer.getBackoffCount());
+		assertEquals(0, playlistStub.verifications);
+	}
+
+	@Test
+	public void batchesLandedDespiteServerErrorsAreNotInsertedTwice() {
+		playlistStub.failAfterApplyingOnCalls.addAll(List.of(1, 3));
+		List<String> uris = uris(350);
+		List<String> expected = expectedOrder(uris);
+
+		String snapshotId = orderedPlaylistInserter.insertAtTop(PLAYLIST_ID, uris);
+
+		assertEquals(expected, playlistStub.items);
+		assertEquals(4, playlistStub.calls);
+		assertEquals(2, playlistStub.verifications);
+		assertEquals("snapshot4", snapshotId);
+	}
+
+	@Test
+	public void batchesNotLandedOnServerErrorsAreRetried() {
+		playlistStub.failBeforeApplyingOnCalls.addAll(List.of(2, 3));
+		List<String> uris = uris(250);
+		List<String> expected = expectedOrder(uris);
+
+		orderedPlaylistInserter.insertAtTop(PLAYLIST_ID, uris);
+
+		assertEquals(expected, playlistStub.items);
+		assertEquals(5, playlistStub.calls);
+		assertEquals(2, playlistStub.verifications);
+	}
+
+	@Test
+	public void nonPressureFailuresAreNotRetried() {
+		PlaylistItemAdder failingAdder = (playlistId, uris, position) -> {
+			throw new SpotifyApiException(new BadRequestException("Invalid URI"));
+		};
+		OrderedPlaylistInserter inserter = new OrderedPlaylistInserter(failingAdder, playlistStub, pacer, BATCH_SIZE);
+		try {
+			inserter.insertAtTop(PLAYLIST_ID, uris(10));
+			fail("Expected the insertion to fail");
+		} catch (SpotifyApiException e) {
+			assertTrue(e.getNestedException() instanceof BadRequestException);
+			assertEquals(0, pacer.getBackoffCount());
+		}
+	}
+
+	@Test
+	public void nothingToInsert() {
+		assertNull(orderedPlaylistInserter.insertAtTop(PLAYLIST_ID, List.of()));
+		assertEquals(0, playlistStub.calls);
+	}
+}
@@ -0,0 +1,143 @@
+package spotify.playlist.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import se.michaelthelin.spotify.model_objects.specification.Paging;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+import spotify.bot.service.PagedPlaylistReader;
+import spotify.bot.util.data.MirroredTrack;
+
+public class PagedPlaylistReaderTests {
+
+	private final static String PLAYLIST_ID = "stubPlaylist";
+	private final static int PAGE_LIMIT = 10;
+
+	/**
+	 * Build the page at the given offset of a playlist with the given total, the
+	 * same way the trimmed responses look (i.e. without an offset)
+	 */
+	private static Paging<PlaylistTrack> page(int offset, int total) {
+		List<PlaylistTrack> items = new ArrayList<>();
+		for (int i = offset; i < Math.min(total, offset + PAGE_LIMIT); i++) {
+			Track track = new Track.Builder()
+				.setId("track" + i)
+				.setUri("spotify:track:track" + i)
+				.build();
+			items.add(new PlaylistTrack.Builder().setTrack(track).build());
+		}
+		return new Paging.Builder<PlaylistTrack>()
+			.setItems(items.toArray(PlaylistTrack[]::new))
+			.setTotal(total)
+			.build();
+	}
+
+	private static List<String> ids(List<MirroredTrack> tracks) {
+		return tracks.stream()
+			.map(MirroredTrack::getId)
+			.collect(Collectors.toList());
+	}
+
+	private static List<String> expectedIds(int total) {
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < total; i++) {
+			ids.add("track" + i);
+		}
+		return ids;
+	}
+
+	@Test
+	public void assemblesPagesInPlaylistOrderRegardlessOfCompletionOrder() {
+		int total = 45;
+		List<Integer> requestedOffsets = Collections.synchronizedList(new ArrayList<>());
+		PagedPlaylistReader reader = new PagedPlaylistReader(
+			(playlistId, offset) -> {
+				assertEquals(PLAYLIST_ID, playlistId);
+				requestedOffsets.add(offset);
+				return page(offset, total);
+			},
+			callables -> {
+				// Complete every wave in reverse order
+				List<Callable<Paging<PlaylistTrack>>> reversed = new ArrayList<>(callables);
+				Collections.reverse(reversed);
+				for (Callable<Paging<PlaylistTrack>> callable : reversed) {
+					try {
+						callable.call();
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			},
+			PAGE_LIMIT, 2);
+
+		List<MirroredTrack> tracks = reader.readPlaylistItems(PLAYLIST_ID);
+
+		assertEquals(expectedIds(total), ids(tracks));
+		assertNull(page(10, total).getOffset());
+		assertEquals(List.of(0, 20, 10, 40, 30), requestedOffsets);
+	}
+
+	@Test
+	public void readsSinglePageOnly() {
+		List<Integer> requestedOffsets = new ArrayList<>();
+		PagedPlaylistReader reader = new PagedPlaylistReader(
+			(playlistId, offset) -> {
+				requestedOffsets.add(offset);
+				return page(offset, PAGE_LIMIT);
+			},
+			callables -> {
+				throw new AssertionError("No further pages expected");
+			},
+			PAGE_LIMIT, 2);
+
+		assertEquals(expectedIds(PAGE_LIMIT), ids(reader.readPlaylistItems(PLAYLIST_ID)));
+		assertEquals(List.of(0), requestedOffsets);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void failsOnMissingPage() {
+		PagedPlaylistReader reader = new PagedPlaylistReader(
+			(playlistId, offset) -> page(offset, 30),
+			callables -> {
+				// Drop all pages, like failed requests
+			},
+			PAGE_LIMIT, 2);
+		reader.readPlaylistItems(PLAYLIST_ID);
+	}
+
+	@Test
+	public void readsFromWithinSaturatedExecutor() throws Exception {
+		int callerCount = 4;
+		int total = 95;
+		ExecutorService callerExecutor = Executors.newFixedThreadPool(callerCount);
+		PagedPlaylistReader.PageWavePool pageWavePool = new PagedPlaylistReader.PageWavePool(2);
+		try {
+			PagedPlaylistReader reader = new PagedPlaylistReader((playlistId, offset) -> page(offset, total), pageWavePool, PAGE_LIMIT, 3);
+
+			// Every worker of the caller executor is busy reading a playlist
+			List<Future<List<MirroredTrack>>> results = new ArrayList<>();
+			for (int i = 0; i < callerCount; i++) {
+				results.add(callerExecutor.submit(() -> reader.readPlaylistItems(PLAYLIST_ID)));
+			}
+			for (Future<List<MirroredTrack>> result : results) {
+				assertEquals(expectedIds(total), ids(result.get(10, TimeUnit.SECONDS)));
+			}
+		} finally {
+			callerExecutor.shutdownNow();
+			pageWavePool.shutdown();
+		}
+	}
+}
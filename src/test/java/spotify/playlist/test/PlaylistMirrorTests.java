@@ -0,0 +1,78 @@
+package spotify.playlist.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import spotify.bot.util.data.MirroredTrack;
+import spotify.bot.util.data.PlaylistMirror;
+
+public class PlaylistMirrorTests {
+
+	private static List<MirroredTrack> tracks(String... ids) {
+		List<MirroredTrack> tracks = new ArrayList<>();
+		for (String id : ids) {
+			tracks.add(new MirroredTrack(id, "spotify:track:" + id, null));
+		}
+		return tracks;
+	}
+
+	private static List<String> ids(PlaylistMirror mirror) {
+		return mirror.getTracks().stream()
+			.map(MirroredTrack::getId)
+			.collect(Collectors.toList());
+	}
+
+	@Test
+	public void insertionAtTopKeepsExistingSortKeys() {
+		PlaylistMirror mirror = new PlaylistMirror("playlist", "s1", tracks("c", "d"));
+		PlaylistMirror updated = mirror.withInsertionAtTop("s2", tracks("a", "b"));
+
+		assertEquals("s2", updated.getSnapshotId());
+		assertEquals(List.of("a", "b", "c", "d"), ids(updated));
+		assertEquals(List.of(-2, -1, 0, 1), updated.getSortKeys());
+	}
+
+	@Test
+	public void removalLeavesGapsInSortKeys() {
+		PlaylistMirror mirror = new PlaylistMirror("playlist", "s1", tracks("a", "b", "c", "d"));
+		PlaylistMirror updated = mirror.withoutPositions("s2", Set.of(1, 3));
+
+		assertEquals(List.of("a", "c"), ids(updated));
+		assertEquals(List.of(0, 2), updated.getSortKeys());
+
+		PlaylistMirror inserted = updated.withInsertionAtTop("s3", tracks("x"));
+		assertEquals(List.of("x", "a", "c"), ids(inserted));
+		assertEquals(List.of(-1, 0, 2), inserted.getSortKeys());
+	}
+
+	@Test
+	public void trimmingSkipsItemsWithoutUri() {
+		List<MirroredTrack> tracks = tracks("a", "b", "c");
+		tracks.add(new MirroredTrack(null, null, null));
+		tracks.add(new MirroredTrack(null, null, null));
+		tracks.add(new MirroredTrack("d", "spotify:track:d", null));
+		PlaylistMirror mirror = new PlaylistMirror("playlist", "s1", tracks);
+
+		// Trimming to three tracks needs three removals, so the local items don't use up the quota
+		Set<Integer> positions = mirror.removablePositionsFromBottom(mirror.size() - 3);
+		assertEquals(Set.of(5, 2, 1), positions);
+		PlaylistMirror trimmed = mirror.withoutPositions("s2", positions);
+		assertEquals(3, trimmed.size());
+		assertEquals(Arrays.asList("a", null, null), ids(trimmed));
+
+		// Only as many as there are removable tracks
+		assertEquals(Set.of(0, 1, 2, 5), mirror.removablePositionsFromBottom(10));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void sortKeysMustMatchTracks() {
+		new PlaylistMirror("playlist", "s1", tracks("a", "b"), List.of(0));
+	}
+}
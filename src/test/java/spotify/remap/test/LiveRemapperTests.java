@@ -0,0 +1,66 @@
+package spotify.remap.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.bot.filter.remapper.LiveRemapper;
+import spotify.bot.filter.remapper.ReleaseTitleClassifier;
+import spotify.bot.filter.remapper.Remapper.Action;
+import spotify.bot.service.TrackLivenessService;
+import spotify.services.TrackService;
+import spotify.util.data.AlbumTrackPair;
+
+public class LiveRemapperTests {
+
+	private TrackService trackService;
+	private LiveRemapper liveRemapper;
+
+	@Before
+	public void createRemapper() {
+		trackService = mock(TrackService.class);
+		TrackLivenessService trackLivenessService = mock(TrackLivenessService.class);
+		when(trackLivenessService.resolveLiveness(any())).thenReturn(Map.of(
+			"high1", 0.9f, "high2", 0.4f,
+			"mid1", 0.3f, "mid2", 0.3f,
+			"low1", 0.1f, "low2", 0.1f));
+		liveRemapper = new LiveRemapper(trackService, trackLivenessService, new ReleaseTitleClassifier(), 0.5, 0.25);
+	}
+
+	private static AlbumTrackPair release(String id, String name, String... trackIds) {
+		AlbumSimplified album = new AlbumSimplified.Builder().setId(id).setName(name).build();
+		List<TrackSimplified> tracks = new ArrayList<>();
+		for (String trackId : trackIds) {
+			tracks.add(new TrackSimplified.Builder().setId(trackId).setName("Song " + trackId).build());
+		}
+		return AlbumTrackPair.of(album, tracks);
+	}
+
+	@Test
+	public void decidesFromResolvedLiveness() {
+		AlbumTrackPair highLiveness = release("a1", "Clayman", "high1", "high2");
+		AlbumTrackPair midLivenessWithTitle = release("a2", "Clayman (Live in London)", "mid1", "mid2");
+		AlbumTrackPair midLiveness = release("a3", "Clayman", "mid1", "mid2");
+		AlbumTrackPair lowLivenessWithTitle = release("a4", "Clayman (Live)", "low1", "low2");
+		liveRemapper.prepare(List.of(highLiveness, midLivenessWithTitle, midLiveness, lowLivenessWithTitle));
+
+		assertEquals(Action.REMAP, liveRemapper.determineRemapAction(highLiveness));
+		assertEquals(Action.REMAP, liveRemapper.determineRemapAction(midLivenessWithTitle));
+		assertEquals(Action.NONE, liveRemapper.determineRemapAction(midLiveness));
+		assertEquals(Action.NONE, liveRemapper.determineRemapAction(lowLivenessWithTitle));
+
+		// No audio features were fetched again for any of them
+		verifyNoInteractions(trackService);
+	}
+}
@@ -0,0 +1,69 @@
+package spotify.remap.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import spotify.bot.filter.remapper.ReleaseTitleClassifier;
+
+/**
+ * Benchmark of the single-pass title classifier against the former regex path
+ * (one separate pattern per title check) on 100k generated titles. Not part of
+ * the regular test run, as the timings depend on the machine; run the main
+ * method manually instead.
+ */
+public class ReleaseTitleClassifierBenchmark {
+
+	private final static int BENCHMARK_TITLE_COUNT = 100_000;
+	private final static int BENCHMARK_ROUNDS = 5;
+
+	// The former regex path
+	private final static List<Pattern> REGEX_PATH = List.of(
+		Pattern.compile("(anniversary|re\\W?(issue|master|record)|\\d+\\W+(jahr|year))", Pattern.CASE_INSENSITIVE),
+		Pattern.compile("[(\\[{]\\s*(remix|remixes|remixed|rmx)\\s*[)\\]}]|\\W(remix|remixes|remixed|rmx)([)\\]}]|$)", Pattern.CASE_INSENSITIVE),
+		Pattern.compile("[(\\[{]live([)\\]}]|\\W(at|in|from|on)\\W)|\\Wlive[)\\]}]|\\Wlive\\W(session|version|recording)", Pattern.CASE_INSENSITIVE),
+		Pattern.compile("\\Wep$|[(\\[{]ep[)\\]}]|\\Wep[)\\]}]|\\We\\Wp\\W$", Pattern.CASE_INSENSITIVE));
+
+	private final static List<String> TITLE_FRAGMENTS = List.of(
+		"Clayman", "Slania", "Destiny", "Harvest", "Fear of a Blank Planet", "Kneipenterroristen",
+		"Hold on to Memories", "Live or Die", "Captain Morgan's Revenge", "Black Plastic : Recycled",
+		"B-Sides & Remixes 1", "The Resurrection", "Über Alles", "Anniversary", "Remaster");
+
+	private final static List<String> TITLE_SUFFIXES = List.of(
+		"", " (Live)", " (live in London 2019)", " (Remixes)", " (Bob Vylan Remix)", " - Remix", " EP", " [EP]",
+		" (20th Anniversary Edition)", " (Reissue 2016)", " (10 Years)", " (30 Jahre)", " (Deluxe)", " 2021 - Remastered");
+
+	public static void main(String[] args) {
+		Random random = new Random(182);
+		List<String> titles = new ArrayList<>();
+		for (int i = 0; i < BENCHMARK_TITLE_COUNT; i++) {
+			titles.add(TITLE_FRAGMENTS.get(random.nextInt(TITLE_FRAGMENTS.size()))
+				+ TITLE_SUFFIXES.get(random.nextInt(TITLE_SUFFIXES.size())));
+		}
+		ReleaseTitleClassifier releaseTitleClassifier = new ReleaseTitleClassifier();
+
+		for (int round = 1; round <= BENCHMARK_ROUNDS; round++) {
+			long regexStart = System.nanoTime();
+			int regexHits = 0;
+			for (String title : titles) {
+				for (Pattern pattern : REGEX_PATH) {
+					if (pattern.matcher(title).find()) {
+						regexHits++;
+					}
+				}
+			}
+			long regexNanos = System.nanoTime() - regexStart;
+
+			long classifierStart = System.nanoTime();
+			int classifierHits = 0;
+			for (String title : titles) {
+				classifierHits += releaseTitleClassifier.classifyTitle(title).size();
+			}
+			long classifierNanos = System.nanoTime() - classifierStart;
+
+			System.out.printf("Round %d: regex path %d ms (%d hits), classifier %d ms (%d hits)%n",
+				round, regexNanos / 1_000_000, regexHits, classifierNanos / 1_000_000, classifierHits);
+		}
+	}
+}
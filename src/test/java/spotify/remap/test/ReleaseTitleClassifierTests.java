@@ -0,0 +1,143 @@
+package spotify.remap.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import spotify.bot.filter.remapper.ReleaseTitleClassifier;
+import spotify.bot.filter.remapper.ReleaseTitleClassifier.TitleFlag;
+
+public class ReleaseTitleClassifierTests {
+
+	private final static int RANDOM_TITLE_COUNT = 100_000;
+
+	// The former rerelease regex
+	private final static Pattern RERELEASE_MATCHER = Pattern
+		.compile("(anniversary|re\\W?(issue|master|record)|\\d+\\W+(jahr|year))", Pattern.CASE_INSENSITIVE);
+
+	private final static List<String> TITLE_FRAGMENTS = List.of(
+		"Clayman", "Slania", "Destiny", "Harvest", "Fear of a Blank Planet", "Kneipenterroristen",
+		"Hold on to Memories", "Live or Die", "How Do We Want To Live?", "Captain Morgan's Revenge",
+		"Black Plastic : Recycled", "B-Sides & Remixes 1", "The Resurrection", "\u00dcber Alles", "\u00c4rzte",
+		"Anniversary", "Remaster", "Re-Issue", "Rerecorded", "Re--Issue", "re_issue", "Prerecorded");
+
+	private final static List<String> TITLE_SUFFIXES = List.of(
+		"", " (Live)", " (live in London 2019)", " (BBC Live Session)", " (Remixes)", " (Bob Vylan Remix)",
+		" - Remix", " EP", " [EP]", " E.P.", " (20th Anniversary Edition)", " (Reissue 2016)",
+		" (2020 Remix / Remaster)", " (10 Years)", " (30 Jahre)", " (10th Anniversary Expanded Edition)",
+		" 10years", " (Deluxe)", " (MTV Unplugged)", " 2021 - Remastered", " - 25 - Year",
+		" 2 (Live)", " 7 [10 Year Edition]", " 3 - (Years Later)", " 25 Jahre - Live");
+
+	private static ReleaseTitleClassifier releaseTitleClassifier;
+	private static List<String> titles;
+
+	@BeforeClass
+	public static void createTitles() {
+		releaseTitleClassifier = new ReleaseTitleClassifier();
+
+		Random random = new Random(182);
+		titles = new ArrayList<>();
+		for (int i = 0; i < RANDOM_TITLE_COUNT; i++) {
+			String title = TITLE_FRAGMENTS.get(random.nextInt(TITLE_FRAGMENTS.size()));
+			if (random.nextBoolean()) {
+				title = TITLE_FRAGMENTS.get(random.nextInt(TITLE_FRAGMENTS.size())) + " " + title;
+			}
+			title += TITLE_SUFFIXES.get(random.nextInt(TITLE_SUFFIXES.size()));
+			titles.add(title);
+		}
+	}
+
+	private static boolean containsRereleaseWordViaRegex(String albumTitle) {
+		Matcher matcher = RERELEASE_MATCHER.matcher(albumTitle);
+		if (matcher.find()) {
+			return matcher.start() > 0;
+		}
+		return false;
+	}
+
+	///////////////////////////////
+
+	@Test
+	public void rereleaseFlagMatchesFormerRegex() {
+		for (String title : titles) {
+			boolean expected = containsRereleaseWordViaRegex(title);
+			boolean actual = releaseTitleClassifier.classifyTitle(title).contains(TitleFlag.RE_RELEASE);
+			assertEquals(title, expected, actual);
+		}
+	}
+
+	@Test
+	public void rereleaseFlag() {
+		assertTrue(releaseTitleClassifier.classifyTitle("Clayman (20th Anniversary Edition)").contains(TitleFlag.RE_RELEASE));
+		assertTrue(releaseTitleClassifier.classifyTitle("Destiny (Reissue 2016)").contains(TitleFlag.RE_RELEASE));
+		assertTrue(releaseTitleClassifier.classifyTitle("Slania (10 Years)").contains(TitleFlag.RE_RELEASE));
+		assertTrue(releaseTitleClassifier.classifyTitle("Kneipenterroristen (30 Jahre)").contains(TitleFlag.RE_RELEASE));
+		assertFalse(releaseTitleClassifier.classifyTitle("Anniversary (Remaster)").contains(TitleFlag.RE_RELEASE));
+		assertFalse(releaseTitleClassifier.classifyTitle("Re--Issue").contains(TitleFlag.RE_RELEASE));
+		assertFalse(releaseTitleClassifier.classifyTitle("Harvest").contains(TitleFlag.RE_RELEASE));
+	}
+
+	@Test
+	public void hintFlags() {
+		assertTrue(releaseTitleClassifier.classifyTitle("Hold on to Memories (Live)").contains(TitleFlag.LIVE));
+		assertTrue(releaseTitleClassifier.classifyTitle("Why? (live in London 2019)").contains(TitleFlag.LIVE));
+		assertTrue(releaseTitleClassifier.classifyTitle("Waiting (BBC Live Session)").contains(TitleFlag.LIVE));
+		assertFalse(releaseTitleClassifier.classifyTitle("Wie Zuhause (MTV Unplugged)").contains(TitleFlag.LIVE));
+		assertFalse(releaseTitleClassifier.classifyTitle("Fear of a Blank Planet").contains(TitleFlag.LIVE));
+
+		assertTrue(releaseTitleClassifier.classifyTitle("Auslaender (Remixes)").contains(TitleFlag.REMIX));
+		assertTrue(releaseTitleClassifier.classifyTitle("{ The Dreamer's Hotel } (Bob Vylan Remix)").contains(TitleFlag.REMIX));
+		assertTrue(releaseTitleClassifier.classifyTitle("Kletteren Afterski - Remix").contains(TitleFlag.REMIX));
+		assertTrue(releaseTitleClassifier.classifyTitle("The Reworks").contains(TitleFlag.REMIX));
+		assertFalse(releaseTitleClassifier.classifyTitle("Captain Morgan's Revenge").contains(TitleFlag.REMIX));
+
+		assertTrue(releaseTitleClassifier.classifyTitle("Lumina Aurea EP").contains(TitleFlag.EP));
+		assertTrue(releaseTitleClassifier.classifyTitle("The Resurrection [EP]").contains(TitleFlag.EP));
+		assertFalse(releaseTitleClassifier.classifyTitle("Oh Yeah!").contains(TitleFlag.EP));
+	}
+
+	@Test
+	public void hintFlagsAfterNumbers() {
+		assertTrue(releaseTitleClassifier.classifyTitle("Song 2 (Live)").contains(TitleFlag.LIVE));
+		assertTrue(releaseTitleClassifier.classifyTitle("Track 7 (Live at Wacken)").contains(TitleFlag.LIVE));
+		assertTrue(releaseTitleClassifier.classifyTitle("Song 2 (Remix)").contains(TitleFlag.REMIX));
+		assertTrue(releaseTitleClassifier.classifyTitle("1999 - Remix").contains(TitleFlag.REMIX));
+		assertTrue(releaseTitleClassifier.classifyTitle("Vol. 3 [EP]").contains(TitleFlag.EP));
+		assertTrue(releaseTitleClassifier.classifyTitle("Song 2 (10 Year Anniversary)").contains(TitleFlag.RE_RELEASE));
+		assertTrue(releaseTitleClassifier.classifyTitle("Song 2 (10 Years)").contains(TitleFlag.RE_RELEASE));
+		assertFalse(releaseTitleClassifier.classifyTitle("Song 2 (Live)").contains(TitleFlag.RE_RELEASE));
+	}
+
+	/**
+	 * The REMIX and LIVE hints gate the full library checks, so every title the
+	 * library could accept must carry the hint (false hints are fine)
+	 */
+	@Test
+	public void hintFlagsNeverMissLibraryPositives() {
+		List<String> remixTitles = List.of(
+			"The Remixes Vol. 2", "Club Remix EP", "Rework Sessions", "Remixed", "Auslaender (Remixes)",
+			"Citizen Erased (XX Anniversary RemiXX)", "Black Plastic : Recycled", "Kletteren Afterski - Remix",
+			"B-Sides & Remixes 1", "Song (VIP-Remix)", "Song [RMX]", "The Reworks", "Reworked", "Megamix 2000",
+			"Song (Extended Mix)", "REMIX", "Remixes 1995-2005");
+		for (String title : remixTitles) {
+			assertTrue(title, releaseTitleClassifier.classifyTitle(title).contains(TitleFlag.REMIX));
+		}
+
+		List<String> liveTitles = List.of(
+			"Live or Die", "How Do We Want To Live?", "Live at Wacken 2019", "Live EP", "Alive in Tokyo",
+			"Hold on to Memories (Live)", "Waiting (BBC Live Session)", "LIVE", "Songs (Live-Version)",
+			"Live/Unplugged", "Lebendig (Live aus Berlin)");
+		for (String title : liveTitles) {
+			assertTrue(title, releaseTitleClassifier.classifyTitle(title).contains(TitleFlag.LIVE));
+		}
+	}
+}
@@ -15,6 +15,8 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.model_objects.specification.Album;
 import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
@@ -29,32 +31,48 @@ import spotify.bot.config.database.DiscoveryDatabase;
 import spotify.bot.properties.BlacklistService;
 import spotify.bot.config.properties.PlaylistStoreConfig;
 import spotify.bot.filter.FilterService;
+import spotify.bot.filter.ParallelStageExecutor;
 import spotify.bot.filter.remapper.EpRemapper;
 import spotify.bot.filter.remapper.LiveRemapper;
 import spotify.bot.filter.remapper.Remapper;
 import spotify.bot.filter.remapper.Remapper.Action;
+import spotify.bot.filter.remapper.ReleaseTitleClassifier;
 import spotify.bot.filter.remapper.RemixRemapper;
 import spotify.bot.filter.remapper.RereleaseRemapper;
 import spotify.bot.properties.FeatureControl;
+import spotify.bot.service.MarketContext;
+import spotify.bot.service.TrackLivenessService;
+import spotify.bot.util.CrawlEventBus;
 import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.DiscoveryBotMetrics;
+import spotify.bot.util.SpotifyCallBudget;
 import spotify.bot.util.data.AlbumGroupExtended;
 import spotify.config.SpotifyApiConfig;
 import spotify.services.TrackService;
 import spotify.services.UserService;
 import spotify.spring.SpringPortConfig;
+import spotify.util.SpotifyOptimizedExecutorService;
 import spotify.util.SpotifyUtils;
 import spotify.util.data.AlbumTrackPair;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = {
 	DiscoveryBotLogger.class,
+	CrawlEventBus.class,
+	DiscoveryBotMetrics.class,
+	SimpleMeterRegistry.class,
+	SpotifyCallBudget.class,
 	DiscoveryDatabase.class,
 	DatabaseService.class,
 	FilterService.class,
+	ParallelStageExecutor.class,
 	SpotifyApiConfig.class,
 	SpotifyApiManager.class,
 	TrackService.class,
+	TrackLivenessService.class,
+	SpotifyOptimizedExecutorService.class,
 	UserService.class,
+	MarketContext.class,
 	DatabaseCreationService.class,
 	PlaylistStoreConfig.class,
 	BlacklistService.class,
@@ -80,7 +98,10 @@ public class RemappingTests {
 	private FilterService filterService;
 
 	@Autowired
-	private UserService userService;
+	private TrackLivenessService trackLivenessService;
+
+	@Autowired
+	private MarketContext marketContext;
 
 	@Autowired
 	private DatabaseService databaseService;
@@ -95,11 +116,12 @@ public class RemappingTests {
 	@Before
 	public void createRemappers() {
 		if (!initialized) {
-			epRemapper = new EpRemapper();
-			liveRemapper = new LiveRemapper(trackService);
-			remixRemapper = new RemixRemapper();
+			ReleaseTitleClassifier releaseTitleClassifier = new ReleaseTitleClassifier();
+			epRemapper = new EpRemapper(releaseTitleClassifier);
+			liveRemapper = new LiveRemapper(trackService, trackLivenessService, releaseTitleClassifier, 0.5, 0.25);
+			remixRemapper = new RemixRemapper(releaseTitleClassifier);
 
-			rereleaseRemapper = new RereleaseRemapper(filterService, userService, databaseService);
+			rereleaseRemapper = new RereleaseRemapper(filterService, marketContext, databaseService, releaseTitleClassifier);
 
 			login();
 			
@@ -136,6 +158,7 @@ public class RemappingTests {
 			}
 			List<TrackSimplified> tracks = getTracksOfSingleAlbum(album);
 			AlbumTrackPair atp = AlbumTrackPair.of(album, tracks);
+			remapper.prepare(List.of(atp));
 			return remapper.determineRemapAction(atp);
 		} catch (SpotifyApiException e) {
 			e.printStackTrace();